@@ -0,0 +1,30 @@
+package reverseottr.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the JMH command line options, and always with the allocation
+ * profiler, the same as giving -prof gc, so the bytes allocated per operation are reported
+ * next to the time of every benchmark.
+ *
+ * For example, from the benchmarks-directory:
+ *
+ *   mvn package
+ *   java -jar target/benchmarks.jar EvaluatorBenchmark -p maxRepetitions=0,1**/
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
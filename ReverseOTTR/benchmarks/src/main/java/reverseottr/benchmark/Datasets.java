@@ -0,0 +1,66 @@
+package reverseottr.benchmark;
+
+import experiment.Experiments;
+import org.apache.jena.rdf.model.Model;
+import reverseottr.reader.GraphReader;
+import xyz.ottr.lutra.api.StandardFormat;
+import xyz.ottr.lutra.api.StandardTemplateManager;
+import xyz.ottr.lutra.model.Template;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * The graphs and templates of the experiment-package, read from the directory given by the
+ * system property reverseottr.experiment, which is ../src/experiment by default, such that
+ * the benchmarks can be run from the benchmarks-directory.
+ *
+ * The n-th graph of the graphs and listExpGraphs folders is queried with the n-th template
+ * of the experiment, as in experiment.Experiments.**/
+final class Datasets {
+
+    static final String ns = "http://example.com/";
+
+    private static StandardTemplateManager templateManager;
+
+    private Datasets() {}
+
+    static Path directory() {
+        return Paths.get(System.getProperty("reverseottr.experiment", "../src/experiment"));
+    }
+
+    /** The template manager with the standard library and the templates of the experiment,
+     * which is read once per JVM. **/
+    static synchronized StandardTemplateManager templateManager() {
+        if (templateManager == null) {
+            StandardTemplateManager manager = new StandardTemplateManager();
+            manager.readLibrary(manager.getFormat(StandardFormat.stottr.name()),
+                    directory().resolve("templates/lib.stottr").toString());
+            manager.loadStandardTemplateLibrary();
+            templateManager = manager;
+        }
+        return templateManager;
+    }
+
+    static String templateIRI(int graph) {
+        return Experiments.templateIRI(graph);
+    }
+
+    static Template template(String iri) {
+        return templateManager().getTemplateStore().getTemplate(iri).get();
+    }
+
+    /**
+     * Reads a graph of the experiment, and scales it up by adding scale - 1 corrupted copies,
+     * where the subject, predicate or object of a triple is replaced by a random IRI, see
+     * Experiments.scale. The copies are generated with a fixed seed, so every fork sees the same graph.
+     *
+     * @param folder graphs or listExpGraphs.
+     * @param graph The number of the graph in the folder.
+     * @param scale The number of copies of the graph, including the original.**/
+    static Model graph(String folder, int graph, int scale) {
+        Model original = GraphReader.read(directory().resolve(folder + "/graph" + graph + ".ttl").toString());
+        return Experiments.scale(original, scale, new Random(graph * 31L + scale));
+    }
+}
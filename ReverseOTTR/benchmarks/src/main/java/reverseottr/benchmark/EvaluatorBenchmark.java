@@ -0,0 +1,91 @@
+package reverseottr.benchmark;
+
+import org.apache.jena.rdf.model.Model;
+import org.openjdk.jmh.annotations.*;
+import reverseottr.evaluation.Evaluator;
+import reverseottr.model.Mapping;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries over the graphs of the experiment, with the template of each graph as in
+ * experiment.Experiments. A new Evaluator is created for every query, so the time includes
+ * indexing the graph, but not reading it.
+ *
+ * The graphs folder has the graphs 1 to 13, while listExpGraphs only has 1, 3, 4, 11, 12 and 13,
+ * so each folder is a benchmark of its own, Graphs and ListExpGraphs, with its own graphs.
+ *
+ * experiment.GeneratorCheck checks that the query gives the same result over the scaled graphs
+ * whichever way it is evaluated.**/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class EvaluatorBenchmark {
+
+    /** The number of copies of the graph, see Datasets.graph. **/
+    @Param({"1", "4"})
+    public int scale;
+
+    @Param({"0", "1"})
+    public int maxRepetitions;
+
+    private Model model;
+    private String templateIRI;
+
+    /** graphs or listExpGraphs. **/
+    abstract String folder();
+
+    /** The number of the graph in the folder. **/
+    abstract int graph();
+
+    @Setup
+    public void setup() {
+        this.model = Datasets.graph(folder(), graph(), this.scale);
+        this.templateIRI = Datasets.templateIRI(graph());
+        Datasets.templateManager();
+    }
+
+    @Benchmark
+    public Set<Mapping> evaluateQuery() {
+        Evaluator evaluator = new Evaluator(this.model, Datasets.templateManager(), this.maxRepetitions);
+        return evaluator.evaluateQuery(this.templateIRI);
+    }
+
+    /** The graphs of the graphs folder. **/
+    public static class Graphs extends EvaluatorBenchmark {
+
+        @Param({"1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13"})
+        public int graph;
+
+        @Override
+        String folder() {
+            return "graphs";
+        }
+
+        @Override
+        int graph() {
+            return this.graph;
+        }
+    }
+
+    /** The graphs of the listExpGraphs folder, which are the graphs with list expansion. **/
+    public static class ListExpGraphs extends EvaluatorBenchmark {
+
+        @Param({"1", "3", "4", "11", "12", "13"})
+        public int graph;
+
+        @Override
+        String folder() {
+            return "listExpGraphs";
+        }
+
+        @Override
+        int graph() {
+            return this.graph;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package reverseottr.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import reverseottr.evaluation.ListUnexpander;
+import reverseottr.model.Mapping;
+import reverseottr.model.TermDictionary;
+import reverseottr.reader.RDFToOTTR;
+import xyz.ottr.lutra.model.Instance;
+import xyz.ottr.lutra.model.Template;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reverse list expansion of the triples of the list expansion graphs, with the instance
+ * ottr:Triple(++?x, ?y, ++?z) of the templates ex:Min, ex:Max and ex:Cross of the experiment.
+ * The triples and the unexpanders use one dictionary, as in an Evaluator.**/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListUnexpanderBenchmark {
+
+    /** The number of copies of the graph, see Datasets.graph. **/
+    @Param({"1", "2", "4"})
+    public int scale;
+
+    @Param({"0", "1", "2"})
+    public int maxRepetitions;
+
+    private final TermDictionary dictionary = new TermDictionary();
+    private ListUnexpander min;
+    private ListUnexpander max;
+    private ListUnexpander cross;
+    private Set<Mapping> minTriples;
+    private Set<Mapping> maxTriples;
+    private Set<Mapping> crossTriples;
+
+    @Setup
+    public void setup() {
+        this.min = unexpander(11);
+        this.max = unexpander(12);
+        this.cross = unexpander(13);
+        this.minTriples = RDFToOTTR.asResultSet(Datasets.graph("listExpGraphs", 11, this.scale), false,
+                this.dictionary);
+        this.maxTriples = RDFToOTTR.asResultSet(Datasets.graph("listExpGraphs", 12, this.scale), false,
+                this.dictionary);
+        this.crossTriples = RDFToOTTR.asResultSet(Datasets.graph("listExpGraphs", 13, this.scale), false,
+                this.dictionary);
+    }
+
+    private ListUnexpander unexpander(int graph) {
+        Instance instance = Datasets.template(Datasets.templateIRI(graph)).getPattern().iterator().next();
+        Template template = Datasets.template(instance.getIri());
+        return new ListUnexpander(template.getParameters(), instance.getArguments(), this.maxRepetitions, false,
+                this.dictionary);
+    }
+
+    @Benchmark
+    public Set<Mapping> uncross() {
+        return this.cross.uncross(this.crossTriples);
+    }
+
+    @Benchmark
+    public Set<Mapping> unzipMin() {
+        return this.min.unzipMin(this.minTriples);
+    }
+
+    @Benchmark
+    public Set<Mapping> unzipMax() {
+        return this.max.unzipMax(this.maxTriples);
+    }
+}
@@ -0,0 +1,86 @@
+package reverseottr.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import reverseottr.model.Mapping;
+import reverseottr.model.TermDictionary;
+import reverseottr.model.TermRegistry;
+import xyz.ottr.lutra.model.terms.BlankNodeTerm;
+import xyz.ottr.lutra.model.terms.IRITerm;
+import xyz.ottr.lutra.model.terms.Term;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Joins of sets of mappings, where the mappings share one variable, and some of the
+ * mappings map it to a placeholder instead of an IRI. The mappings take their ids from
+ * a dictionary, as those of an Evaluator do, and so do the mappings the joins build.**/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingBenchmark {
+
+    /** The number of mappings in each set. **/
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    /** The share of the mappings that map the shared variable to a placeholder. **/
+    @Param({"0.0", "0.1"})
+    public double placeholders;
+
+    private final TermDictionary dictionary = new TermDictionary();
+    private Set<Mapping> left;
+    private Set<Mapping> right;
+    private Set<Set<Mapping>> all;
+
+    @Setup
+    public void setup() {
+        Term x = var("x");
+        Term y = var("y");
+        Term z = var("z");
+        Term w = var("w");
+
+        Random random = new Random(size);
+        this.left = mappings(x, "x", y, random);
+        this.right = mappings(z, "z", y, random);
+
+        this.all = new HashSet<>();
+        this.all.add(this.left);
+        this.all.add(this.right);
+        this.all.add(mappings(w, "w", y, random));
+    }
+
+    static Term var(String name) {
+        Term var = new BlankNodeTerm(name);
+        var.setVariable(true);
+        return var;
+    }
+
+    // Mappings from var to a distinct IRI, and from shared to one of size / 10 IRIs.
+    private Set<Mapping> mappings(Term var, String name, Term shared, Random random) {
+        Set<Mapping> result = new HashSet<>();
+        for (int i = 0; i < this.size; i++) {
+            Term value = random.nextDouble() < this.placeholders ? TermRegistry.any
+                    : new IRITerm(Datasets.ns + "y" + random.nextInt(Math.max(1, this.size / 10)));
+
+            result.add(this.dictionary.builder()
+                    .put(var, new IRITerm(Datasets.ns + name + i))
+                    .put(shared, value)
+                    .build());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Set<Mapping> join() {
+        return Mapping.join(this.left, this.right);
+    }
+
+    @Benchmark
+    public Set<Mapping> joinAll() {
+        return Mapping.joinAll(this.all);
+    }
+}
@@ -0,0 +1,41 @@
+package reverseottr.benchmark;
+
+import org.apache.jena.rdf.model.Model;
+import org.openjdk.jmh.annotations.*;
+import reverseottr.model.Mapping;
+import reverseottr.reader.RDFToOTTR;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/** Translation of the triples of a graph of the experiment into mappings. **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RDFToOTTRBenchmark {
+
+    @Param({"5"})
+    public int graph;
+
+    /** The number of copies of the graph, see Datasets.graph. **/
+    @Param({"1", "4", "16"})
+    public int scale;
+
+    @Param({"false", "true"})
+    public boolean nullable;
+
+    private Model model;
+
+    @Setup
+    public void setup() {
+        this.model = Datasets.graph("graphs", this.graph, this.scale);
+    }
+
+    @Benchmark
+    public Set<Mapping> asResultSet() {
+        return RDFToOTTR.asResultSet(this.model, this.nullable);
+    }
+}
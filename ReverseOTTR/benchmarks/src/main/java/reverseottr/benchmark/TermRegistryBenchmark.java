@@ -0,0 +1,173 @@
+package reverseottr.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import reverseottr.model.Mapping;
+import reverseottr.model.Placeholder;
+import reverseottr.model.RListTerm;
+import reverseottr.model.TermRegistry;
+import xyz.ottr.lutra.model.terms.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The greatest lower bound and the partial order of terms, over a fixed set of pairs of
+ * ground terms, of placeholders and ground terms, or of lists of both.
+ *
+ * lessOrEqualLattice computes the partial order as TermRegistry did before lessOrEqual was
+ * answered from a precomputed table, by probing TermRegistry.lattice with a new mapping for
+ * each pair, as a baseline for lessOrEqual. The setup checks that the two give the same answers.**/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TermRegistryBenchmark {
+
+    private static final int PAIRS = 1024;
+
+    @Param({"ground", "placeholder", "list"})
+    public String kind;
+
+    /** The number of elements of the lists, for the list kind. **/
+    @Param({"4"})
+    public int listSize;
+
+    private Term[] left;
+    private Term[] right;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(PAIRS);
+        this.left = new Term[PAIRS];
+        this.right = new Term[PAIRS];
+
+        for (int i = 0; i < PAIRS; i++) {
+            switch (this.kind) {
+                case "ground":
+                    this.left[i] = ground(random);
+                    this.right[i] = ground(random);
+                    break;
+                case "placeholder":
+                    this.left[i] = placeholder(random);
+                    this.right[i] = random.nextBoolean() ? placeholder(random) : ground(random);
+                    break;
+                case "list":
+                    this.left[i] = list(random, false);
+                    this.right[i] = list(random, random.nextBoolean());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown kind of terms: " + this.kind);
+            }
+
+            if (TermRegistry.lessOrEqual(this.left[i], this.right[i])
+                    != LatticeOrder.lessOrEqual(this.left[i], this.right[i])) {
+                throw new IllegalStateException("lessOrEqual differs from the baseline for "
+                        + this.left[i] + " and " + this.right[i]);
+            }
+        }
+    }
+
+    // One of few IRIs and blank nodes, such that some of the pairs are equal.
+    private static Term ground(Random random) {
+        int n = random.nextInt(8);
+        return n < 6 ? new IRITerm(Datasets.ns + "e" + n) : new BlankNodeTerm("b" + n);
+    }
+
+    private static Term placeholder(Random random) {
+        Term[] placeholders = { TermRegistry.any, TermRegistry.any_nb, TermRegistry.any_no,
+                TermRegistry.any_nbno, new NoneTerm() };
+        return placeholders[random.nextInt(placeholders.length)];
+    }
+
+    // An unexpanded list of ground terms and placeholders, which may end with any_trail.
+    private RListTerm list(Random random, boolean trail) {
+        List<Term> terms = new ArrayList<>();
+        for (int i = 0; i < this.listSize; i++) {
+            terms.add(random.nextInt(4) == 0 ? placeholder(random) : ground(random));
+        }
+        if (trail) terms.set(terms.size() - 1, TermRegistry.any_trail);
+        return new RListTerm(terms, true);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public void GLB(Blackhole blackhole) {
+        for (int i = 0; i < PAIRS; i++) {
+            blackhole.consume(TermRegistry.GLB(this.left[i], this.right[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public void lessOrEqual(Blackhole blackhole) {
+        for (int i = 0; i < PAIRS; i++) {
+            blackhole.consume(TermRegistry.lessOrEqual(this.left[i], this.right[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public void lessOrEqualLattice(Blackhole blackhole) {
+        for (int i = 0; i < PAIRS; i++) {
+            blackhole.consume(LatticeOrder.lessOrEqual(this.left[i], this.right[i]));
+        }
+    }
+
+    /** The partial order computed from TermRegistry.lattice, without the table. **/
+    static final class LatticeOrder {
+
+        private LatticeOrder() {}
+
+        static boolean lessOrEqual(Term t1, Term t2) {
+            if (t1.equals(t2)) return true;
+
+            if (TermRegistry.lattice.contains(new Mapping(t1, t2))) return true;
+
+            if (t1 instanceof NoneTerm && t2 instanceof NoneTerm) return true;
+
+            if (t1 instanceof NoneTerm && lessOrEqual(TermRegistry.any_nb, t2)) return true;
+
+            if (t1 instanceof BlankNodeTerm && lessOrEqual(TermRegistry.any_no, t2)) return true;
+
+            if ((t1 instanceof IRITerm || t1 instanceof LiteralTerm || t1 instanceof ListTerm)
+                    && lessOrEqual(TermRegistry.any_nbno, t2)) return true;
+
+            if (t1 instanceof ListTerm && t2 instanceof ListTerm) {
+                return lessOrEqualList((ListTerm) t1, (ListTerm) t2);
+            }
+
+            if (t1 instanceof Placeholder && t2 instanceof Placeholder) {
+                for (Mapping map : TermRegistry.lattice) {
+                    if (map.containsVar(t1)) return lessOrEqual(map.get(t1), t2);
+                }
+            }
+
+            return false;
+        }
+
+        private static boolean lessOrEqualList(ListTerm t1, ListTerm t2) {
+            if (t1.getIdentifier().equals(t2.getIdentifier())) return true;
+
+            if (!(t2 instanceof RListTerm && ((RListTerm) t2).isUnexpanded())) return false;
+
+            List<Term> list1 = t1.asList();
+            List<Term> list2 = t2.asList();
+            if (list1.isEmpty() && list2.isEmpty()) return true;
+            if (list1.size() < list2.size() || list2.isEmpty()) return false;
+
+            boolean trail = list2.get(list2.size() - 1).equals(TermRegistry.any_trail);
+            if (list1.size() > list2.size() && !trail) return false;
+
+            for (int i = 0; i < list2.size(); i++) {
+                if (!lessOrEqual(list1.get(i), list2.get(i)) && !list2.get(i).equals(TermRegistry.any_trail)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
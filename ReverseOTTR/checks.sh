@@ -0,0 +1,47 @@
+#!/bin/bash
+# Records the baseline from the first version of Reverse OTTR, and runs the checks of the
+# experiment-package against the current version, see experiment.Baseline.
+#
+# Baseline and Results are copied into the first version and run there, then EquivalenceCheck,
+# IncrementalCheck, GeneratorCheck and ListTermCheck are run on the sources in src. Lutra and
+# its dependencies are taken from the Maven build of the benchmarks, or from the class path
+# given as the first argument. The second argument is the version to record the baseline from,
+# the first commit by default. The exit status is 1 if a check has a mismatch.
+#
+#   ./checks.sh [classpath] [revision]
+set -e
+
+cd "$(dirname "$0")"
+
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+
+if [ -n "$1" ]; then
+    classpath=$1
+else
+    mvn -q -f benchmarks/pom.xml dependency:build-classpath -Dmdep.outputFile="$work/classpath.txt"
+    classpath=$(cat "$work/classpath.txt")
+fi
+revision=${2:-$(git rev-list --max-parents=0 HEAD)}
+
+# The first version, with the classes that record the baseline.
+mkdir -p "$work/old" "$work/old-classes"
+git archive "$revision" src | tar -x -C "$work/old"
+cp src/experiment/Baseline.java src/experiment/Results.java "$work/old/src/experiment/"
+javac --release 11 -nowarn -cp "$classpath" -d "$work/old-classes" \
+    $(find "$work/old/src/reverseottr" -name '*.java') \
+    "$work/old/src/experiment/Baseline.java" "$work/old/src/experiment/Results.java"
+java -cp "$work/old-classes:$work/old/src:$classpath" experiment.Baseline "$work/baseline"
+
+# The current version.
+mkdir -p "$work/classes"
+javac --release 11 -nowarn -cp "$classpath" -d "$work/classes" \
+    $(find src/reverseottr src/experiment -name '*.java')
+current="$work/classes:src:$classpath"
+
+status=0
+java -cp "$current" experiment.EquivalenceCheck "$work/baseline" || status=1
+java -cp "$current" experiment.IncrementalCheck || status=1
+java -cp "$current" experiment.GeneratorCheck || status=1
+java -cp "$current" experiment.ListTermCheck || status=1
+exit $status
@@ -0,0 +1,255 @@
+package experiment;
+
+import org.apache.jena.rdf.model.Model;
+import reverseottr.evaluation.Evaluator;
+import reverseottr.evaluation.ListUnexpander;
+import reverseottr.model.Mapping;
+import reverseottr.model.TermRegistry;
+import reverseottr.reader.GraphReader;
+import xyz.ottr.lutra.api.StandardFormat;
+import xyz.ottr.lutra.api.StandardTemplateManager;
+import xyz.ottr.lutra.model.Instance;
+import xyz.ottr.lutra.model.Parameter;
+import xyz.ottr.lutra.model.Template;
+import xyz.ottr.lutra.model.terms.IRITerm;
+import xyz.ottr.lutra.model.terms.NoneTerm;
+import xyz.ottr.lutra.model.terms.Term;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Records the results that EquivalenceCheck compares the evaluation with.
+ *
+ * For every graph in the graphs- and listExpGraphs-folders and every number of repetitions,
+ * the result of the template of the graph in Experiments is written to a file of the lines
+ * of Results, without the labels of blank nodes.
+ *
+ * The results of reverse list expansion are also written for generated inputs, such that the
+ * ListUnexpander is checked on more inputs than the graphs give. The inputs are sets of mappings
+ * from the parameters of the Triple template, with a few subjects, predicates and objects, and
+ * sometimes a placeholder or none, as in the evaluations of Triple instances. The list
+ * unexpanders are those of the list expanded instances of the templates in lib.stottr.
+ *
+ * This class and Results only use the parts of the Evaluator and the ListUnexpander that were
+ * there from the start, so the baseline can be recorded from an older version, by copying the
+ * two classes into it, and then be checked against the current version.
+ *
+ * The arguments are the directory to write to, baseline by default, and the numbers of
+ * repetitions, 0,1 by default.**/
+public class Baseline {
+
+    private static final String ns = "http://example.com/";
+
+    static final String[] folders = {"graphs", "listExpGraphs"};
+
+    /** The reverse list expansions with recorded results, and the templates with an instance of them. **/
+    static final String[][] unexpansions = {
+            {"unzipMin", ns + "Min"},
+            {"unzipMax", ns + "Max"},
+            {"uncross", ns + "Cross"}};
+
+    /** The numbers of repetitions the reverse list expansions are recorded for. **/
+    static final int[] unexpansionRepetitions = {0, 1, 2};
+
+    /** The number of generated inputs of each reverse list expansion. **/
+    static final int CASES = 200;
+
+    // The size of the largest inputs for each number of repetitions. The inputs are smaller with
+    // repetitions, since every list with repeated elements is enumerated.
+    private static final int[] maxCaseSizes = {6, 4, 3};
+
+    // The templates of Experiments, which are not visible to other classes in older versions.
+    private static final String[] templateIRIs = {
+            "http://tpl.ottr.xyz/rdfs/0.2/TypedResourceDescription",
+            "http://tpl.ottr.xyz/rdf/0.1/StatementTriple",
+            "http://tpl.ottr.xyz/owl/declaration/0.1/Ontology",
+            "http://tpl.ottr.xyz/owl/declaration/0.1/ObjectProperty",
+            "http://tpl.ottr.xyz/owl/util/0.1/ObjectCardinality",
+            "http://tpl.ottr.xyz/owl/restriction/0.1/ObjectAllValuesFrom",
+            "http://tpl.ottr.xyz/owl/axiom/0.1/SubObjectPropertyOf",
+            "http://tpl.ottr.xyz/owl/axiom/0.1/EquivalentObjectProperty",
+            "http://tpl.ottr.xyz/owl/axiom/0.1/EquivalentDataProperty",
+            "http://tpl.ottr.xyz/owl/axiom/0.1/EquivalentClass",
+            ns + "Min",
+            ns + "Max",
+            ns + "Cross"};
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(args.length > 0 ? args[0] : "baseline");
+        List<Integer> repetitions = integers(args.length > 1 ? args[1] : "0,1");
+
+        StandardTemplateManager templateManager = templateManager();
+
+        for (String folder : folders) {
+            for (int graph : graphs(folder)) {
+                Model model = GraphReader.read(resource(folder + "/graph" + graph + ".ttl"));
+
+                for (int r : repetitions) {
+                    Evaluator evaluator = new Evaluator(model, templateManager, r);
+                    Set<Mapping> result = evaluator.evaluateQuery(templateIRI(graph));
+
+                    Results.write(queryFile(directory, folder, graph, r), Results.canonical(result, false));
+                    System.out.println(folder + "/graph" + graph + ", " + r + " repetitions: "
+                            + result.size() + " mappings");
+                }
+            }
+        }
+
+        for (String[] unexpansion : unexpansions) {
+            for (int r : unexpansionRepetitions) {
+                List<String> lines = unexpand(templateManager, unexpansion, r);
+
+                Results.write(unexpansionFile(directory, unexpansion[0], r), lines);
+                System.out.println(unexpansion[0] + ", " + r + " repetitions: " + lines.size() + " mappings");
+            }
+        }
+    }
+
+    /**
+     * Applies a reverse list expansion to every generated input.
+     *
+     * @return The lines of the results, each starting with the number of its input.**/
+    static List<String> unexpand(StandardTemplateManager templateManager, String[] unexpansion, int repetitions) {
+        Instance instance = template(templateManager, unexpansion[1]).getPattern().iterator().next();
+        List<Parameter> parameters = template(templateManager, instance.getIri()).getParameters();
+        ListUnexpander unexpander = new ListUnexpander(parameters, instance.getArguments(), repetitions);
+
+        List<String> lines = new ArrayList<>();
+        for (int c = 0; c < CASES; c++) {
+            Set<Mapping> input = unexpansionInput(parameters, c, repetitions);
+            Set<Mapping> output;
+
+            if (unexpansion[0].equals("unzipMin")) {
+                output = unexpander.unzipMin(input);
+            } else if (unexpansion[0].equals("unzipMax")) {
+                output = unexpander.unzipMax(input);
+            } else {
+                output = unexpander.uncross(input);
+            }
+
+            for (String line : Results.canonical(output, false)) {
+                lines.add(c + ": " + line);
+            }
+        }
+
+        return lines;
+    }
+
+    // The input with the given number, from the subject, predicate and object variables of Triple.
+    private static Set<Mapping> unexpansionInput(List<Parameter> parameters, int c, int repetitions) {
+        Random random = new Random(c);
+        List<Term> vars = new ArrayList<>();
+        parameters.forEach(parameter -> vars.add(parameter.getTerm()));
+
+        int size = 1 + random.nextInt(maxCaseSizes[Math.min(repetitions, maxCaseSizes.length - 1)]);
+        int values = 1 + random.nextInt(3);
+        boolean placeholders = random.nextInt(3) == 0;
+
+        Set<Mapping> input = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            List<Term> terms = new ArrayList<>();
+            terms.add(element(random, "s", values, placeholders));
+            terms.add(random.nextInt(10) == 0 && placeholders ? TermRegistry.any
+                    : new IRITerm(ns + "p" + random.nextInt(2)));
+            terms.add(element(random, "o", values, placeholders));
+
+            input.add(new Mapping(vars, terms));
+        }
+
+        return input;
+    }
+
+    private static Term element(Random random, String name, int values, boolean placeholders) {
+        int choice = random.nextInt(10);
+        if (placeholders && choice == 0) return TermRegistry.any;
+        if (choice == 1) return new NoneTerm();
+        return new IRITerm(ns + name + random.nextInt(values));
+    }
+
+    // As getTemplate of the Evaluator.
+    private static Template template(StandardTemplateManager templateManager, String iri) {
+        if (templateManager.getTemplateStore().containsTemplate(iri)) {
+            return templateManager.getTemplateStore().getTemplate(iri).get();
+        }
+        return templateManager.getStandardLibrary().getTemplate(iri).get();
+    }
+
+    /** The template queried over the n-th graph of a folder. **/
+    static String templateIRI(int graph) {
+        return templateIRIs[graph - 1];
+    }
+
+    /** The number of templates of Experiments. **/
+    static int templates() {
+        return templateIRIs.length;
+    }
+
+    /** The file of the result of the query of a graph. **/
+    static Path queryFile(Path directory, String folder, int graph, int repetitions) {
+        return directory.resolve(folder).resolve("graph" + graph + "-r" + repetitions + ".txt");
+    }
+
+    /** The file of the results of a reverse list expansion on the generated inputs. **/
+    static Path unexpansionFile(Path directory, String unexpansion, int repetitions) {
+        return directory.resolve("unexpansions").resolve(unexpansion + "-r" + repetitions + ".txt");
+    }
+
+    /** The numbers of the repetitions the results of the graphs are recorded for. **/
+    static List<Integer> recordedRepetitions(Path directory, String folder, int graph) throws IOException {
+        Path folderDirectory = directory.resolve(folder);
+        if (!Files.isDirectory(folderDirectory)) return Collections.emptyList();
+
+        String prefix = "graph" + graph + "-r";
+        try (Stream<Path> files = Files.list(folderDirectory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && name.endsWith(".txt"))
+                    .map(name -> Integer.parseInt(name.substring(prefix.length(), name.length() - 4)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /** The numbers of the graphs in a folder, in order. **/
+    static List<Integer> graphs(String folder) throws IOException {
+        try (Stream<Path> files = Files.list(Paths.get(resource(folder)))) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.matches("graph[0-9]+\\.ttl"))
+                    .map(name -> Integer.parseInt(name.substring(5, name.length() - 4)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /** A template manager with the standard library and the templates of the experiment. **/
+    static StandardTemplateManager templateManager() {
+        StandardTemplateManager templateManager = new StandardTemplateManager();
+        templateManager.readLibrary(templateManager.getFormat(StandardFormat.stottr.name()),
+                resource("templates/lib.stottr"));
+        templateManager.loadStandardTemplateLibrary();
+
+        return templateManager;
+    }
+
+    static String resource(String name) {
+        try {
+            return Paths.get(Baseline.class.getResource(name).toURI()).toString();
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(name, e);
+        }
+    }
+
+    private static List<Integer> integers(String list) {
+        List<Integer> result = new ArrayList<>();
+        for (String number : list.split(",")) {
+            result.add(Integer.parseInt(number.trim()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,278 @@
+package experiment;
+
+import org.apache.jena.rdf.model.Model;
+import reverseottr.evaluation.EvaluationProfile;
+import reverseottr.evaluation.Evaluator;
+import reverseottr.evaluation.PreparedQuery;
+import reverseottr.model.Mapping;
+import reverseottr.reader.GraphReader;
+import reverseottr.reader.GraphSnapshot;
+import xyz.ottr.lutra.api.StandardTemplateManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * Checks that queries give the same results as in the version the baseline was recorded from,
+ * see Baseline, whichever way they are evaluated.
+ *
+ * For every graph and number of repetitions with a recorded result, the query of the graph is
+ * evaluated in the following ways, and every result must have the same lines as the recorded one:
+ *
+ *   - by evaluateQuery over a Model, over the RDF file and over a snapshot of the file, which
+ *     must be neither stale nor fail verify,
+ *   - as a PreparedQuery, executed over the Evaluator that prepared it, over another Evaluator,
+ *     and over one Evaluator from several threads at the same time,
+ *   - by evaluateQueries, together with the templates of the standard library in Experiments,
+ *     where the results of the other templates must equal their results by evaluateQuery,
+ *   - by evaluateQueryLazily, where the stream may not give a mapping twice,
+ *   - with hash consing, and with the cache kept across queries, both the first and the second time,
+ *   - without expanding defaults, after expanding them with expandDefaults,
+ *   - with bag lists, after expanding them with expandBags,
+ *   - over one Evaluator, which shares its list unexpanders between queries, after the other
+ *     list templates of Experiments on the graphs of those templates, and with bag lists
+ *     turned on and off again,
+ *   - with profiling, by evaluateQuery and evaluateQueryLazily, where the root of the profile must
+ *     be the query with the size of the result as output, and every node of the profile must be
+ *     ended, the profile of the stream must have the streamTemplate stage, and again after
+ *     profiling is turned off.
+ *
+ * The reverse list expansions recorded for generated inputs are applied to the same inputs,
+ * and must give the same lines, which checks the grouping of compatible mappings in unzipMin
+ * and unzipMax, and the compaction of the lists of uncross, on inputs with and without
+ * placeholders.
+ *
+ * The argument is the directory of the baseline, baseline by default. Every mismatch is printed,
+ * and the exit status is 1 if there is one.**/
+public class EquivalenceCheck {
+
+    private static final int THREADS = 4;
+    // The first templates of Experiments, which are from the standard library.
+    private static final int LIBRARY_TEMPLATES = 10;
+
+    private final StandardTemplateManager templateManager;
+    private final Path snapshots;
+    private int checks = 0;
+    private int mismatches = 0;
+
+    private EquivalenceCheck(StandardTemplateManager templateManager, Path snapshots) {
+        this.templateManager = templateManager;
+        this.snapshots = snapshots;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(args.length > 0 ? args[0] : "baseline");
+
+        EquivalenceCheck check = new EquivalenceCheck(Baseline.templateManager(),
+                Files.createTempDirectory("snapshots"));
+
+        for (String folder : Baseline.folders) {
+            for (int graph : Baseline.graphs(folder)) {
+                List<Integer> repetitions = Baseline.recordedRepetitions(directory, folder, graph);
+                if (repetitions.isEmpty()) {
+                    check.fail(folder + "/graph" + graph, "no result is recorded in " + directory);
+                }
+
+                for (int r : repetitions) {
+                    check.checkQuery(folder, graph, r, Results.read(Baseline.queryFile(directory, folder, graph, r)));
+                }
+            }
+        }
+
+        for (String[] unexpansion : Baseline.unexpansions) {
+            for (int r : Baseline.unexpansionRepetitions) {
+                String name = unexpansion[0] + ", " + r + " repetitions";
+                Path file = Baseline.unexpansionFile(directory, unexpansion[0], r);
+
+                if (Files.exists(file)) {
+                    check.compare(name, "generated inputs", Results.read(file),
+                            Baseline.unexpand(check.templateManager, unexpansion, r));
+                } else {
+                    check.fail(name, "no result is recorded in " + directory);
+                }
+            }
+        }
+
+        System.out.println(check.checks + " checks, " + check.mismatches + " mismatches");
+        if (check.mismatches > 0) System.exit(1);
+    }
+
+    private void checkQuery(String folder, int graph, int repetitions, List<String> expected) throws IOException {
+        String name = folder + "/graph" + graph + ", " + repetitions + " repetitions";
+        String source = Baseline.resource(folder + "/graph" + graph + ".ttl");
+        String iri = Baseline.templateIRI(graph);
+        Model model = GraphReader.read(source);
+
+        compare(name, "Model", expected, evaluator(model, repetitions).evaluateQuery(iri));
+        compare(name, "file", expected,
+                new Evaluator(source, this.templateManager, repetitions).evaluateQuery(iri));
+
+        Path snapshotFile = this.snapshots.resolve(folder + "-graph" + graph + ".snapshot");
+        snapshotFile.toFile().deleteOnExit();
+        GraphSnapshot snapshot = GraphSnapshot.load(source, snapshotFile);
+        if (snapshot.isStale(source) || !snapshot.verify(source)) {
+            fail(name, "the snapshot does not match its source file");
+        }
+        compare(name, "snapshot", expected,
+                new Evaluator(snapshot, this.templateManager, repetitions).evaluateQuery(iri));
+
+        Evaluator preparing = evaluator(model, repetitions);
+        PreparedQuery query = preparing.prepare(iri);
+        compare(name, "prepared", expected, query.execute(preparing));
+        compare(name, "prepared, executed over the file", expected,
+                query.execute(new Evaluator(source, this.templateManager, repetitions)));
+
+        for (Set<Mapping> result : executeConcurrently(query, evaluator(model, repetitions))) {
+            compare(name, "prepared, executed from " + THREADS + " threads", expected, result);
+        }
+
+        List<String> batch = new ArrayList<>();
+        for (int template = 1; template <= LIBRARY_TEMPLATES; template++) {
+            batch.add(Baseline.templateIRI(template));
+        }
+        if (!batch.contains(iri)) batch.add(iri);
+
+        Map<String, Set<Mapping>> results = evaluator(model, repetitions).evaluateQueries(batch);
+        compare(name, "batch of " + batch.size() + " queries", expected, results.get(iri));
+
+        for (String other : batch) {
+            if (other.equals(iri)) continue;
+
+            List<String> single = Results.canonical(evaluator(model, repetitions).evaluateQuery(other), false);
+            compare(name, "batch, " + other, single, results.get(other));
+        }
+
+        compare(name, "lazy stream", expected,
+                evaluator(model, repetitions).evaluateQueryLazily(iri).collect(Collectors.toList()));
+
+        Evaluator hashConsing = evaluator(model, repetitions);
+        hashConsing.setHashConsing(true);
+        compare(name, "hash consing", expected, hashConsing.evaluateQuery(iri));
+
+        Evaluator cached = evaluator(model, repetitions);
+        cached.setCacheAcrossQueries(true);
+        compare(name, "cache across queries, first", expected, cached.evaluateQuery(iri));
+        compare(name, "cache across queries, second", expected, cached.evaluateQuery(iri));
+
+        Evaluator defaults = evaluator(model, repetitions);
+        defaults.setExpandDefaults(false);
+        compare(name, "defaults expanded afterwards", expected,
+                defaults.expandDefaults(defaults.evaluateQuery(iri)));
+
+        Evaluator shared = evaluator(model, repetitions);
+        if (graph > LIBRARY_TEMPLATES) {
+            for (int template = LIBRARY_TEMPLATES + 1; template <= Baseline.templates(); template++) {
+                if (template == graph) continue;
+
+                String other = Baseline.templateIRI(template);
+                List<String> single = Results.canonical(evaluator(model, repetitions).evaluateQuery(other), false);
+                compare(name, "shared unexpanders, " + other, single, shared.evaluateQuery(other));
+            }
+        }
+
+        compare(name, "shared unexpanders", expected, shared.evaluateQuery(iri));
+        shared.setBagLists(true);
+        compare(name, "shared unexpanders, bag lists expanded afterwards", expected,
+                shared.expandBags(shared.evaluateQuery(iri)));
+        shared.setBagLists(false);
+        compare(name, "shared unexpanders, after bag lists", expected, shared.evaluateQuery(iri));
+
+        Evaluator bags = evaluator(model, repetitions);
+        bags.setBagLists(true);
+        compare(name, "bag lists expanded afterwards", expected, bags.expandBags(bags.evaluateQuery(iri)));
+
+        Evaluator profiling = evaluator(model, repetitions);
+        profiling.setProfiling(true);
+        compare(name, "profiled", expected, profiling.evaluateQuery(iri));
+        EvaluationProfile profile = profiling.getProfile();
+        checkProfile(name, "profiled", iri, expected.size(), profile);
+        compare(name, "profiled lazy stream", expected,
+                profiling.evaluateQueryLazily(iri).collect(Collectors.toList()));
+        if (profiling.getProfile() == profile) fail(name + ", profiled lazy stream", "no new profile is recorded");
+        checkProfile(name, "profiled lazy stream", iri, expected.size(), profiling.getProfile());
+        if (profiling.getProfile() != null && profiling.getProfile().getRoot().getChildren().stream()
+                .noneMatch(node -> node.getName().equals("streamTemplate"))) {
+            fail(name + ", profiled lazy stream", "the profile is not of the plan of the stream");
+        }
+        profiling.setProfiling(false);
+        compare(name, "after profiling", expected, profiling.evaluateQuery(iri));
+    }
+
+    // Checks that the profile is of the query, with the size of its result, and that every node is ended.
+    private void checkProfile(String name, String path, String iri, int size, EvaluationProfile profile) {
+        if (profile == null) {
+            fail(name + ", " + path, "no profile is recorded");
+            return;
+        }
+
+        EvaluationProfile.Node root = profile.getRoot();
+        this.checks++;
+        if (!root.getKind().equals(EvaluationProfile.QUERY) || !root.getName().equals(iri)
+                || root.getOutput() != size || root.getChildren().isEmpty() || !ended(root)) {
+            this.mismatches++;
+            System.out.println(name + ", " + path + ": the profile is incomplete");
+            System.out.print(profile);
+        }
+    }
+
+    private static boolean ended(EvaluationProfile.Node node) {
+        if (node.getTimeNanos() < 0 || node.getOutput() < 0) return false;
+        return node.getChildren().stream().allMatch(EquivalenceCheck::ended);
+    }
+
+    // Executes a query over one Evaluator from THREADS threads, which all start at the same time.
+    private static List<Set<Mapping>> executeConcurrently(PreparedQuery query, Evaluator evaluator) {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(THREADS);
+
+        try {
+            List<Future<Set<Mapping>>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.countDown();
+                    start.await();
+                    return query.execute(evaluator);
+                }));
+            }
+
+            List<Set<Mapping>> results = new ArrayList<>();
+            for (Future<Set<Mapping>> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("The concurrent execution of " + query.getIri() + " failed.", e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private Evaluator evaluator(Model model, int repetitions) {
+        return new Evaluator(model, this.templateManager, repetitions);
+    }
+
+    private void compare(String name, String path, List<String> expected, Collection<Mapping> result) {
+        compare(name, path, expected, Results.canonical(result, false));
+    }
+
+    private void compare(String name, String path, List<String> expected, List<String> actual) {
+        this.checks++;
+        if (!expected.equals(actual)) {
+            this.mismatches++;
+            System.out.println(name + ", " + path + ": the result differs");
+            Results.printDifference(expected, actual, 5);
+        }
+    }
+
+    private void fail(String name, String message) {
+        this.checks++;
+        this.mismatches++;
+        System.out.println(name + ": " + message);
+    }
+}
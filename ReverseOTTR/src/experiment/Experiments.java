@@ -1,227 +1,245 @@
-package experiment;
-
-import org.apache.jena.datatypes.TypeMapper;
-import org.apache.jena.graph.Factory;
-import org.apache.jena.rdf.model.*;
-import org.apache.jena.rdf.model.impl.StatementImpl;
-import org.apache.jena.shared.PrefixMapping;
-import reverseottr.evaluation.Evaluator;
-import reverseottr.model.Mapping;
-import reverseottr.model.TermRegistry;
-import reverseottr.reader.GraphReader;
-import reverseottr.reader.RDFToOTTR;
-import xyz.ottr.lutra.OTTR;
-import xyz.ottr.lutra.TemplateManager;
-import xyz.ottr.lutra.api.StandardFormat;
-import xyz.ottr.lutra.api.StandardTemplateManager;
-import xyz.ottr.lutra.io.Format;
-import xyz.ottr.lutra.model.Instance;
-import xyz.ottr.lutra.model.Parameter;
-import xyz.ottr.lutra.model.terms.*;
-import xyz.ottr.lutra.system.ResultStream;
-import xyz.ottr.lutra.wottr.WOTTR;
-import xyz.ottr.lutra.wottr.parser.WTermParser;
-
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintStream;
-import java.net.URL;
-import java.util.*;
-
-/**
- * An implementation of an experiment on the Reverse OTTR implementation in the reverseottr-package.
- *
- * The experiment tests the execution time of the Reverse OTTR implementation for uniformly generated
- * graphs. These graphs are then supplemented with corrupted triples, i.e. triples where the subject,
- * predicate or object is replaced by random IRIs. The implementation is then tested on these corrupted
- * graphs which are increased incrementally until the implementation times out, i.e. runs for 60s
- * without finishing.
- *
- * The experiment is conducted on 10 templates from the standard template library,
- * imported via the loadStandardTemplateLibrary-method from the StandardTemplateManager-class.
- * Additionally, the experiment was repeated with the 3 self-made templates, found in the
- * templates-folder.**/
-public class Experiments {
-
-    private static final Map<BlankNodeTerm, Resource> createdBlankNodes = new HashMap<>();
-    private final static String ns = "http://example.com/";
-    private final static String[] templateIRIs = {
-            "http://tpl.ottr.xyz/rdfs/0.2/TypedResourceDescription",
-            "http://tpl.ottr.xyz/rdf/0.1/StatementTriple",
-            "http://tpl.ottr.xyz/owl/declaration/0.1/Ontology",
-            "http://tpl.ottr.xyz/owl/declaration/0.1/ObjectProperty",
-            "http://tpl.ottr.xyz/owl/util/0.1/ObjectCardinality",
-            "http://tpl.ottr.xyz/owl/restriction/0.1/ObjectAllValuesFrom",
-            "http://tpl.ottr.xyz/owl/axiom/0.1/SubObjectPropertyOf",
-            "http://tpl.ottr.xyz/owl/axiom/0.1/EquivalentObjectProperty",
-            "http://tpl.ottr.xyz/owl/axiom/0.1/EquivalentDataProperty",
-            "http://tpl.ottr.xyz/owl/axiom/0.1/EquivalentClass",
-            ns + "Min",
-            ns + "Max",
-            ns + "Cross"};
-
-    /**
-     * The main experiment method, printing the execution time of the Reverse OTTR implementation
-     * for ever larger input-graphs, generated by taking the union of the initial graph with
-     * corrupted versions of it.**/
-    private static void run(Model model, StandardTemplateManager manager, String queryIRI, int repetitions) {
-        int n = 0;
-        long time = 0;
-
-        Model testModel = ModelFactory.createDefaultModel().add(model);
-
-        while (time < 60000) {
-            System.out.println("Iteration: " + n);
-            System.out.println("Graph size: " + model.size());
-
-            Evaluator evaluator = new Evaluator(model, manager, repetitions);
-
-            long t1 = System.currentTimeMillis();
-            Set<Mapping> result = evaluator.evaluateQuery(queryIRI);
-            long t2 = System.currentTimeMillis();
-
-            time = t2 - t1;
-            System.out.println("Execution time: " + time + " ms");
-            System.out.println("Result size: " + result.size());
-            System.out.println();
-
-            model.add(scramble(testModel));
-            n++;
-        }
-    }
-
-    /**
-     * Generates a corrupted version of the input-graph given by the model-parameter.**/
-    private static Model scramble(Model model) {
-        Model result = ModelFactory.createDefaultModel();
-        result.setNsPrefixes(model.getNsPrefixMap());
-
-        Set<Mapping> mappings = RDFToOTTR.asResultSet(model, false);
-        for (Mapping mapping : mappings) {
-            result.add(mappingToStatement(result, scrambleTriple(mapping)));
-        }
-
-        return result;
-    }
-
-    private static Mapping scrambleTriple(Mapping mapping) {
-        List<Parameter> params = OTTR.BaseTemplate.Triple.getParameters();
-        Term sVar = params.get(0).getTerm();
-        Term pVar = params.get(1).getTerm();
-        Term oVar = params.get(2).getTerm();
-
-        Term s = mapping.get(sVar);
-        Term p = mapping.get(pVar);
-        Term o = mapping.get(oVar);
-
-        if (Math.random() < 0.33) s = randomIRITerm();
-        if (Math.random() < 0.33) p = randomIRITerm();
-        if (Math.random() < 0.33) o = randomIRITerm();
-
-        Mapping result = new Mapping();
-        result.put(sVar, s);
-        result.put(pVar, p);
-        result.put(oVar, o);
-
-        return result;
-    }
-
-    private static Term randomIRITerm() {
-        int random = (int) (Math.random()*Integer.MAX_VALUE);
-        return new IRITerm(ns + "r" + random);
-    }
-
-    private static Statement mappingToStatement(Model model, Mapping mapping) {
-        List<Parameter> params = OTTR.BaseTemplate.Triple.getParameters();
-
-        Term sVar = params.get(0).getTerm();
-        Term pVar = params.get(1).getTerm();
-        Term oVar = params.get(2).getTerm();
-
-        Term s = mapping.get(sVar);
-        Term p = mapping.get(pVar);
-        Term o = mapping.get(oVar);
-
-        return model.createStatement(term(model, s).asResource(),
-                term(model, p).as(Property.class),
-                term(model, o));
-    }
-
-    static RDFNode term(Model model, Term term) {
-        if (term instanceof ListTerm) {
-            return listTerm(model, (ListTerm) term);
-        } else if (term instanceof IRITerm) {
-            return iriTerm(model, (IRITerm) term);
-        } else if (term instanceof LiteralTerm) {
-            return literalTerm(model, (LiteralTerm) term);
-        } else if (term instanceof BlankNodeTerm) {
-            return blankNodeTerm(model, (BlankNodeTerm) term);
-        } else if (term instanceof NoneTerm) {
-            return none(model);
-        }
-
-        return null;
-    }
-
-    private static RDFList listTerm(Model model, ListTerm term) {
-        Iterator<RDFNode> iterator = term.asList().stream()
-                .map(t -> term(model, t))
-                .iterator();
-        return model.createList(iterator);
-    }
-
-    private static Resource iriTerm(Model model, IRITerm term) {
-        return model.createResource(term.getIri());
-    }
-
-    private static Literal literalTerm(Model model, LiteralTerm term) {
-        String val = term.getValue();
-
-        if (term.getLanguageTag() != null) { // Literal with language tag
-            String tag = term.getLanguageTag();
-            return model.createLiteral(val, tag);
-        } else if (term.getDatatype() != null) { // Typed literal
-            String type = term.getDatatype();
-            TypeMapper tm = TypeMapper.getInstance();
-            return model.createTypedLiteral(val, tm.getSafeTypeByName(type));
-        } else {
-            return model.createLiteral(val);
-        }
-    }
-
-    private static Resource blankNodeTerm(Model model, BlankNodeTerm term) {
-        return createdBlankNodes.computeIfAbsent(term, l -> model.createResource());
-    }
-
-    private static Resource none(Model model) {
-        return WOTTR.none.inModel(model);
-    }
-
-    public static void main(String[] args) {
-        // The number of the template that the experiment should be conducted on.
-        int tnr = 9;
-
-        // Path for initial graph for the selected template.
-        String relGraphPath = "graphs/graph" + (tnr) + ".ttl";
-        String graphPath = Experiments.class.getResource(relGraphPath).getPath();
-
-        String libPath = Experiments.class.getResource("templates/lib.stottr").getPath().substring(1);
-
-        // A StandardTemplateManager for reading and keeping track of template libraries.
-        StandardTemplateManager templateManager = new StandardTemplateManager();
-        templateManager.readLibrary(templateManager.getFormat(StandardFormat.stottr.name()), libPath);
-
-        templateManager.loadStandardTemplateLibrary();
-
-        String templateIRI = templateIRIs[tnr - 1];
-
-        // Reading the initial input-graph.
-        Model model = GraphReader.read(graphPath);
-
-        model.setNsPrefixes(templateManager.getPrefixes());
-        model.setNsPrefix("ex", ns);
-
-        System.out.println(templateIRI);
-        run(model, templateManager, templateIRI, 0);
-    }
-}
+package experiment;
+
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.graph.Factory;
+import org.apache.jena.rdf.model.*;
+import org.apache.jena.rdf.model.impl.StatementImpl;
+import org.apache.jena.shared.PrefixMapping;
+import reverseottr.evaluation.Evaluator;
+import reverseottr.model.Mapping;
+import reverseottr.model.TermRegistry;
+import reverseottr.reader.GraphReader;
+import reverseottr.reader.RDFToOTTR;
+import xyz.ottr.lutra.OTTR;
+import xyz.ottr.lutra.TemplateManager;
+import xyz.ottr.lutra.api.StandardFormat;
+import xyz.ottr.lutra.api.StandardTemplateManager;
+import xyz.ottr.lutra.io.Format;
+import xyz.ottr.lutra.model.Instance;
+import xyz.ottr.lutra.model.Parameter;
+import xyz.ottr.lutra.model.terms.*;
+import xyz.ottr.lutra.system.ResultStream;
+import xyz.ottr.lutra.wottr.WOTTR;
+import xyz.ottr.lutra.wottr.parser.WTermParser;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * An implementation of an experiment on the Reverse OTTR implementation in the reverseottr-package.
+ *
+ * The experiment tests the execution time of the Reverse OTTR implementation for uniformly generated
+ * graphs. These graphs are then supplemented with corrupted triples, i.e. triples where the subject,
+ * predicate or object is replaced by random IRIs. The implementation is then tested on these corrupted
+ * graphs which are increased incrementally until the implementation times out, i.e. runs for 60s
+ * without finishing.
+ *
+ * The experiment is conducted on 10 templates from the standard template library,
+ * imported via the loadStandardTemplateLibrary-method from the StandardTemplateManager-class.
+ * Additionally, the experiment was repeated with the 3 self-made templates, found in the
+ * templates-folder.**/
+public class Experiments {
+
+    private static final Map<BlankNodeTerm, Resource> createdBlankNodes = new HashMap<>();
+    final static String ns = "http://example.com/";
+    private final static String[] templateIRIs = {
+            "http://tpl.ottr.xyz/rdfs/0.2/TypedResourceDescription",
+            "http://tpl.ottr.xyz/rdf/0.1/StatementTriple",
+            "http://tpl.ottr.xyz/owl/declaration/0.1/Ontology",
+            "http://tpl.ottr.xyz/owl/declaration/0.1/ObjectProperty",
+            "http://tpl.ottr.xyz/owl/util/0.1/ObjectCardinality",
+            "http://tpl.ottr.xyz/owl/restriction/0.1/ObjectAllValuesFrom",
+            "http://tpl.ottr.xyz/owl/axiom/0.1/SubObjectPropertyOf",
+            "http://tpl.ottr.xyz/owl/axiom/0.1/EquivalentObjectProperty",
+            "http://tpl.ottr.xyz/owl/axiom/0.1/EquivalentDataProperty",
+            "http://tpl.ottr.xyz/owl/axiom/0.1/EquivalentClass",
+            ns + "Min",
+            ns + "Max",
+            ns + "Cross"};
+
+    /** The template queried over the n-th graph of the graphs and listExpGraphs folders. **/
+    public static String templateIRI(int graph) {
+        return templateIRIs[graph - 1];
+    }
+
+    /**
+     * The main experiment method, printing the execution time of the Reverse OTTR implementation
+     * for ever larger input-graphs, generated by taking the union of the initial graph with
+     * corrupted versions of it.**/
+    private static void run(Model model, StandardTemplateManager manager, String queryIRI, int repetitions) {
+        int n = 0;
+        long time = 0;
+
+        Model testModel = ModelFactory.createDefaultModel().add(model);
+        Random random = new Random();
+
+        while (time < 60000) {
+            System.out.println("Iteration: " + n);
+            System.out.println("Graph size: " + model.size());
+
+            Evaluator evaluator = new Evaluator(model, manager, repetitions);
+
+            long t1 = System.currentTimeMillis();
+            Set<Mapping> result = evaluator.evaluateQuery(queryIRI);
+            long t2 = System.currentTimeMillis();
+
+            time = t2 - t1;
+            System.out.println("Execution time: " + time + " ms");
+            System.out.println("Result size: " + result.size());
+            System.out.println();
+
+            model.add(scramble(testModel, random));
+            n++;
+        }
+    }
+
+    /**
+     * Generates a corrupted version of the input-graph given by the model-parameter.**/
+    public static Model scramble(Model model, Random random) {
+        Model result = ModelFactory.createDefaultModel();
+        result.setNsPrefixes(model.getNsPrefixMap());
+
+        Set<Mapping> mappings = RDFToOTTR.asResultSet(model, false);
+        for (Mapping mapping : mappings) {
+            result.add(mappingToStatement(result, scrambleTriple(mapping, random)));
+        }
+
+        return result;
+    }
+
+    /**
+     * The union of a graph with scale - 1 corrupted versions of it, as the graphs of the experiment
+     * grow, but with a given number of versions, see scramble.**/
+    public static Model scale(Model model, int scale, Random random) {
+        Model result = ModelFactory.createDefaultModel().add(model);
+        result.setNsPrefixes(model.getNsPrefixMap());
+
+        for (int i = 1; i < scale; i++) {
+            result.add(scramble(model, random));
+        }
+
+        return result;
+    }
+
+    private static Mapping scrambleTriple(Mapping mapping, Random random) {
+        List<Parameter> params = OTTR.BaseTemplate.Triple.getParameters();
+        Term sVar = params.get(0).getTerm();
+        Term pVar = params.get(1).getTerm();
+        Term oVar = params.get(2).getTerm();
+
+        Term s = mapping.get(sVar);
+        Term p = mapping.get(pVar);
+        Term o = mapping.get(oVar);
+
+        if (random.nextDouble() < 0.33) s = randomIRITerm(random);
+        if (random.nextDouble() < 0.33) p = randomIRITerm(random);
+        if (random.nextDouble() < 0.33) o = randomIRITerm(random);
+
+        return Mapping.builder()
+                .put(sVar, s)
+                .put(pVar, p)
+                .put(oVar, o)
+                .build();
+    }
+
+    private static Term randomIRITerm(Random random) {
+        return new IRITerm(ns + "r" + random.nextInt(Integer.MAX_VALUE));
+    }
+
+    private static Statement mappingToStatement(Model model, Mapping mapping) {
+        List<Parameter> params = OTTR.BaseTemplate.Triple.getParameters();
+
+        Term sVar = params.get(0).getTerm();
+        Term pVar = params.get(1).getTerm();
+        Term oVar = params.get(2).getTerm();
+
+        Term s = mapping.get(sVar);
+        Term p = mapping.get(pVar);
+        Term o = mapping.get(oVar);
+
+        return model.createStatement(term(model, s).asResource(),
+                term(model, p).as(Property.class),
+                term(model, o));
+    }
+
+    static RDFNode term(Model model, Term term) {
+        if (term instanceof ListTerm) {
+            return listTerm(model, (ListTerm) term);
+        } else if (term instanceof IRITerm) {
+            return iriTerm(model, (IRITerm) term);
+        } else if (term instanceof LiteralTerm) {
+            return literalTerm(model, (LiteralTerm) term);
+        } else if (term instanceof BlankNodeTerm) {
+            return blankNodeTerm(model, (BlankNodeTerm) term);
+        } else if (term instanceof NoneTerm) {
+            return none(model);
+        }
+
+        return null;
+    }
+
+    private static RDFList listTerm(Model model, ListTerm term) {
+        Iterator<RDFNode> iterator = term.asList().stream()
+                .map(t -> term(model, t))
+                .iterator();
+        return model.createList(iterator);
+    }
+
+    private static Resource iriTerm(Model model, IRITerm term) {
+        return model.createResource(term.getIri());
+    }
+
+    private static Literal literalTerm(Model model, LiteralTerm term) {
+        String val = term.getValue();
+
+        if (term.getLanguageTag() != null) { // Literal with language tag
+            String tag = term.getLanguageTag();
+            return model.createLiteral(val, tag);
+        } else if (term.getDatatype() != null) { // Typed literal
+            String type = term.getDatatype();
+            TypeMapper tm = TypeMapper.getInstance();
+            return model.createTypedLiteral(val, tm.getSafeTypeByName(type));
+        } else {
+            return model.createLiteral(val);
+        }
+    }
+
+    private static Resource blankNodeTerm(Model model, BlankNodeTerm term) {
+        return createdBlankNodes.computeIfAbsent(term, l -> model.createResource());
+    }
+
+    private static Resource none(Model model) {
+        return WOTTR.none.inModel(model);
+    }
+
+    public static void main(String[] args) {
+        // The number of the template that the experiment should be conducted on.
+        int tnr = 9;
+
+        // Path for initial graph for the selected template.
+        String relGraphPath = "graphs/graph" + (tnr) + ".ttl";
+        String graphPath = Experiments.class.getResource(relGraphPath).getPath();
+
+        String libPath = Experiments.class.getResource("templates/lib.stottr").getPath().substring(1);
+
+        // A StandardTemplateManager for reading and keeping track of template libraries.
+        StandardTemplateManager templateManager = new StandardTemplateManager();
+        templateManager.readLibrary(templateManager.getFormat(StandardFormat.stottr.name()), libPath);
+
+        templateManager.loadStandardTemplateLibrary();
+
+        String templateIRI = templateIRI(tnr);
+
+        // Reading the initial input-graph.
+        Model model = GraphReader.read(graphPath);
+
+        model.setNsPrefixes(templateManager.getPrefixes());
+        model.setNsPrefix("ex", ns);
+
+        System.out.println(templateIRI);
+        run(model, templateManager, templateIRI, 0);
+    }
+}
@@ -0,0 +1,145 @@
+package experiment;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Statement;
+import reverseottr.evaluation.Evaluator;
+import reverseottr.model.Mapping;
+import reverseottr.reader.GraphReader;
+import xyz.ottr.lutra.api.StandardTemplateManager;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * A check of the graphs of the GraphGenerator, which the ScalingSuite measures the queries on,
+ * and of the scaled graphs of Experiments.scale, which the benchmarks measure the queries on.
+ *
+ * For every template of Experiments and every shape, a graph is generated twice from the graph
+ * of the template in the graphs-folder, which is read anew each time, such that its blank nodes
+ * have other labels. The two graphs must be isomorphic, and have the same statements when blank
+ * nodes are written without their labels. The query of the template must give the same result
+ * over both graphs.
+ *
+ * For every graph of the graphs and listExpGraphs folders, the graph is scaled to SCALE copies.
+ *
+ * The query must give the same result over the first generated graph and over the scaled graphs
+ * as by evaluateQuery when it is a PreparedQuery, a lazy stream and with hash consing, and count
+ * must give the size of the result.
+ *
+ * The arguments are the seed, 1 by default, and the number of triples of the generated graphs,
+ * 200 by default. Every mismatch is printed, and the exit status is 1 if there is one.**/
+public class GeneratorCheck {
+
+    // The largest number of copies of the benchmarks, see EvaluatorBenchmark.
+    private static final int SCALE = 4;
+
+    private final StandardTemplateManager templateManager;
+    private int checks = 0;
+    private int mismatches = 0;
+
+    private GeneratorCheck(StandardTemplateManager templateManager) {
+        this.templateManager = templateManager;
+    }
+
+    public static void main(String[] args) throws IOException {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        GeneratorCheck check = new GeneratorCheck(Baseline.templateManager());
+
+        for (int template = 1; template <= Baseline.templates(); template++) {
+            for (GraphGenerator.Shape shape : GraphGenerator.Shape.values()) {
+                check.check(template, shape, seed, size);
+            }
+        }
+
+        for (String folder : Baseline.folders) {
+            for (int graph : Baseline.graphs(folder)) {
+                check.checkScaled(folder, graph, seed);
+            }
+        }
+
+        System.out.println(check.checks + " checks, " + check.mismatches + " mismatches");
+        if (check.mismatches > 0) System.exit(1);
+    }
+
+    private void check(int template, GraphGenerator.Shape shape, long seed, int size) {
+        String name = "graph" + template + ", " + shape + ", seed " + seed + ", " + size + " triples";
+        String iri = Baseline.templateIRI(template);
+
+        Model first = generate(template, shape, seed, size);
+        Model second = generate(template, shape, seed, size);
+
+        compare(name, "statements of the same seed", statements(first), statements(second));
+        check(name, "the graphs of the same seed are isomorphic", first.isIsomorphicWith(second));
+
+        List<String> expected = Results.canonical(evaluator(first).evaluateQuery(iri), false);
+        compare(name, "query over the graph of the same seed", expected,
+                Results.canonical(evaluator(second).evaluateQuery(iri), false));
+
+        checkPaths(name, iri, first, expected);
+    }
+
+    private void checkScaled(String folder, int graph, long seed) {
+        String name = folder + "/graph" + graph + ", " + SCALE + " copies, seed " + seed;
+        String iri = Experiments.templateIRI(graph);
+
+        Model original = GraphReader.read(Baseline.resource(folder + "/graph" + graph + ".ttl"));
+        Model scaled = Experiments.scale(original, SCALE, new Random(seed));
+
+        checkPaths(name, iri, scaled, Results.canonical(evaluator(scaled).evaluateQuery(iri), false));
+    }
+
+    // Checks the ways of evaluating the query over the graph against the result of evaluateQuery.
+    private void checkPaths(String name, String iri, Model model, List<String> expected) {
+        Evaluator preparing = evaluator(model);
+        compare(name, "prepared", expected,
+                Results.canonical(preparing.prepare(iri).execute(preparing), false));
+        compare(name, "lazy stream", expected,
+                Results.canonical(evaluator(model).evaluateQueryLazily(iri).collect(Collectors.toList()), false));
+
+        Evaluator hashConsing = evaluator(model);
+        hashConsing.setHashConsing(true);
+        compare(name, "hash consing", expected, Results.canonical(hashConsing.evaluateQuery(iri), false));
+
+        check(name, "count is the size of the result", evaluator(model).count(iri) == expected.size());
+    }
+
+    private static Model generate(int template, GraphGenerator.Shape shape, long seed, int size) {
+        Model seedGraph = GraphReader.read(Baseline.resource("graphs/graph" + template + ".ttl"));
+        return new GraphGenerator(seed).generate(seedGraph, shape, size);
+    }
+
+    // The sorted statements, without the labels of blank nodes.
+    private static List<String> statements(Model model) {
+        List<String> lines = new ArrayList<>();
+        for (Statement statement : model.listStatements().toList()) {
+            lines.add(GraphGenerator.canonical(statement));
+        }
+        Collections.sort(lines);
+
+        return lines;
+    }
+
+    private Evaluator evaluator(Model model) {
+        return new Evaluator(model, this.templateManager, 0);
+    }
+
+    private void compare(String name, String path, List<String> expected, List<String> actual) {
+        this.checks++;
+        if (!expected.equals(actual)) {
+            this.mismatches++;
+            System.out.println(name + ", " + path + ": the result differs");
+            Results.printDifference(expected, actual, 5);
+        }
+    }
+
+    private void check(String name, String path, boolean holds) {
+        this.checks++;
+        if (!holds) {
+            this.mismatches++;
+            System.out.println(name + ", " + path + ": does not hold");
+        }
+    }
+}
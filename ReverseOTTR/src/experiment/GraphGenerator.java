@@ -0,0 +1,208 @@
+package experiment;
+
+import org.apache.jena.rdf.model.*;
+import org.apache.jena.vocabulary.RDF;
+
+import java.util.*;
+
+/**
+ * A seeded generator of synthetic graphs for the scaling experiments. The same seed, seed graph,
+ * shape and size always give the same graph.
+ *
+ * A generated graph consists of renamed copies of a seed graph, which match the template of
+ * the experiment, and of triples of a given shape, built from the predicates and classes
+ * of the seed graph, such that they partially match the template.**/
+public class GraphGenerator {
+
+    /** The shapes of the generated triples that do not come from the seed graph. **/
+    public enum Shape {
+        /** Subjects with many properties each. **/
+        STAR,
+        /** Paths of resources, where the object of a triple is the subject of the next. **/
+        CHAIN,
+        /** Subjects with RDF lists as objects. **/
+        LIST_HEAVY,
+        /** Triples with blank nodes as subjects and objects. **/
+        BLANK_NODE_HEAVY
+    }
+
+    private static final int DEGREE = 16;
+    private static final int MAX_LIST_LENGTH = 6;
+
+    private final long seed;
+
+    public GraphGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Generates a graph with about size triples, where half of the triples are copies of
+     * the seed graph, and the other half has the given shape.**/
+    public Model generate(Model seedGraph, Shape shape, int size) {
+        Random random = new Random(this.seed * 31 + shape.ordinal());
+        Model model = ModelFactory.createDefaultModel();
+        model.setNsPrefixes(seedGraph.getNsPrefixMap());
+
+        // Sorted without the labels of blank nodes, which change every time a graph is read.
+        List<Statement> statements = seedGraph.listStatements().toList();
+        statements.sort(Comparator.comparing(GraphGenerator::canonical));
+
+        int copies = Math.max(1, size / 2 / Math.max(1, statements.size()));
+        for (int copy = 0; copy < copies; copy++) {
+            copy(model, statements, copy);
+        }
+
+        Vocabulary vocabulary = new Vocabulary(statements);
+        while (model.size() < size) {
+            switch (shape) {
+                case STAR:
+                    star(model, vocabulary, random);
+                    break;
+                case CHAIN:
+                    chain(model, vocabulary, random);
+                    break;
+                case LIST_HEAVY:
+                    list(model, vocabulary, random);
+                    break;
+                case BLANK_NODE_HEAVY:
+                    blankNodes(model, vocabulary, random);
+                    break;
+            }
+        }
+
+        return model;
+    }
+
+    /** A statement as a line where blank nodes are written without their labels. **/
+    static String canonical(Statement statement) {
+        return node(statement.getSubject()) + " <" + statement.getPredicate().getURI() + "> "
+                + node(statement.getObject());
+    }
+
+    private static String node(RDFNode node) {
+        if (node.isAnon()) return "_:";
+        if (node.isURIResource()) return "<" + node.asResource().getURI() + ">";
+        return node.toString();
+    }
+
+    // Adds the statements with every IRI of the experiment namespace and every blank node
+    // replaced by one that is unique to the copy.
+    private static void copy(Model model, List<Statement> statements, int copy) {
+        Map<Resource, Resource> renamed = new HashMap<>();
+
+        for (Statement statement : statements) {
+            Resource s = rename(model, statement.getSubject(), copy, renamed);
+            Property p = statement.getPredicate();
+            RDFNode o = statement.getObject().isResource()
+                    ? rename(model, statement.getObject().asResource(), copy, renamed)
+                    : statement.getObject();
+
+            model.add(s, p, o);
+        }
+    }
+
+    private static Resource rename(Model model, Resource resource, int copy, Map<Resource, Resource> renamed) {
+        if (resource.isAnon()) {
+            return renamed.computeIfAbsent(resource, r -> model.createResource());
+        }
+
+        String uri = resource.getURI();
+        if (copy == 0 || !uri.startsWith(Experiments.ns)) return resource;
+
+        return model.createResource(Experiments.ns + "c" + copy + "-" + uri.substring(Experiments.ns.length()));
+    }
+
+    private static void star(Model model, Vocabulary vocabulary, Random random) {
+        Resource hub = fresh(model, random);
+        for (int i = 0; i < DEGREE; i++) {
+            model.add(hub, vocabulary.predicate(random), vocabulary.object(model, random));
+        }
+    }
+
+    private static void chain(Model model, Vocabulary vocabulary, Random random) {
+        Resource current = fresh(model, random);
+        for (int i = 0; i < DEGREE; i++) {
+            Resource next = fresh(model, random);
+            model.add(current, vocabulary.predicate(random), next);
+            if (random.nextBoolean()) model.add(current, RDF.type, vocabulary.type(random));
+            current = next;
+        }
+    }
+
+    private static void list(Model model, Vocabulary vocabulary, Random random) {
+        int length = 1 + random.nextInt(MAX_LIST_LENGTH);
+
+        List<RDFNode> elements = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            elements.add(vocabulary.object(model, random));
+        }
+
+        model.add(fresh(model, random), vocabulary.predicate(random), model.createList(elements.iterator()));
+    }
+
+    private static void blankNodes(Model model, Vocabulary vocabulary, Random random) {
+        List<Resource> blankNodes = new ArrayList<>();
+        for (int i = 0; i < DEGREE / 4; i++) {
+            blankNodes.add(model.createResource());
+        }
+
+        for (int i = 0; i < DEGREE; i++) {
+            Resource s = blankNodes.get(random.nextInt(blankNodes.size()));
+            RDFNode o = random.nextBoolean()
+                    ? blankNodes.get(random.nextInt(blankNodes.size()))
+                    : vocabulary.object(model, random);
+
+            model.add(s, vocabulary.predicate(random), o);
+        }
+    }
+
+    private static Resource fresh(Model model, Random random) {
+        return model.createResource(Experiments.ns + "g" + random.nextInt(Integer.MAX_VALUE));
+    }
+
+    /** The predicates, classes and literals of the seed graph. **/
+    private static class Vocabulary {
+        private final List<Property> predicates = new ArrayList<>();
+        private final List<Resource> types = new ArrayList<>();
+        private final List<Literal> literals = new ArrayList<>();
+
+        Vocabulary(List<Statement> statements) {
+            Set<Property> predicates = new LinkedHashSet<>();
+            Set<Resource> types = new LinkedHashSet<>();
+            Set<Literal> literals = new LinkedHashSet<>();
+
+            for (Statement statement : statements) {
+                predicates.add(statement.getPredicate());
+
+                if (statement.getPredicate().equals(RDF.type) && statement.getObject().isURIResource()) {
+                    types.add(statement.getObject().asResource());
+                } else if (statement.getObject().isLiteral()) {
+                    literals.add(statement.getLiteral());
+                }
+            }
+
+            this.predicates.addAll(predicates);
+            this.types.addAll(types);
+            this.literals.addAll(literals);
+
+            if (this.predicates.isEmpty()) this.predicates.add(RDF.value);
+        }
+
+        Property predicate(Random random) {
+            return this.predicates.get(random.nextInt(this.predicates.size()));
+        }
+
+        Resource type(Random random) {
+            if (this.types.isEmpty()) return RDF.Statement;
+            return this.types.get(random.nextInt(this.types.size()));
+        }
+
+        // A class, a literal or a new IRI.
+        RDFNode object(Model model, Random random) {
+            int choice = random.nextInt(3);
+            if (choice == 0) return type(random);
+            if (choice == 1 && !this.literals.isEmpty()) return this.literals.get(random.nextInt(this.literals.size()));
+            return fresh(model, random);
+        }
+    }
+}
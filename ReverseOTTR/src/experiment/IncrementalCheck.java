@@ -0,0 +1,181 @@
+package experiment;
+
+import org.apache.jena.rdf.model.*;
+import reverseottr.evaluation.Evaluator;
+import reverseottr.reader.GraphReader;
+import reverseottr.reader.RDFToOTTR;
+import xyz.ottr.lutra.api.StandardTemplateManager;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A check of the results that an Evaluator keeps up to date for registered queries,
+ * see Evaluator.registerQuery, addTriples and removeTriples.
+ *
+ * For every graph in the graphs- and listExpGraphs-folders, the template of the graph in
+ * Experiments is registered as a query, and triples are removed from and added to the graph.
+ * After every change, the result of the query must be the same as the result of a new Evaluator
+ * over a copy of the changed graph. The changes are:
+ *
+ *   - removing a sample of the triples that do not touch a list, and adding them back,
+ *   - removing and adding back triples of lists, and triples with a list as subject or object,
+ *   - adding and removing triples that were not in the graph, one of them with a new list as object,
+ *   - removing triples that are not in the graph and adding triples that are, which change nothing.
+ *
+ * The samples are drawn with a fixed seed. The first argument is the maximum number of repetitions
+ * in lists, 0 by default. Every mismatch is printed, and the exit status is 1 if there is one.**/
+public class IncrementalCheck {
+
+    private static final int LIST_TRIPLES = 3;
+
+    private final StandardTemplateManager templateManager;
+    private final int repetitions;
+    private int checks = 0;
+    private int mismatches = 0;
+
+    private IncrementalCheck(StandardTemplateManager templateManager, int repetitions) {
+        this.templateManager = templateManager;
+        this.repetitions = repetitions;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+
+        IncrementalCheck check = new IncrementalCheck(Baseline.templateManager(), repetitions);
+
+        for (String folder : Baseline.folders) {
+            for (int graph : Baseline.graphs(folder)) {
+                Model model = GraphReader.read(Baseline.resource(folder + "/graph" + graph + ".ttl"));
+                check.check(folder + "/graph" + graph, model, Baseline.templateIRI(graph));
+            }
+        }
+
+        System.out.println(check.checks + " checks, " + check.mismatches + " mismatches");
+        if (check.mismatches > 0) System.exit(1);
+    }
+
+    private void check(String name, Model graph, String iri) {
+        Random random = new Random(name.hashCode());
+        Model model = copy(graph);
+
+        Evaluator evaluator = new Evaluator(model, this.templateManager, this.repetitions);
+        evaluator.registerQuery(iri);
+        compare(name, "registered", evaluator, model, iri);
+
+        List<Statement> statements = model.listStatements().toList();
+        statements.sort(Comparator.comparing(Statement::toString));
+
+        List<Statement> plain = new ArrayList<>();
+        List<Statement> lists = new ArrayList<>();
+        for (Statement statement : statements) {
+            (RDFToOTTR.touchesList(statement) ? lists : plain).add(statement);
+        }
+
+        Model sample = sample(plain, random, Math.max(1, plain.size() / 4));
+        evaluator.removeTriples(sample);
+        compare(name, "removed " + sample.size() + " triples", evaluator, model, iri);
+        evaluator.addTriples(sample);
+        compare(name, "added back " + sample.size() + " triples", evaluator, model, iri);
+
+        for (Statement statement : sample(lists, random, LIST_TRIPLES).listStatements().toList()) {
+            Model single = ModelFactory.createDefaultModel().add(statement);
+
+            evaluator.removeTriples(single);
+            compare(name, "removed list triple " + statement, evaluator, model, iri);
+            evaluator.addTriples(single);
+            compare(name, "added back list triple " + statement, evaluator, model, iri);
+        }
+
+        Model scrambled = scramble(model, sample, random);
+        evaluator.addTriples(scrambled);
+        compare(name, "added " + scrambled.size() + " new triples", evaluator, model, iri);
+
+        if (!plain.isEmpty()) {
+            Model list = newList(plain, random);
+            evaluator.addTriples(list);
+            compare(name, "added a triple with a new list", evaluator, model, iri);
+            evaluator.removeTriples(list);
+            compare(name, "removed the triple with the new list", evaluator, model, iri);
+        }
+
+        evaluator.removeTriples(scrambled);
+        compare(name, "removed the new triples", evaluator, model, iri);
+
+        evaluator.removeTriples(scrambled);
+        evaluator.addTriples(sample);
+        compare(name, "removed absent and added present triples", evaluator, model, iri);
+    }
+
+    // Compares the registered result with the result of a new Evaluator over the current graph.
+    private void compare(String name, String step, Evaluator evaluator, Model model, String iri) {
+        Evaluator fresh = new Evaluator(copy(model), this.templateManager, this.repetitions);
+
+        List<String> expected = Results.canonical(fresh.evaluateQuery(iri), true);
+        List<String> actual = Results.canonical(evaluator.getQueryResult(iri), true);
+
+        this.checks++;
+        if (!expected.equals(actual)) {
+            this.mismatches++;
+            System.out.println(name + ", " + step + ": the registered result differs");
+            Results.printDifference(expected, actual, 5);
+        }
+    }
+
+    private static Model sample(List<Statement> statements, Random random, int size) {
+        List<Statement> shuffled = new ArrayList<>(statements);
+        Collections.shuffle(shuffled, random);
+
+        Model sample = ModelFactory.createDefaultModel();
+        shuffled.stream().limit(size).forEach(sample::add);
+
+        return sample;
+    }
+
+    /** Copies of the triples of the sample, where the subject, predicate or object is replaced by
+     * a random IRI, as in Experiments, and which are not in the graph. **/
+    private static Model scramble(Model model, Model sample, Random random) {
+        Model result = ModelFactory.createDefaultModel();
+
+        for (Statement statement : sample.listStatements().toList()) {
+            Resource s = statement.getSubject();
+            Property p = statement.getPredicate();
+            RDFNode o = statement.getObject();
+
+            if (random.nextDouble() < 0.33) s = result.createResource(randomIRI(random));
+            if (random.nextDouble() < 0.33) p = result.createProperty(randomIRI(random));
+            if (random.nextDouble() < 0.33) o = result.createResource(randomIRI(random));
+
+            Statement scrambled = result.createStatement(s, p, o);
+            if (!model.contains(scrambled)) result.add(scrambled);
+        }
+
+        return result;
+    }
+
+    /** A triple with the subject and predicate of a triple of the graph, and a new list of
+     * objects of the graph as object, together with the triples of the list. **/
+    private static Model newList(List<Statement> statements, Random random) {
+        Model result = ModelFactory.createDefaultModel();
+        Statement statement = statements.get(random.nextInt(statements.size()));
+
+        int length = 1 + random.nextInt(3);
+        List<RDFNode> elements = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            elements.add(statements.get(random.nextInt(statements.size())).getObject());
+        }
+
+        result.add(statement.getSubject(), statement.getPredicate(), result.createList(elements.iterator()));
+        return result;
+    }
+
+    private static String randomIRI(Random random) {
+        return Experiments.ns + "r" + random.nextInt(Integer.MAX_VALUE);
+    }
+
+    private static Model copy(Model model) {
+        Model copy = ModelFactory.createDefaultModel().add(model);
+        copy.setNsPrefixes(model.getNsPrefixMap());
+        return copy;
+    }
+}
@@ -0,0 +1,206 @@
+package experiment;
+
+import reverseottr.model.RBagTerm;
+import reverseottr.model.RListTerm;
+import reverseottr.model.TermList;
+import reverseottr.model.TermRegistry;
+import xyz.ottr.lutra.model.terms.IRITerm;
+import xyz.ottr.lutra.model.terms.NoneTerm;
+import xyz.ottr.lutra.model.terms.Term;
+
+import java.util.*;
+
+/**
+ * A check of the list terms against plain lists, see TermList, RListTerm and RBagTerm.
+ *
+ * Lists of a few terms, none and placeholders are generated with a fixed seed, such that many of
+ * them are equal, and every TermList made from them must equal an ArrayList with the same terms
+ * and have its hash code, which is checked for TermList.of, copyOf, append, prefix and subList,
+ * also of sublists, which share the array of the list they are taken from. Two TermLists must be
+ * equal exactly when their ArrayLists are, and hasTrail must tell whether the last term is
+ * TermRegistry.any_trail.
+ *
+ * Two RListTerms must be equal exactly when their elements and whether they are unexpanded are,
+ * and two RBagTerms exactly when they have the same elements the same number of times, and equal
+ * terms must have equal hash codes. The counts and orderings of a bag must agree with its elements.
+ *
+ * The first argument is the number of generated lists, 2000 by default. Every mismatch is printed,
+ * and the exit status is 1 if there is one.**/
+public class ListTermCheck {
+
+    private static final int MAX_SIZE = 6;
+
+    private static final Term[] alphabet = {
+            new IRITerm(Experiments.ns + "a"),
+            new IRITerm(Experiments.ns + "b"),
+            new IRITerm(Experiments.ns + "c"),
+            new NoneTerm(),
+            TermRegistry.any,
+            TermRegistry.any_trail};
+
+    private int checks = 0;
+    private int mismatches = 0;
+
+    public static void main(String[] args) {
+        int cases = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        ListTermCheck check = new ListTermCheck();
+        Random random = new Random(cases);
+
+        List<List<Term>> lists = new ArrayList<>();
+        for (int c = 0; c < cases; c++) {
+            lists.add(list(random));
+        }
+
+        for (List<Term> list : lists) {
+            check.checkTermList(list, random);
+        }
+
+        for (int c = 0; c < cases; c++) {
+            List<Term> first = lists.get(random.nextInt(cases));
+            List<Term> second = random.nextBoolean() ? lists.get(random.nextInt(cases)) : shuffled(first, random);
+
+            check.checkPair(first, second);
+        }
+
+        System.out.println(check.checks + " checks, " + check.mismatches + " mismatches");
+        if (check.mismatches > 0) System.exit(1);
+    }
+
+    private void checkTermList(List<Term> list, Random random) {
+        String name = name(list);
+        TermList of = TermList.of(list.toArray(new Term[0]));
+        TermList copy = TermList.copyOf(list);
+
+        compare(name, "of", list, of);
+        compare(name, "copyOf", list, copy);
+        check(name, "copyOf of a TermList is the list itself", TermList.copyOf(of) == of);
+
+        Term term = alphabet[random.nextInt(alphabet.length)];
+        List<Term> appended = new ArrayList<>(list);
+        appended.add(term);
+        compare(name, "append " + Results.term(term, false), appended, of.append(term));
+
+        int from = random.nextInt(list.size() + 1);
+        int to = from + random.nextInt(list.size() - from + 1);
+        TermList sub = of.subList(from, to);
+        compare(name, "subList " + from + ", " + to, list.subList(from, to), sub);
+        compare(name, "prefix " + to, list.subList(0, to), of.prefix(to));
+
+        List<Term> subAppended = new ArrayList<>(list.subList(from, to));
+        subAppended.add(term);
+        compare(name, "subList " + from + ", " + to + ", append " + Results.term(term, false),
+                subAppended, sub.append(term));
+
+        if (to > from) {
+            int length = random.nextInt(to - from + 1);
+            compare(name, "subList " + from + ", " + to + ", prefix " + length,
+                    list.subList(from, from + length), sub.prefix(length));
+        }
+    }
+
+    // Checks that a TermList is equal to the reference list, and has its hash code.
+    private void compare(String name, String path, List<Term> expected, TermList actual) {
+        check(name, path + ": equals", actual.equals(expected) && expected.equals(actual)
+                && actual.equals(new ArrayList<>(actual)));
+        check(name, path + ": equals a TermList of the same terms",
+                actual.equals(TermList.copyOf(new ArrayList<>(expected))));
+        check(name, path + ": hashCode", actual.hashCode() == expected.hashCode());
+        check(name, path + ": hasTrail", actual.hasTrail()
+                == (!expected.isEmpty() && expected.get(expected.size() - 1).equals(TermRegistry.any_trail)));
+    }
+
+    private void checkPair(List<Term> first, List<Term> second) {
+        String name = name(first) + " and " + name(second);
+
+        boolean equalLists = first.equals(second);
+        TermList firstList = TermList.copyOf(first);
+        TermList secondList = TermList.copyOf(second);
+        check(name, "TermList equals", firstList.equals(secondList) == equalLists);
+
+        for (boolean firstUnexpanded : new boolean[] {false, true}) {
+            for (boolean secondUnexpanded : new boolean[] {false, true}) {
+                RListTerm firstTerm = new RListTerm(first, firstUnexpanded);
+                RListTerm secondTerm = new RListTerm(second, secondUnexpanded);
+
+                boolean expected = equalLists && firstUnexpanded == secondUnexpanded;
+                checkTerms(name, "RListTerm, unexpanded " + firstUnexpanded + " and " + secondUnexpanded,
+                        expected, firstTerm, secondTerm);
+
+                checkTerms(name, "RListTerm, both unexpanded " + firstUnexpanded,
+                        equalLists, firstTerm, new RListTerm(second, firstUnexpanded));
+            }
+        }
+
+        RBagTerm firstBag = new RBagTerm(first);
+        RBagTerm secondBag = new RBagTerm(second);
+        checkTerms(name, "RBagTerm", counts(first).equals(counts(second)), firstBag, secondBag);
+        check(name, "RBagTerm counts", firstBag.getCounts().equals(counts(first)));
+
+        Set<RListTerm> orderings = firstBag.orderings();
+        check(name, "RBagTerm orderings", orderings.size() == orderingCount(first)
+                && orderings.stream().allMatch(ordering ->
+                        ordering.isUnexpanded() && counts(ordering.asList()).equals(counts(first))));
+    }
+
+    // Checks that two terms are equal exactly when expected, and have equal hash codes if they are.
+    private void checkTerms(String name, String path, boolean expected, Term first, Term second) {
+        check(name, path + ": equals", first.equals(second) == expected && second.equals(first) == expected);
+        if (expected) check(name, path + ": hashCode", first.hashCode() == second.hashCode());
+    }
+
+    private static String name(List<Term> list) {
+        StringJoiner joiner = new StringJoiner(", ", "(", ")");
+        list.forEach(term -> joiner.add(Results.term(term, false)));
+        return joiner.toString();
+    }
+
+    private static Map<Term, Integer> counts(List<Term> list) {
+        Map<Term, Integer> counts = new HashMap<>();
+        list.forEach(term -> counts.merge(term, 1, Integer::sum));
+        return counts;
+    }
+
+    // The number of distinct orderings of the terms, n! divided by the factorials of the counts.
+    private static long orderingCount(List<Term> list) {
+        long count = factorial(list.size());
+        for (int n : counts(list).values()) {
+            count /= factorial(n);
+        }
+        return count;
+    }
+
+    private static long factorial(int n) {
+        long result = 1;
+        for (int i = 2; i <= n; i++) {
+            result *= i;
+        }
+        return result;
+    }
+
+    private static List<Term> list(Random random) {
+        int size = random.nextInt(MAX_SIZE + 1);
+
+        List<Term> list = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            // Mostly the first two terms, such that lists are often equal.
+            int choice = random.nextInt(4) > 0 ? random.nextInt(2) : random.nextInt(alphabet.length);
+            list.add(alphabet[choice]);
+        }
+        return list;
+    }
+
+    private static List<Term> shuffled(List<Term> list, Random random) {
+        List<Term> shuffled = new ArrayList<>(list);
+        Collections.shuffle(shuffled, random);
+        return shuffled;
+    }
+
+    private void check(String name, String path, boolean holds) {
+        this.checks++;
+        if (!holds) {
+            this.mismatches++;
+            System.out.println(name + ", " + path + ": does not hold");
+        }
+    }
+}
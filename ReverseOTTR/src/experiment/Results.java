@@ -0,0 +1,107 @@
+package experiment;
+
+import reverseottr.model.Mapping;
+import reverseottr.model.Placeholder;
+import reverseottr.model.RListTerm;
+import xyz.ottr.lutra.model.terms.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Writes the results of queries in a canonical form, such that results can be compared between
+ * Evaluators over copies of a graph, and between versions of the implementation.
+ *
+ * A mapping is written as one line, with its variables in order and its lists written out element
+ * by element, since a list read from a graph is only equal to itself. A result is the sorted lines
+ * of its mappings. Blank nodes can be written without their labels, which change every time a graph
+ * is read, such that the results of different runs can be compared. Mappings that only differ in
+ * their blank nodes then give the same line, so a result is compared as a list of lines, not a set.
+ *
+ * Only the terms of the reverseottr-package that the Evaluator returned from the start are written
+ * out, so the results of old versions can be written with this class as well. The benchmarks use
+ * it to check that the evaluations they time agree.**/
+public final class Results {
+
+    private Results() {}
+
+    /** The sorted lines of the mappings. **/
+    public static List<String> canonical(Collection<Mapping> mappings, boolean blankNodeLabels) {
+        List<String> lines = new ArrayList<>();
+        for (Mapping mapping : mappings) {
+            lines.add(line(mapping, blankNodeLabels));
+        }
+        Collections.sort(lines);
+
+        return lines;
+    }
+
+    static String line(Mapping mapping, boolean blankNodeLabels) {
+        List<String> entries = new ArrayList<>();
+        for (Term var : mapping.domain()) {
+            entries.add("?" + var.getIdentifier() + "=" + term(mapping.get(var), blankNodeLabels));
+        }
+        Collections.sort(entries);
+
+        return String.join(" ", entries);
+    }
+
+    static String term(Term term, boolean blankNodeLabels) {
+        if (term == null) return "null";
+        if (term instanceof NoneTerm) return "none";
+
+        if (term.getClass() == ListTerm.class || term instanceof RListTerm) {
+            boolean unexpanded = term instanceof RListTerm && ((RListTerm) term).isUnexpanded();
+            StringJoiner joiner = new StringJoiner(", ", unexpanded ? "unexpanded(" : "(", ")");
+
+            for (Term element : ((ListTerm) term).asList()) {
+                joiner.add(term(element, blankNodeLabels));
+            }
+            return joiner.toString();
+        }
+
+        if (term instanceof Placeholder) return "placeholder:" + term.getIdentifier();
+        if (term instanceof IRITerm) return "<" + ((IRITerm) term).getIri() + ">";
+        if (term instanceof BlankNodeTerm) return blankNodeLabels ? "_:" + term.getIdentifier() : "_:";
+
+        if (term instanceof LiteralTerm) {
+            LiteralTerm literal = (LiteralTerm) term;
+            String value = quote(literal.getValue());
+
+            if (literal.getLanguageTag() != null) return value + "@" + literal.getLanguageTag();
+            if (literal.getDatatype() != null) return value + "^^<" + literal.getDatatype() + ">";
+            return value;
+        }
+
+        return term.getClass().getSimpleName() + ":" + term;
+    }
+
+    private static String quote(String string) {
+        return "\"" + string.replace("\\", "\\\\").replace("\"", "\\\"")
+                .replace("\n", "\\n").replace("\r", "\\r") + "\"";
+    }
+
+    static void write(Path file, List<String> lines) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    static List<String> read(Path file) throws IOException {
+        return Files.readAllLines(file, StandardCharsets.UTF_8);
+    }
+
+    /** Prints the lines of one result that are not in the other, at most limit of each. **/
+    static void printDifference(List<String> expected, List<String> actual, int limit) {
+        List<String> missing = new ArrayList<>(expected);
+        actual.forEach(missing::remove);
+        List<String> extra = new ArrayList<>(actual);
+        expected.forEach(extra::remove);
+
+        System.out.println("    " + expected.size() + " mappings expected, " + actual.size() + " found");
+        missing.stream().limit(limit).forEach(line -> System.out.println("    missing: " + line));
+        extra.stream().limit(limit).forEach(line -> System.out.println("    extra:   " + line));
+    }
+}
@@ -0,0 +1,369 @@
+package experiment;
+
+import org.apache.jena.rdf.model.Model;
+import reverseottr.evaluation.Evaluator;
+import reverseottr.model.Mapping;
+import reverseottr.reader.GraphReader;
+import xyz.ottr.lutra.api.StandardFormat;
+import xyz.ottr.lutra.api.StandardTemplateManager;
+
+import java.io.*;
+import java.lang.management.*;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A reproducible scaling experiment over all the templates of Experiments, on graphs from
+ * the GraphGenerator. For every template and shape, the query is run on ever larger graphs,
+ * until a run times out or fails.
+ *
+ * Every run is done in a new JVM, such that a run that times out can be stopped, and the peak
+ * heap and the garbage collection time of a run are not affected by the runs before it.
+ * The time of a run is the time of evaluateQuery, after the graph is indexed, and the timeout
+ * starts when the graph is indexed. The peak heap is the most heap in use at once during the
+ * query, sampled every millisecond.
+ *
+ * The runs are written to prefix.csv and prefix.json, and can be given the following options:
+ *
+ *   --out prefix          The files to write the runs to, scaling by default.
+ *   --templates 1,2,...   The numbers of the templates, all 13 by default.
+ *   --shapes star,...     The shapes of the graphs, or default for the default shape of each template.
+ *   --sizes 500,1000,...  The number of triples of the graphs.
+ *   --timeout seconds     The time a run can take, 60 seconds by default.
+ *   --seed n              The seed of the GraphGenerator, 1 by default.
+ *   --repetitions n       The maximum number of repetitions in lists, 0 by default.**/
+public class ScalingSuite {
+
+    // The shape of the graphs for each template, when no shapes are given.
+    private static final GraphGenerator.Shape[] defaultShapes = {
+            GraphGenerator.Shape.STAR,
+            GraphGenerator.Shape.STAR,
+            GraphGenerator.Shape.STAR,
+            GraphGenerator.Shape.LIST_HEAVY,
+            GraphGenerator.Shape.BLANK_NODE_HEAVY,
+            GraphGenerator.Shape.BLANK_NODE_HEAVY,
+            GraphGenerator.Shape.CHAIN,
+            GraphGenerator.Shape.CHAIN,
+            GraphGenerator.Shape.CHAIN,
+            GraphGenerator.Shape.CHAIN,
+            GraphGenerator.Shape.LIST_HEAVY,
+            GraphGenerator.Shape.LIST_HEAVY,
+            GraphGenerator.Shape.LIST_HEAVY};
+
+    private static final String READY = "READY";
+    private static final String RESULT = "RESULT";
+
+    /** The measurements of one run. **/
+    static class Run {
+        final int template;
+        final GraphGenerator.Shape shape;
+        final int size;
+        final long seed;
+        final int repetitions;
+
+        String status = "error";
+        long triples = -1;
+        long indexMs = -1;
+        long timeMs = -1;
+        long resultSize = -1;
+        long peakHeapBytes = -1;
+        long gcTimeMs = -1;
+        long gcCount = -1;
+
+        Run(int template, GraphGenerator.Shape shape, int size, long seed, int repetitions) {
+            this.template = template;
+            this.shape = shape;
+            this.size = size;
+            this.seed = seed;
+            this.repetitions = repetitions;
+        }
+
+        boolean isOk() {
+            return this.status.equals("ok");
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("--run")) {
+            measure(Integer.parseInt(args[1]), GraphGenerator.Shape.valueOf(args[2]),
+                    Integer.parseInt(args[3]), Long.parseLong(args[4]), Integer.parseInt(args[5]));
+            return;
+        }
+
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+
+        String out = options.getOrDefault("--out", "scaling");
+        List<Integer> templates = integers(options.getOrDefault("--templates", "1,2,3,4,5,6,7,8,9,10,11,12,13"));
+        List<Integer> sizes = integers(options.getOrDefault("--sizes", "500,1000,2000,4000,8000,16000,32000,64000"));
+        String shapes = options.getOrDefault("--shapes", "default");
+        long timeout = Long.parseLong(options.getOrDefault("--timeout", "60"));
+        long seed = Long.parseLong(options.getOrDefault("--seed", "1"));
+        int repetitions = Integer.parseInt(options.getOrDefault("--repetitions", "0"));
+
+        List<Run> runs = new ArrayList<>();
+        for (int template : templates) {
+            for (GraphGenerator.Shape shape : shapes(shapes, template)) {
+                for (int size : sizes) {
+                    Run run = fork(new Run(template, shape, size, seed, repetitions), timeout);
+                    runs.add(run);
+
+                    System.out.println(Experiments.templateIRI(template) + " " + shape + " " + size
+                            + ": " + run.status + ", " + run.timeMs + " ms, " + run.resultSize + " mappings");
+
+                    if (!run.isOk()) break;
+                }
+            }
+        }
+
+        writeCSV(runs, Paths.get(out + ".csv"));
+        writeJSON(runs, timeout, Paths.get(out + ".json"));
+    }
+
+    private static List<Integer> integers(String list) {
+        List<Integer> result = new ArrayList<>();
+        for (String number : list.split(",")) {
+            result.add(Integer.parseInt(number.trim()));
+        }
+        return result;
+    }
+
+    private static List<GraphGenerator.Shape> shapes(String shapes, int template) {
+        if (shapes.equals("default")) return List.of(defaultShapes[template - 1]);
+
+        List<GraphGenerator.Shape> result = new ArrayList<>();
+        for (String shape : shapes.split(",")) {
+            result.add(GraphGenerator.Shape.valueOf(shape.trim().toUpperCase(Locale.ROOT).replace('-', '_')));
+        }
+        return result;
+    }
+
+    /**
+     * Runs the query in a new JVM with the same class path and heap options, which is stopped
+     * if it does not finish within the timeout after it has indexed the graph.**/
+    private static Run fork(Run run, long timeout) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (argument.startsWith("-X")) command.add(argument);
+        }
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), ScalingSuite.class.getName(),
+                "--run", String.valueOf(run.template), run.shape.name(), String.valueOf(run.size),
+                String.valueOf(run.seed), String.valueOf(run.repetitions)));
+
+        Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+
+        // The output is read while the run is going on, so the run does not block on a full pipe.
+        List<String> result = new ArrayList<>();
+        CountDownLatch ready = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            try (BufferedReader lines = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    if (line.equals(READY)) ready.countDown();
+                    if (line.startsWith(RESULT)) result.add(line);
+                }
+            } catch (IOException e) {
+                // The process was stopped.
+            } finally {
+                ready.countDown();
+            }
+        });
+        reader.start();
+
+        // The graph is generated and indexed before the timeout starts, or the process has ended.
+        ready.await();
+        if (!process.waitFor(timeout, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+            reader.join();
+            run.status = "timeout";
+            return run;
+        }
+        reader.join();
+
+        if (process.exitValue() == 0 && !result.isEmpty()) {
+            String[] values = result.get(0).split(" ");
+            run.status = "ok";
+            run.triples = Long.parseLong(values[1]);
+            run.indexMs = Long.parseLong(values[2]);
+            run.timeMs = Long.parseLong(values[3]);
+            run.resultSize = Long.parseLong(values[4]);
+            run.peakHeapBytes = Long.parseLong(values[5]);
+            run.gcTimeMs = Long.parseLong(values[6]);
+            run.gcCount = Long.parseLong(values[7]);
+        }
+
+        return run;
+    }
+
+    /** Does one run in this JVM, and prints the measurements on one line. **/
+    private static void measure(int template, GraphGenerator.Shape shape, int size, long seed, int repetitions)
+            throws InterruptedException {
+        StandardTemplateManager templateManager = new StandardTemplateManager();
+        templateManager.readLibrary(templateManager.getFormat(StandardFormat.stottr.name()),
+                resource("templates/lib.stottr"));
+        templateManager.loadStandardTemplateLibrary();
+
+        Model seedGraph = GraphReader.read(resource("graphs/graph" + template + ".ttl"));
+        Model model = new GraphGenerator(seed).generate(seedGraph, shape, size);
+        model.setNsPrefixes(templateManager.getPrefixes());
+        model.setNsPrefix("ex", Experiments.ns);
+
+        Evaluator evaluator = new Evaluator(model, templateManager, repetitions);
+
+        long t0 = System.nanoTime();
+        evaluator.getStatistics();
+        long t1 = System.nanoTime();
+
+        System.gc();
+        System.out.println(READY);
+        long gcTime = gcTime();
+        long gcCount = gcCount();
+
+        HeapSampler sampler = new HeapSampler();
+        sampler.start();
+
+        long t2 = System.nanoTime();
+        Set<Mapping> result = evaluator.evaluateQuery(Experiments.templateIRI(template));
+        long t3 = System.nanoTime();
+
+        long peakHeap = sampler.finish();
+
+        System.out.println(String.join(" ", RESULT,
+                String.valueOf(model.size()),
+                String.valueOf(TimeUnit.NANOSECONDS.toMillis(t1 - t0)),
+                String.valueOf(TimeUnit.NANOSECONDS.toMillis(t3 - t2)),
+                String.valueOf(result.size()),
+                String.valueOf(peakHeap),
+                String.valueOf(gcTime() - gcTime),
+                String.valueOf(gcCount() - gcCount)));
+    }
+
+    /**
+     * Samples the heap in use every millisecond, and keeps the most, since the peaks of the heap
+     * pools are reached at different times and do not add up to the peak of the heap.**/
+    private static class HeapSampler extends Thread {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private volatile boolean running = true;
+        private long peak = 0;
+
+        HeapSampler() {
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (this.running) {
+                sample();
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void sample() {
+            this.peak = Math.max(this.peak, this.memory.getHeapMemoryUsage().getUsed());
+        }
+
+        /** Stops the sampling, and gives the most heap in use, also at the end. **/
+        long finish() throws InterruptedException {
+            this.running = false;
+            join();
+            sample();
+            return this.peak;
+        }
+    }
+
+    private static String resource(String name) {
+        try {
+            return Paths.get(ScalingSuite.class.getResource(name).toURI()).toString();
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(name, e);
+        }
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        return time;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static void writeCSV(List<Run> runs, Path file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            writer.println("template,iri,shape,size,triples,repetitions,seed,status,"
+                    + "indexMs,timeMs,resultSize,peakHeapBytes,gcTimeMs,gcCount");
+
+            for (Run run : runs) {
+                writer.println(String.join(",",
+                        String.valueOf(run.template),
+                        Experiments.templateIRI(run.template),
+                        run.shape.name(),
+                        String.valueOf(run.size),
+                        String.valueOf(run.triples),
+                        String.valueOf(run.repetitions),
+                        String.valueOf(run.seed),
+                        run.status,
+                        String.valueOf(run.indexMs),
+                        String.valueOf(run.timeMs),
+                        String.valueOf(run.resultSize),
+                        String.valueOf(run.peakHeapBytes),
+                        String.valueOf(run.gcTimeMs),
+                        String.valueOf(run.gcCount)));
+            }
+        }
+    }
+
+    private static void writeJSON(List<Run> runs, long timeout, Path file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            writer.println("{");
+            writer.println("  \"java\": \"" + System.getProperty("java.version") + "\",");
+            writer.println("  \"timeoutSeconds\": " + timeout + ",");
+            writer.println("  \"runs\": [");
+
+            for (int i = 0; i < runs.size(); i++) {
+                Run run = runs.get(i);
+                writer.print("    {\"template\": " + run.template
+                        + ", \"iri\": \"" + Experiments.templateIRI(run.template) + "\""
+                        + ", \"shape\": \"" + run.shape.name() + "\""
+                        + ", \"size\": " + run.size
+                        + ", \"triples\": " + run.triples
+                        + ", \"repetitions\": " + run.repetitions
+                        + ", \"seed\": " + run.seed
+                        + ", \"status\": \"" + run.status + "\""
+                        + ", \"indexMs\": " + run.indexMs
+                        + ", \"timeMs\": " + run.timeMs
+                        + ", \"resultSize\": " + run.resultSize
+                        + ", \"peakHeapBytes\": " + run.peakHeapBytes
+                        + ", \"gcTimeMs\": " + run.gcTimeMs
+                        + ", \"gcCount\": " + run.gcCount + "}");
+                writer.println(i < runs.size() - 1 ? "," : "");
+            }
+
+            writer.println("  ]");
+            writer.println("}");
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package reverseottr.evaluation;
+
+import java.util.*;
+
+/**
+ * A profile of the evaluation of a query, recorded by an Evaluator with profiling on,
+ * see Evaluator.setProfiling.
+ *
+ * The profile is a tree, where the root is the query, and the children of a template are its
+ * instances and the stages of its evaluation, in the order they were done. The children of an
+ * instance are the evaluation of its template and the stages that apply the instance to it.
+ * Each node has its wall time, including the time of its children, and the number of mappings
+ * that went into and came out of it.
+ *
+ * toString prints the tree with one node per line, and toJSON gives it as a JSON object.**/
+public class EvaluationProfile {
+
+    public static final String QUERY = "query";
+    public static final String TEMPLATE = "template";
+    public static final String INSTANCE = "instance";
+    public static final String STAGE = "stage";
+
+    /** A query, template, instance or stage of the evaluation. **/
+    public static final class Node {
+        private final String kind;
+        private final String name;
+        private final List<Node> children = new ArrayList<>();
+        private final long start;
+        private long timeNanos = -1;
+        private long input = -1;
+        private long output = -1;
+        private boolean cached = false;
+
+        private Node(String kind, String name) {
+            this.kind = kind;
+            this.name = name;
+            this.start = System.nanoTime();
+        }
+
+        /** One of QUERY, TEMPLATE, INSTANCE and STAGE. **/
+        public String getKind() {
+            return this.kind;
+        }
+
+        /** The IRI of a query or template, the instance, or the name of a stage. **/
+        public String getName() {
+            return this.name;
+        }
+
+        public List<Node> getChildren() {
+            return Collections.unmodifiableList(this.children);
+        }
+
+        public long getTimeNanos() {
+            return this.timeNanos;
+        }
+
+        /** The number of mappings that went into the node, or -1 if it has no input. **/
+        public long getInput() {
+            return this.input;
+        }
+
+        /** The number of mappings that came out of the node. **/
+        public long getOutput() {
+            return this.output;
+        }
+
+        /** Whether the evaluation of a template was taken from the cache. **/
+        public boolean isCached() {
+            return this.cached;
+        }
+
+        private void print(StringBuilder builder, int depth) {
+            builder.append("  ".repeat(depth))
+                    .append(this.kind).append(' ').append(this.name)
+                    .append(String.format(Locale.ROOT, "  %.3f ms  ", this.timeNanos / 1e6));
+
+            if (this.input >= 0) builder.append(this.input).append(" -> ");
+            builder.append(this.output);
+            if (this.cached) builder.append("  (cached)");
+            builder.append('\n');
+
+            for (Node child : this.children) {
+                child.print(builder, depth + 1);
+            }
+        }
+
+        private void json(StringBuilder builder) {
+            builder.append("{\"kind\": ").append(quote(this.kind))
+                    .append(", \"name\": ").append(quote(this.name))
+                    .append(", \"timeNanos\": ").append(this.timeNanos)
+                    .append(", \"input\": ").append(this.input)
+                    .append(", \"output\": ").append(this.output)
+                    .append(", \"cached\": ").append(this.cached)
+                    .append(", \"children\": [");
+
+            for (int i = 0; i < this.children.size(); i++) {
+                if (i > 0) builder.append(", ");
+                this.children.get(i).json(builder);
+            }
+
+            builder.append("]}");
+        }
+    }
+
+    private final Node root;
+    private final Deque<Node> open = new ArrayDeque<>();
+
+    EvaluationProfile(String iri) {
+        this.root = new Node(QUERY, iri);
+        this.open.push(this.root);
+    }
+
+    public Node getRoot() {
+        return this.root;
+    }
+
+    /** Starts a node as the last child of the innermost node that is not ended. **/
+    Node start(String kind, String name) {
+        Node node = new Node(kind, name);
+        this.open.peek().children.add(node);
+        this.open.push(node);
+        return node;
+    }
+
+    /** Ends the innermost node that is not ended. **/
+    void end(Node node, long input, long output) {
+        node.timeNanos = System.nanoTime() - node.start;
+        node.input = input;
+        node.output = output;
+        this.open.pop();
+    }
+
+    void endCached(Node node, long output) {
+        node.cached = true;
+        end(node, -1, output);
+    }
+
+    /** Ends the query. **/
+    void finish(long output) {
+        this.root.timeNanos = System.nanoTime() - this.root.start;
+        this.root.output = output;
+        this.open.clear();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        this.root.print(builder, 0);
+        return builder.toString();
+    }
+
+    public String toJSON() {
+        StringBuilder builder = new StringBuilder();
+        this.root.json(builder);
+        return builder.toString();
+    }
+
+    private static String quote(String string) {
+        StringBuilder builder = new StringBuilder("\"");
+        for (char c : string.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
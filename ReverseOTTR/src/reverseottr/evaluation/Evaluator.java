@@ -1,321 +1,1036 @@
-package reverseottr.evaluation;
-
-import org.apache.jena.rdf.model.Model;
-import org.apache.jena.shared.PrefixMapping;
-import reverseottr.model.Mapping;
-import reverseottr.model.Placeholder;
-import reverseottr.model.RListTerm;
-import reverseottr.model.TermRegistry;
-import reverseottr.reader.GraphReader;
-import reverseottr.reader.RDFToOTTR;
-import xyz.ottr.lutra.OTTR;
-import xyz.ottr.lutra.TemplateManager;
-import xyz.ottr.lutra.api.StandardFormat;
-import xyz.ottr.lutra.api.StandardTemplateManager;
-import xyz.ottr.lutra.model.*;
-import xyz.ottr.lutra.model.terms.*;
-
-import java.util.*;
-import java.util.stream.Collectors;
-
-/**
- * This class implements the evaluation-functions of Reverse OTTR.
- *
- * This class is intended as the main entry-point of the reverseottr-package.
- * It's intended to be used by instantiating it calling its evaluateQuery-method.
- *
- * Instantiating the class requires a Jena Model, that represents the graph to
- * be queried, a Lutra StandardTemplateManager, that keeps track of template libraries,
- * and a number for the maximum number of repetitions in lists generated by reverse
- * list expansion.**/
-public class Evaluator {
-
-    private final Set<Mapping> triples;
-    private final Set<Mapping> nullableTriples;
-    private final StandardTemplateManager templateManager;
-    private int maxRepetitions = 0;
-
-    /**
-     * Creates an Evaluator that can evaluate an OTTR template as a query over a graph.
-     *
-     * @param model A Jena Model that represents the graph to be queried over.
-     * @param templateManager A Lutra StandardTemplateManager that keeps track of template libraries
-     * @param maxRepetitions A natural number for the maximum number of repetitions in lists generated
-     * by reverse list expansion.**/
-    public Evaluator(Model model, StandardTemplateManager templateManager, int maxRepetitions) {
-        this.triples = RDFToOTTR.asResultSet(model, false);
-        this.nullableTriples = RDFToOTTR.asResultSet(model, true);
-        this.templateManager = templateManager;
-        this.maxRepetitions = maxRepetitions;
-    }
-
-    /**
-     * Evaluates a template as a query over the mappings in this.triples and this.nullableTriples.
-     *
-     * @param IRI The IRI of a template as a string, to be evaluated as a query.
-     * @return A set of mappings, that when evaluated in OTTR as instances of the input IRI,
-     * should produce a subset of the input graph used to instantiate the Evaluator-class.**/
-    public Set<Mapping> evaluateQuery(String IRI) {
-        Set<Mapping> result = evaluateTemplate(getTemplate(IRI));
-        return result.stream().filter(this::validIDs).collect(Collectors.toSet());
-    }
-
-    // A mapping has valid IDs if no list ID is repeated in the mapping.
-    private <T> boolean validIDs(Mapping mapping) {
-        Set<T> ids = new HashSet<>();
-
-        for (Term var : mapping.domain()) {
-            Term term = mapping.get(var);
-            if (term instanceof ListTerm
-                    && !TermRegistry.isUnexpanded(term)) {
-                T id = (T) term.getIdentifier();
-                if (ids.contains(id)) {
-                    return false;
-                } else {
-                    ids.add(id);
-                }
-            }
-        }
-
-        return true;
-    }
-
-    public Set<Mapping> evaluateTemplate(Template template) {
-        Set<Mapping> templateMappings;
-
-        if (template.getIri().equals(OTTR.BaseURI.Triple)) {
-            templateMappings = this.triples;
-
-        } else if (template.getIri().equals(OTTR.BaseURI.NullableTriple)) {
-            templateMappings = this.nullableTriples;
-
-        } else {
-            Set<Set<Mapping>> instanceEvaluations =
-                    template.getPattern().stream()
-                            .map(this::evaluateInstance)
-                            .collect(Collectors.toSet());
-
-            templateMappings = Mapping.joinAll(instanceEvaluations);
-        }
-
-        List<Parameter> parameters = template.getParameters();
-
-        Set<Mapping> result = paramFilter(templateMappings, parameters);
-        result = defaultAlternativesAll(result, parameters);
-        result = placeholderFilter(result, parameters);
-        result.addAll(generateNonOptSolutions(parameters));
-        return removeSubMappings(result);
-    }
-
-    /** Removes mappings that are less than some other mapping in the input-set
-     * according to the partial order in TermRegistry **/
-    private Set<Mapping> removeSubMappings(Set<Mapping> mappings) {
-        Set<Mapping> result = new HashSet<>();
-        for (Mapping mapping : mappings) {
-            if (!containsGreater(mappings, mapping)) result.add(mapping);
-        }
-
-        return result;
-    }
-
-    private boolean containsGreater(Set<Mapping> mappings, Mapping mapping) {
-        for (Mapping other : mappings) {
-            if (lessOrEqualMapping(mapping, other) && !mapping.equals(other))
-                return true;
-        }
-
-        return false;
-    }
-
-    private boolean lessOrEqualMapping(Mapping m1, Mapping m2) {
-        for (Term var : m1.domain()) {
-            if (!TermRegistry.lessOrEqual(m1.get(var), m2.get(var)))
-                return false;
-        }
-        return true;
-    }
-
-    /**
-     * Filters placeholders in mappings by taking the GLB of them with placeholders generated
-     * by the parameter modifiers in a parameter list.
-     *
-     * @param mappings Potential solutions to the evaluation of a template as a query.
-     * @return A version of the input-set of mappings where placeholders have been reduced
-     * in terms of the partial order, which is defined in the TermRegistry-enum.**/
-    private Set<Mapping> placeholderFilter(Set<Mapping> mappings, List<Parameter> parameters) {
-        Set<Mapping> result = new HashSet<>();
-        for (Mapping mapping : mappings) {
-            Mapping resultMap = new Mapping();
-            for (Parameter parameter : parameters) {
-                Term var = parameter.getTerm();
-                if (mapping.get(var) instanceof Placeholder) {
-                    resultMap.put(var, TermRegistry.GLB(mapping.get(var),
-                            TermRegistry.paramPlaceholder(parameter)));
-                } else {
-                    resultMap.put(var, mapping.get(var));
-                }
-            }
-
-            result.add(resultMap);
-        }
-
-        return result;
-    }
-
-    public Set<Mapping> evaluateInstance(Instance instance) {
-        Template template = getTemplate(instance.getIri());
-
-        Set<Mapping> templateResult = evaluateTemplate(template);
-
-        if (instance.hasListExpander()) {
-            ListUnexpander unexpander =
-                    new ListUnexpander(template.getParameters(),
-                            instance.getArguments(), maxRepetitions);
-
-            if (instance.getListExpander().equals(ListExpander.zipMin)) {
-                templateResult = unexpander.unzipMin(templateResult);
-
-            } else if (instance.getListExpander().equals(ListExpander.zipMax)) {
-                templateResult = unexpander.unzipMax(templateResult);
-
-            } else {
-                templateResult = unexpander.uncross(templateResult);
-            }
-        }
-
-        List<Term> paramVars = template.getParameters().stream()
-                .map(Parameter::getTerm).collect(Collectors.toList());
-
-        List<Term> argTerms = instance.getArguments().stream()
-                .map(Argument::getTerm).collect(Collectors.toList());
-
-        Mapping argMap = new Mapping(paramVars, argTerms);
-
-        return argFilter(templateResult, argMap);
-    }
-
-    /** Filters mappings against instance arguments during the evaluation of an OTTR instance.**/
-    private Set<Mapping> argFilter(Set<Mapping> mappings, Mapping argMap) {
-        Set<Mapping> result = new HashSet<>();
-
-        for (Mapping map : mappings) {
-            if (Mapping.innerCompatible(map, argMap)) {
-                result.add(Mapping.transform(map, argMap));
-            }
-        }
-
-        return result;
-    }
-
-    /** Generates additional mappings which have ottr:none for non-optional vars
-     * and thus are ignored in forward OTTR **/
-    private Set<Mapping> generateNonOptSolutions(List<Parameter> parameters) {
-        Set<Mapping> result = new HashSet<>();
-
-        for (Parameter noParam : parameters) {
-            if (!noParam.isOptional()) {
-                Mapping m = new Mapping();
-                m.put(noParam.getTerm(), new NoneTerm());
-                for (Parameter parameter : parameters) {
-                    if (!parameter.equals(noParam)) {
-                        if (parameter.isNonBlank()) {
-                            m.put(parameter.getTerm(), TermRegistry.any_nb);
-                        } else {
-                            m.put(parameter.getTerm(), TermRegistry.any);
-                        }
-                    }
-                }
-
-                result.add(m);
-            }
-        }
-
-        return result;
-    }
-
-    /** Filters mappings according to parameter modifiers **/
-    private Set<Mapping> paramFilter(Set<Mapping> maps, List<Parameter> parameters) {
-        return maps.stream()
-                .filter(m -> conforms(m, parameters))
-                .collect(Collectors.toSet());
-    }
-
-    /** Checks whether a mapping conforms to a list of parameters,
-     * where the mapping-variables are the same as the parameter-variables**/
-    private boolean conforms(Mapping map, List<Parameter> parameters) {
-        for (Parameter param : parameters) {
-            Term var = param.getTerm();
-            if (map.containsVar(var)) {
-                if ((map.get(var) instanceof NoneTerm && !param.isOptional())
-                        || (param.isNonBlank() && map.get(var) instanceof BlankNodeTerm)) {
-                    return false;
-                }
-            }
-        }
-        return true;
-    }
-
-    /** Finds all possible default alternatives of each mapping in a set of mappings.
-     * A default alternative of a mapping is any mapping where variables, with default values
-     * according to a parameter list, have a default value and the mapping maps the variable
-     * to the default value or to the none-value.**/
-    private Set<Mapping> defaultAlternativesAll(Set<Mapping> maps, List<Parameter> parameters) {
-        Set<Mapping> resultMaps = new HashSet<>();
-        maps.forEach(m -> resultMaps.addAll(defaultAlternatives(m, parameters)));
-
-        return resultMaps;
-    }
-
-    private Set<Mapping> defaultAlternatives(Mapping map, List<Parameter> parameters) {
-        Mapping baseMap = new Mapping();
-        Mapping subMap = new Mapping();
-
-        for (Parameter param : parameters) {
-            Term var = param.getTerm();
-            if (param.hasDefaultValue()
-                    && map.get(var).equals(param.getDefaultValue())) {
-                subMap.put(var, map.get(var));
-
-            } else {
-                baseMap.put(var, map.get(var));
-            }
-        }
-
-        if (subMap.domain().isEmpty()) {
-            Set<Mapping> result = new HashSet<>();
-            result.add(baseMap);
-            return result;
-        }
-
-        return allCombinationsNone(subMap).stream()
-                .map(m -> Mapping.union(m, baseMap))
-                .collect(Collectors.toSet());
-    }
-
-    private Set<Mapping> allCombinationsNone(Mapping map) {
-        Set<Set<Mapping>> combinations = new HashSet<>();
-
-        for (Term var : map.domain()) {
-            Mapping subMap = new Mapping();
-            subMap.put(var, map.get(var));
-
-            Mapping noneMap = new Mapping();
-            noneMap.put(var, new NoneTerm());
-
-            Set<Mapping> combination = new HashSet<>();
-            combination.add(subMap);
-            combination.add(noneMap);
-
-            combinations.add(combination);
-        }
-
-        return Mapping.joinAll(combinations);
-    }
-
-    private Template getTemplate(String templateIRI) {
-        if (templateManager.getTemplateStore().containsTemplate(templateIRI)) {
-            return templateManager.getTemplateStore().getTemplate(templateIRI).get();
-        }
-        return templateManager.getStandardLibrary().getTemplate(templateIRI).get();
-    }
-}
+package reverseottr.evaluation;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.shared.PrefixMapping;
+import reverseottr.model.DefaultOrNone;
+import reverseottr.model.Mapping;
+import reverseottr.model.Placeholder;
+import reverseottr.model.RBagTerm;
+import reverseottr.model.RListTerm;
+import reverseottr.model.TermDictionary;
+import reverseottr.model.TermRegistry;
+import reverseottr.model.TripleIndex;
+import reverseottr.model.TripleStore;
+import reverseottr.reader.GraphSnapshot;
+import reverseottr.reader.GraphReader;
+import reverseottr.reader.RDFToOTTR;
+import reverseottr.reader.StreamingRDFToOTTR;
+import xyz.ottr.lutra.OTTR;
+import xyz.ottr.lutra.TemplateManager;
+import xyz.ottr.lutra.api.StandardFormat;
+import xyz.ottr.lutra.api.StandardTemplateManager;
+import xyz.ottr.lutra.model.*;
+import xyz.ottr.lutra.model.terms.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class implements the evaluation-functions of Reverse OTTR.
+ *
+ * This class is intended as the main entry-point of the reverseottr-package.
+ * It's intended to be used by instantiating it calling its evaluateQuery-method.
+ *
+ * Instantiating the class requires a Jena Model, that represents the graph to
+ * be queried, a Lutra StandardTemplateManager, that keeps track of template libraries,
+ * and a number for the maximum number of repetitions in lists generated by reverse
+ * list expansion.**/
+public class Evaluator {
+
+    private final Model model;
+    private final String fileName;
+    private TripleIndex table;
+    private TripleStore triples;
+    private TripleStore nullableTriples;
+    private final StandardTemplateManager templateManager;
+    private GraphStatistics statistics;
+    private JoinPlanner planner;
+    private final MaterializedViews views = new MaterializedViews(this);
+    private final TemplateCache cache = new TemplateCache(DEFAULT_CACHE_SIZE);
+    private boolean cacheAcrossQueries = false;
+    private final Mapping.Interner interner = new Mapping.Interner();
+    private final TermDictionary dictionary = new TermDictionary();
+    private final Map<List<Object>, ListUnexpander> unexpanders = new ConcurrentHashMap<>();
+    private boolean hashConsing = false;
+    private boolean expandDefaults = true;
+    private boolean bagLists = false;
+    private boolean profiling = false;
+    private final ThreadLocal<EvaluationProfile> profile = new ThreadLocal<>();
+    private volatile EvaluationProfile lastProfile;
+    private int maxRepetitions = 0;
+
+    /** The default maximum number of template evaluations kept in the cache. **/
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    /**
+     * Creates an Evaluator that can evaluate an OTTR template as a query over a graph.
+     * The graph is indexed when a query first reaches a base template.
+     *
+     * @param model A Jena Model that represents the graph to be queried over.
+     * @param templateManager A Lutra StandardTemplateManager that keeps track of template libraries
+     * @param maxRepetitions A natural number for the maximum number of repetitions in lists generated
+     * by reverse list expansion.**/
+    public Evaluator(Model model, StandardTemplateManager templateManager, int maxRepetitions) {
+        this.model = model;
+        this.fileName = null;
+        this.templateManager = templateManager;
+        this.maxRepetitions = maxRepetitions;
+    }
+
+    /**
+     * Creates an Evaluator over the graph in an RDF file. The file is parsed as a stream into
+     * the triple index when a query first reaches a base template, without building a Jena Model,
+     * so triples can not be added to or removed from the graph afterwards.
+     *
+     * @param fileName The RDF file that contains the graph to be queried over.
+     * @param templateManager A Lutra StandardTemplateManager that keeps track of template libraries
+     * @param maxRepetitions A natural number for the maximum number of repetitions in lists generated
+     * by reverse list expansion.**/
+    public Evaluator(String fileName, StandardTemplateManager templateManager, int maxRepetitions) {
+        this.model = null;
+        this.fileName = fileName;
+        this.templateManager = templateManager;
+        this.maxRepetitions = maxRepetitions;
+    }
+
+    /**
+     * Creates an Evaluator over the graph in a snapshot, which is read as the queries reach the
+     * triples. Triples can not be added to or removed from the graph.
+     *
+     * @param snapshot A snapshot of the graph to be queried over, see GraphSnapshot.load.
+     * @param templateManager A Lutra StandardTemplateManager that keeps track of template libraries
+     * @param maxRepetitions A natural number for the maximum number of repetitions in lists generated
+     * by reverse list expansion.**/
+    public Evaluator(GraphSnapshot snapshot, StandardTemplateManager templateManager, int maxRepetitions) {
+        this.model = null;
+        this.fileName = null;
+        this.templateManager = templateManager;
+        this.maxRepetitions = maxRepetitions;
+
+        this.triples = snapshot.view(parameterVars(OTTR.BaseTemplate.Triple.getParameters()), this.dictionary);
+        this.nullableTriples = snapshot.view(parameterVars(OTTR.BaseTemplate.NullableTriple.getParameters()),
+                this.dictionary);
+        this.statistics = new GraphStatistics(snapshot.size(), snapshot.distinctSubjects(),
+                snapshot.distinctObjects(), snapshot.predicateStatistics());
+        this.planner = new JoinPlanner(this.statistics);
+    }
+
+    /**
+     * Builds the triple index of the graph, if it is not built yet. The triples are stored once,
+     * and the Triple and NullableTriple base templates read them through views that map them
+     * to the variables of each template.**/
+    private synchronized void index() {
+        if (this.triples != null) return;
+
+        TripleIndex table = new TripleIndex(this.dictionary);
+        if (this.model != null) {
+            RDFToOTTR.forEachTriple(this.model, table::add);
+        } else {
+            StreamingRDFToOTTR.read(this.fileName, table);
+        }
+
+        this.table = table;
+        this.triples = table.view(parameterVars(OTTR.BaseTemplate.Triple.getParameters()));
+        this.nullableTriples = table.view(parameterVars(OTTR.BaseTemplate.NullableTriple.getParameters()));
+        this.statistics = new GraphStatistics(this.triples.all(), this.triples.getVariables());
+        this.planner = new JoinPlanner(this.statistics);
+    }
+
+    /**
+     * Evaluates a template as a query like evaluateQuery, and keeps the result up to date
+     * when triples are added or removed by addTriples and removeTriples.
+     *
+     * @param IRI The IRI of a template as a string, to be evaluated as a query.
+     * @return The result of the query at the time of registration.**/
+    public Set<Mapping> registerQuery(String IRI) {
+        return this.views.register(IRI);
+    }
+
+    /** Stops keeping the result of a query up to date. **/
+    public void unregisterQuery(String IRI) {
+        this.views.unregister(IRI);
+    }
+
+    /** The current result of a query registered by registerQuery, or null if it is not registered. **/
+    public Set<Mapping> getQueryResult(String IRI) {
+        return this.views.get(IRI);
+    }
+
+    /**
+     * Adds triples to the graph queried over, i.e. the model given to the constructor,
+     * and updates the results of registered queries.
+     *
+     * @param added A model with the triples to add.
+     * @throws IllegalStateException If the Evaluator was not created from a Model.**/
+    public void addTriples(Model added) {
+        requireModel();
+
+        List<Statement> statements = new ArrayList<>();
+        for (Statement statement : added.listStatements().toList()) {
+            if (!this.model.contains(statement)) statements.add(statement);
+        }
+
+        update(statements, true);
+    }
+
+    /**
+     * Removes triples from the graph queried over, i.e. the model given to the constructor,
+     * and updates the results of registered queries.
+     *
+     * @param removed A model with the triples to remove.
+     * @throws IllegalStateException If the Evaluator was not created from a Model.**/
+    public void removeTriples(Model removed) {
+        requireModel();
+
+        List<Statement> statements = new ArrayList<>();
+        for (Statement statement : removed.listStatements().toList()) {
+            if (this.model.contains(statement)) statements.add(statement);
+        }
+
+        update(statements, false);
+    }
+
+    private void requireModel() {
+        if (this.model == null) {
+            throw new IllegalStateException("Triples can only be added to or removed from "
+                    + "an Evaluator created from a Model.");
+        }
+    }
+
+    /**
+     * Adds or removes triples of the model, and updates the triple indexes and the registered
+     * queries. A triple that is part of a list, or has a list as subject or object, may change
+     * the terms of other triples, so then the graph is indexed and the queries are evaluated
+     * again. The statistics of the graph are only updated then.**/
+    private void update(List<Statement> statements, boolean added) {
+        if (statements.isEmpty()) return;
+
+        this.cache.clear();
+        this.interner.clear();
+
+        if (added) statements.forEach(this.model::add);
+
+        List<Statement> inModel = statements.stream()
+                .map(statement -> this.model.asStatement(statement.asTriple()))
+                .collect(Collectors.toList());
+        boolean lists = inModel.stream().anyMatch(RDFToOTTR::touchesList);
+
+        if (!added) inModel.forEach(this.model::remove);
+
+        // The graph is indexed again when a query reaches a base template.
+        if (lists || this.table == null) {
+            this.triples = null;
+            this.nullableTriples = null;
+            this.table = null;
+            if (!this.views.isEmpty()) this.views.recompute();
+            return;
+        }
+
+        TripleIndex delta = new TripleIndex(this.dictionary);
+
+        for (Statement statement : inModel) {
+            Term[] terms = RDFToOTTR.asTerms(statement);
+
+            if (added) {
+                this.table.add(terms[0], terms[1], terms[2]);
+            } else {
+                this.table.remove(terms[0], terms[1], terms[2]);
+            }
+
+            delta.add(terms[0], terms[1], terms[2]);
+        }
+
+        this.views.update(delta.view(this.triples.getVariables()),
+                delta.view(this.nullableTriples.getVariables()), added);
+    }
+
+    /** The cache of template evaluations, with its hit and miss counters. **/
+    public TemplateCache getCache() {
+        return this.cache;
+    }
+
+    /**
+     * Decides whether template evaluations are kept in the cache between calls to evaluateQuery.
+     * By default, the cache only lives for the duration of one query.**/
+    public void setCacheAcrossQueries(boolean cacheAcrossQueries) {
+        this.cacheAcrossQueries = cacheAcrossQueries;
+    }
+
+    /**
+     * Decides whether equal mappings in template and instance evaluations are represented by
+     * one shared instance. The shared instances are kept for as long as the cache.**/
+    public void setHashConsing(boolean hashConsing) {
+        this.hashConsing = hashConsing;
+    }
+
+    /**
+     * Decides whether the results of queries have the default alternatives of their mappings
+     * expanded, which is the default. If not, a variable with a default value may be mapped to
+     * a DefaultOrNone-term, which stands for both the default value and none, and expandDefaults
+     * can be used to expand the result later.**/
+    public void setExpandDefaults(boolean expandDefaults) {
+        this.expandDefaults = expandDefaults;
+    }
+
+    /**
+     * Decides whether the lists found by reversing cross are given as RBagTerms, which stand for
+     * the lists with the same elements in any order, instead of as one mapping per ordering.
+     * By default, every ordering is given. expandBags gives the orderings of a result with bags.
+     * The cached evaluations are dropped and the registered queries are evaluated again when
+     * the setting changes, since they depend on it.**/
+    public void setBagLists(boolean bagLists) {
+        if (bagLists == this.bagLists) return;
+
+        this.bagLists = bagLists;
+        this.cache.clear();
+        this.interner.clear();
+
+        if (!this.views.isEmpty()) {
+            this.views.recompute();
+        }
+    }
+
+    boolean hasBagLists() {
+        return this.bagLists;
+    }
+
+    /**
+     * Decides whether evaluateQuery records an EvaluationProfile of each query, with the time and
+     * the number of mappings in and out of every template, instance and stage of the evaluation.
+     * A profiled query is evaluated eagerly, also by evaluateQueryLazily, which is profiled with the
+     * stages of its own plan, see streamTemplate. By default, queries are not profiled. The queries
+     * of evaluateQueries and PreparedQueries are never profiled.**/
+    public void setProfiling(boolean profiling) {
+        this.profiling = profiling;
+    }
+
+    /** The profile of the last query evaluated with profiling on, or null if there is none. **/
+    public EvaluationProfile getProfile() {
+        return this.lastProfile;
+    }
+
+    /** Statistics on the triples of the graph queried over. **/
+    public GraphStatistics getStatistics() {
+        index();
+        return this.statistics;
+    }
+
+    /**
+     * Evaluates a template as a query over the mappings in this.triples and this.nullableTriples.
+     *
+     * @param IRI The IRI of a template as a string, to be evaluated as a query.
+     * @return A set of mappings, that when evaluated in OTTR as instances of the input IRI,
+     * should produce a subset of the input graph used to instantiate the Evaluator-class.**/
+    public Set<Mapping> evaluateQuery(String IRI) {
+        startQuery();
+        if (this.profiling) return profileQuery(IRI, false);
+
+        return queryResult(evaluateCachedTemplate(getTemplate(IRI)));
+    }
+
+    /**
+     * Evaluates a template as a query like evaluateQuery, but produces the result as a stream,
+     * where only the last join of the template is lazy. The instances of the template, and so
+     * the templates they use, are evaluated eagerly when the stream is created, as is the join
+     * of all instances but the last one. The part of the last join that only gives mappings to
+     * ground terms and none is done as the stream is consumed, so limit, findAny and similar
+     * operations stop that part early, see streamTemplate.
+     *
+     * The stream has no duplicates, and contains the same mappings as the result of evaluateQuery.
+     *
+     * @param IRI The IRI of a template as a string, to be evaluated as a query.
+     * @return A stream of the mappings in the result of the query.**/
+    public Stream<Mapping> evaluateQueryLazily(String IRI) {
+        startQuery();
+        if (this.profiling) return profileQuery(IRI, true).stream();
+
+        Stream<Mapping> result = streamTemplate(getTemplate(IRI)).flatMap(this::validIDs);
+
+        // Narrowing DefaultOrNone-terms may give a mapping that is also in the result.
+        return this.expandDefaults ? result : result.distinct();
+    }
+
+    private void startQuery() {
+        if (!this.cacheAcrossQueries) {
+            this.cache.clear();
+            this.interner.clear();
+        }
+    }
+
+    /**
+     * Evaluates a query eagerly, and records the profile of the evaluation. If streamed, the query
+     * is evaluated by the plan of evaluateQueryLazily, and the stream is consumed at once.**/
+    private Set<Mapping> profileQuery(String IRI, boolean streamed) {
+        EvaluationProfile profile = new EvaluationProfile(IRI);
+        this.profile.set(profile);
+
+        try {
+            Template template = getTemplate(IRI);
+            Set<Mapping> expanded = streamed
+                    ? profiled(EvaluationProfile.STAGE, () -> "streamTemplate", -1,
+                            () -> streamTemplate(template).collect(Collectors.toSet()))
+                    : stage("expandDefaults", evaluateCachedTemplate(template), this::expandQueryResult);
+            Set<Mapping> result = stage("validIDs", expanded, mappings -> mappings.stream()
+                    .flatMap(this::validIDs)
+                    .collect(Collectors.toSet()));
+
+            profile.finish(result.size());
+            this.lastProfile = profile;
+            return result;
+
+        } finally {
+            this.profile.remove();
+        }
+    }
+
+    // Runs a stage of the evaluation, and records it in the profile of the query, if any.
+    private Set<Mapping> stage(String name, Set<Mapping> input, UnaryOperator<Set<Mapping>> stage) {
+        EvaluationProfile profile = this.profile.get();
+        if (profile == null) return stage.apply(input);
+
+        EvaluationProfile.Node node = profile.start(EvaluationProfile.STAGE, name);
+        Set<Mapping> output = stage.apply(input);
+        profile.end(node, input.size(), output.size());
+        return output;
+    }
+
+    // Runs a template, instance or stage with no single input set, and records it like stage.
+    // The name is only built if the query is profiled.
+    private Set<Mapping> profiled(String kind, Supplier<String> name, long input, Supplier<Set<Mapping>> evaluation) {
+        return profiled(kind, name, input, evaluation, Set::size);
+    }
+
+    private <T> T profiled(String kind, Supplier<String> name, long input, Supplier<T> evaluation,
+                           ToLongFunction<T> size) {
+        EvaluationProfile profile = this.profile.get();
+        if (profile == null) return evaluation.get();
+
+        EvaluationProfile.Node node = profile.start(kind, name.get());
+        T output = evaluation.get();
+        profile.end(node, input, size.applyAsLong(output));
+        return output;
+    }
+
+    /**
+     * Compiles a template as a query into a plan, that can be executed many times without
+     * looking up the templates again, see PreparedQuery.
+     *
+     * @param IRI The IRI of a template as a string, to be evaluated as a query.**/
+    public PreparedQuery prepare(String IRI) {
+        return PreparedQuery.compile(this, IRI);
+    }
+
+    /**
+     * Evaluates several templates as queries over the graph. The sub-templates and instances
+     * that the templates have in common are evaluated once, and shared between the queries.
+     *
+     * @param IRIs The IRIs of templates as strings, to be evaluated as queries.
+     * @return The result of each query, as given by evaluateQuery, by the IRI of its template.**/
+    public Map<String, Set<Mapping>> evaluateQueries(Collection<String> IRIs) {
+        return PreparedQuery.executeAll(PreparedQuery.compileAll(this, IRIs), this);
+    }
+
+    /** Evaluates a template as a query, and returns at most limit mappings of the result. **/
+    public Set<Mapping> evaluateQuery(String IRI, long limit) {
+        return evaluateQueryLazily(IRI).limit(limit).collect(Collectors.toSet());
+    }
+
+    /** Checks whether a template as a query has at least one mapping in its result. **/
+    public boolean exists(String IRI) {
+        return evaluateQueryLazily(IRI).findAny().isPresent();
+    }
+
+    /** Counts the mappings in the result of a template as a query, without collecting them. **/
+    public long count(String IRI) {
+        return evaluateQueryLazily(IRI).count();
+    }
+
+    /**
+     * Evaluates a template as a stream. A mapping that only maps to exact terms, i.e. ground terms
+     * and none, can only be removed by removeSubMappings if a mapping with a placeholder or a list
+     * is greater than it, and it can not itself be greater than any other mapping. Hence, the last
+     * join is split in the part that gives mappings with other terms, which is evaluated up front,
+     * and the join of the exact mappings, which is streamed and checked against the former.
+     *
+     * When the query is profiled, the streamed join is consumed at once in the joinLastExact stage,
+     * such that the profile has the stages of this plan.**/
+    private Stream<Mapping> streamTemplate(Template template) {
+        if (isBaseTemplate(template) || template.getPattern().isEmpty()
+                || this.cache.contains(template.getIri()) || !this.expandDefaults) {
+            return stage("expandDefaults", evaluateCachedTemplate(template), this::expandQueryResult).stream();
+        }
+
+        Map<Set<Mapping>, Instance> instanceEvaluations = new HashMap<>();
+        for (Instance instance : template.getPattern()) {
+            instanceEvaluations.putIfAbsent(evaluateInstance(instance), instance);
+        }
+
+        long input = instanceEvaluations.keySet().stream().mapToLong(Set::size).sum();
+        JoinPlanner.PartialJoin partial = profiled(EvaluationProfile.STAGE, () -> "joinAllButLast", input,
+                () -> getPlanner().joinAllButLast(instanceEvaluations), p -> p.joined.size());
+        List<Parameter> parameters = template.getParameters();
+
+        Map<Boolean, Set<Mapping>> left = partitionExact(partial.joined);
+        Set<Mapping> eager;
+        Stream<Mapping> lazy;
+        long lazyInput;
+
+        if (partial.last == null) {
+            eager = new HashSet<>(left.get(false));
+            lazy = left.get(true).stream();
+            lazyInput = left.get(true).size();
+
+        } else {
+            Map<Boolean, Set<Mapping>> right = partitionExact(partial.last);
+            eager = profiled(EvaluationProfile.STAGE, () -> "joinLast", partial.joined.size() + partial.last.size(),
+                    () -> {
+                        Set<Mapping> joined = Mapping.join(left.get(false), partial.last);
+                        joined.addAll(Mapping.join(left.get(true), right.get(false)));
+                        return joined;
+                    });
+            lazy = Mapping.joinStream(left.get(true), right.get(true));
+            lazyInput = left.get(true).size() + right.get(true).size();
+        }
+
+        eager = stage("expandDefaults", filterTemplateMappings(eager, parameters), this::expandQueryResult);
+        SubsumptionIndex dominators = new SubsumptionIndex(eager);
+
+        // The default alternatives of exact mappings are exact once expanded.
+        Stream<Mapping> filtered = lazy
+                .map(m -> conform(m, parameters))
+                .filter(Objects::nonNull)
+                .flatMap(m -> expandDefaults(defaultAlternatives(m, parameters)).stream())
+                .map(m -> placeholderFilter(m, parameters))
+                .filter(m -> !dominators.containsGreater(m));
+
+        if (this.profile.get() != null) {
+            Stream<Mapping> streamed = filtered;
+            filtered = profiled(EvaluationProfile.STAGE, () -> "joinLastExact", lazyInput,
+                    () -> streamed.collect(Collectors.toSet())).stream();
+        }
+
+        return Stream.concat(eager.stream(), filtered).distinct();
+    }
+
+    private Set<Mapping> expandQueryResult(Set<Mapping> mappings) {
+        if (!this.expandDefaults) return mappings;
+        return expandDefaults(mappings);
+    }
+
+    /** The result of a query, given the evaluation of the template queried. **/
+    Set<Mapping> queryResult(Set<Mapping> templateMappings) {
+        return expandQueryResult(templateMappings).stream()
+                .flatMap(this::validIDs)
+                .collect(Collectors.toSet());
+    }
+
+    private static Map<Boolean, Set<Mapping>> partitionExact(Set<Mapping> mappings) {
+        return mappings.stream()
+                .collect(Collectors.partitioningBy(SubsumptionIndex::isExact, Collectors.toSet()));
+    }
+
+    /**
+     * A mapping has valid IDs if no list ID is repeated in the mapping. A DefaultOrNone-term with
+     * a list of the graph as default value, as kept when defaults are not expanded, stands for the
+     * list or none, so it is replaced by none if another variable is mapped to the list. If several
+     * DefaultOrNone-terms have the same list, there is one mapping where each of them keeps it.
+     *
+     * @return The mapping, or the valid mappings it stands for, which is none if a list ID of
+     * terms that are not DefaultOrNone is repeated.**/
+    private Stream<Mapping> validIDs(Mapping mapping) {
+        Set<Object> ids = new HashSet<>();
+        Map<Object, List<Term>> defaults = null;
+
+        for (Term var : mapping.domain()) {
+            Term term = mapping.get(var);
+
+            if (term instanceof DefaultOrNone && isGraphList(((DefaultOrNone) term).getValue())) {
+                if (defaults == null) defaults = new HashMap<>();
+                defaults.computeIfAbsent(term.getIdentifier(), id -> new ArrayList<>()).add(var);
+
+            } else if (isGraphList(term) && !ids.add(term.getIdentifier())) {
+                return Stream.empty();
+            }
+        }
+
+        if (defaults == null) return Stream.of(mapping);
+
+        List<Mapping> result = Collections.singletonList(mapping);
+
+        for (Map.Entry<Object, List<Term>> entry : defaults.entrySet()) {
+            List<Term> vars = entry.getValue();
+            if (!ids.contains(entry.getKey()) && vars.size() == 1) continue;
+
+            List<Mapping> narrowed = new ArrayList<>();
+            for (Mapping map : result) {
+                if (ids.contains(entry.getKey())) {
+                    narrowed.add(withNone(map, vars, null));
+                } else {
+                    for (Term keeping : vars) {
+                        narrowed.add(withNone(map, vars, keeping));
+                    }
+                }
+            }
+            result = narrowed;
+        }
+
+        return result.stream();
+    }
+
+    private static boolean isGraphList(Term term) {
+        return term instanceof ListTerm && !TermRegistry.isUnexpanded(term);
+    }
+
+    // Maps the variables, except the one kept, to none.
+    private static Mapping withNone(Mapping mapping, List<Term> vars, Term kept) {
+        Mapping.Builder builder = mapping.toBuilder();
+        for (Term var : vars) {
+            if (!var.equals(kept)) builder.put(var, new NoneTerm());
+        }
+        return builder.build();
+    }
+
+    public Set<Mapping> evaluateTemplate(Template template) {
+        return profiled(EvaluationProfile.TEMPLATE, template::getIri, -1, () -> {
+            Set<Mapping> templateMappings;
+
+            if (isBaseTemplate(template)) {
+                templateMappings = profiled(EvaluationProfile.STAGE, () -> "scan", -1,
+                        () -> getTripleIndex(template).all());
+
+            } else {
+                Map<Set<Mapping>, Instance> instanceEvaluations = new HashMap<>();
+                for (Instance instance : template.getPattern()) {
+                    instanceEvaluations.putIfAbsent(evaluateInstance(instance), instance);
+                }
+
+                long input = instanceEvaluations.keySet().stream().mapToLong(Set::size).sum();
+                templateMappings = profiled(EvaluationProfile.STAGE, () -> "joinAll", input,
+                        () -> getPlanner().joinAll(instanceEvaluations));
+            }
+
+            return filterTemplateMappings(templateMappings, template.getParameters());
+        });
+    }
+
+    /** Evaluates a template, or gets its evaluation from the cache if it was already evaluated.
+     * Base templates are not cached, since their evaluation is the whole graph. **/
+    private Set<Mapping> evaluateCachedTemplate(Template template) {
+        if (isBaseTemplate(template)) return evaluateTemplate(template);
+
+        EvaluationProfile profile = this.profile.get();
+        if (profile != null && this.cache.contains(template.getIri())) {
+            EvaluationProfile.Node node = profile.start(EvaluationProfile.TEMPLATE, template.getIri());
+            Set<Mapping> cached = this.cache.get(template.getIri(), () -> evaluateTemplate(template));
+            profile.endCached(node, cached.size());
+            return cached;
+        }
+
+        return this.cache.get(template.getIri(), () -> evaluateTemplate(template));
+    }
+
+    /**
+     * Evaluates a base template for an instance that is not list expanded, using the triple index
+     * for the arguments that are ground terms. The triples that are left out would be removed
+     * by argFilter anyway, since ground terms are only compatible with equal terms.
+     *
+     * @param template The Triple or NullableTriple base template.
+     * @param argTerms The arguments of the instance.**/
+    private Set<Mapping> evaluateBaseTemplate(Template template, List<Term> argTerms) {
+        Set<Mapping> templateMappings = profiled(EvaluationProfile.STAGE, () -> "scan", -1,
+                () -> match(getTripleIndex(template), argTerms));
+
+        return filterTemplateMappings(templateMappings, template.getParameters());
+    }
+
+    /**
+     * Evaluates an instance of a base template that is not list expanded over some triples only,
+     * e.g. triples added to the graph. The solutions that do not depend on the triples, such as
+     * those of generateNonOptSolutions, are left out.
+     *
+     * @param instance An instance of the Triple or NullableTriple base template.
+     * @param index Mappings of the base template for some triples.**/
+    Set<Mapping> evaluateBaseInstance(Instance instance, TripleStore index) {
+        Template template = getTemplate(instance.getIri());
+        List<Term> argTerms = instance.getArguments().stream()
+                .map(Argument::getTerm).collect(Collectors.toList());
+
+        Set<Mapping> templateMappings = filterMappings(match(index, argTerms), template.getParameters());
+        Mapping argMap = new Mapping(parameterVars(template.getParameters()), argTerms);
+
+        return argFilter(templateMappings, argMap);
+    }
+
+    /** The mappings of a base template for the triples that match the given terms,
+     * where null matches any term. **/
+    Set<Mapping> scan(Template template, Term s, Term p, Term o) {
+        return new HashSet<>(getTripleIndex(template).match(s, p, o));
+    }
+
+    private Set<Mapping> match(TripleStore index, List<Term> argTerms) {
+        return new HashSet<>(index.match(
+                indexKey(argTerms.get(0)), indexKey(argTerms.get(1)), indexKey(argTerms.get(2))));
+    }
+
+    Term indexKey(Term arg) {
+        return !arg.isVariable() && TermRegistry.isGround(arg) ? arg : null;
+    }
+
+    boolean isBaseTemplate(Template template) {
+        return template.getIri().equals(OTTR.BaseURI.Triple)
+                || template.getIri().equals(OTTR.BaseURI.NullableTriple);
+    }
+
+    private TripleStore getTripleIndex(Template template) {
+        index();
+        if (template.getIri().equals(OTTR.BaseURI.Triple)) return this.triples;
+        return this.nullableTriples;
+    }
+
+    Set<Mapping> filterTemplateMappings(Set<Mapping> templateMappings, List<Parameter> parameters) {
+        Set<Mapping> result = filterMappings(templateMappings, parameters);
+        result.addAll(generateNonOptSolutions(parameters));
+        return intern(stage("removeSubMappings", result, this::removeSubMappings));
+    }
+
+    /** Applies the parameter modifiers, default values and placeholder filtering of a template
+     * to mappings, without adding the non-optional solutions or removing sub-mappings. **/
+    Set<Mapping> filterMappings(Set<Mapping> templateMappings, List<Parameter> parameters) {
+        Set<Mapping> result = stage("paramFilter", templateMappings, mappings -> paramFilter(mappings, parameters));
+        result = stage("defaultAlternativesAll", result, mappings -> defaultAlternativesAll(mappings, parameters));
+        return stage("placeholderFilter", result, mappings -> placeholderFilter(mappings, parameters));
+    }
+
+    JoinPlanner getPlanner() {
+        index();
+        return this.planner;
+    }
+
+    Set<Mapping> intern(Set<Mapping> mappings) {
+        if (!this.hashConsing) return mappings;
+        return this.interner.internAll(mappings);
+    }
+
+    /** Removes mappings that are less than some other mapping in the input-set
+     * according to the partial order in TermRegistry **/
+    Set<Mapping> removeSubMappings(Set<Mapping> mappings) {
+        SubsumptionIndex index = new SubsumptionIndex(mappings);
+
+        Set<Mapping> result = new HashSet<>();
+        for (Mapping mapping : mappings) {
+            if (!index.containsGreater(mapping)) result.add(mapping);
+        }
+
+        return result;
+    }
+
+    /**
+     * Filters placeholders in mappings by taking the GLB of them with placeholders generated
+     * by the parameter modifiers in a parameter list.
+     *
+     * @param mappings Potential solutions to the evaluation of a template as a query.
+     * @return A version of the input-set of mappings where placeholders have been reduced
+     * in terms of the partial order, which is defined in the TermRegistry-enum.**/
+    private Set<Mapping> placeholderFilter(Set<Mapping> mappings, List<Parameter> parameters) {
+        Set<Mapping> result = new HashSet<>();
+        for (Mapping mapping : mappings) {
+            result.add(placeholderFilter(mapping, parameters));
+        }
+
+        return result;
+    }
+
+    private Mapping placeholderFilter(Mapping mapping, List<Parameter> parameters) {
+        Mapping.Builder resultMap = this.dictionary.builder();
+        for (Parameter parameter : parameters) {
+            Term var = parameter.getTerm();
+            if (mapping.get(var) instanceof Placeholder) {
+                resultMap.put(var, TermRegistry.GLB(mapping.get(var),
+                        TermRegistry.paramPlaceholder(parameter)));
+            } else {
+                resultMap.put(var, mapping.get(var));
+            }
+        }
+
+        return resultMap.build();
+    }
+
+    public Set<Mapping> evaluateInstance(Instance instance) {
+        return profiled(EvaluationProfile.INSTANCE, instance::toString, -1, () -> {
+            Template template = getTemplate(instance.getIri());
+
+            List<Term> argTerms = instance.getArguments().stream()
+                    .map(Argument::getTerm).collect(Collectors.toList());
+
+            Set<Mapping> templateResult;
+
+            if (isBaseTemplate(template) && !instance.hasListExpander()) {
+                templateResult = evaluateBaseTemplate(template, argTerms);
+            } else {
+                templateResult = evaluateCachedTemplate(template);
+            }
+
+            return evaluateInstance(instance, templateResult);
+        });
+    }
+
+    /** Evaluates an instance, given the evaluation of its template. **/
+    Set<Mapping> evaluateInstance(Instance instance, Set<Mapping> templateResult) {
+        Template template = getTemplate(instance.getIri());
+
+        List<Term> argTerms = instance.getArguments().stream()
+                .map(Argument::getTerm).collect(Collectors.toList());
+
+        if (instance.hasListExpander()) {
+            templateResult = stage("expandDefaults", templateResult, this::expandDefaults);
+
+            ListUnexpander unexpander = getUnexpander(template, instance);
+
+            if (instance.getListExpander().equals(ListExpander.zipMin)) {
+                templateResult = stage("unzipMin", templateResult, unexpander::unzipMin);
+
+            } else if (instance.getListExpander().equals(ListExpander.zipMax)) {
+                templateResult = stage("unzipMax", templateResult, unexpander::unzipMax);
+
+            } else {
+                templateResult = stage("uncross", templateResult, unexpander::uncross);
+            }
+        }
+
+        Mapping argMap = new Mapping(parameterVars(template.getParameters()), argTerms);
+
+        return stage("argFilter", templateResult, mappings -> argFilter(mappings, argMap));
+    }
+
+    /**
+     * The ListUnexpander of a list expanded instance. An unexpander only depends on the parameters
+     * of the template, which arguments are marked for list expansion, and which of those are lists
+     * when bags are used, so it is shared by the instances where these are the same.**/
+    ListUnexpander getUnexpander(Template template, Instance instance) {
+        List<Integer> markers = new ArrayList<>();
+        for (Argument argument : instance.getArguments()) {
+            if (!argument.isListExpander()) {
+                markers.add(0);
+            } else {
+                markers.add(this.bagLists && argument.getTerm() instanceof ListTerm ? 2 : 1);
+            }
+        }
+
+        List<Object> key = Arrays.asList(template.getIri(), markers, this.maxRepetitions, this.bagLists);
+
+        return this.unexpanders.computeIfAbsent(key, k -> new ListUnexpander(template.getParameters(),
+                instance.getArguments(), this.maxRepetitions, this.bagLists, this.dictionary));
+    }
+
+    /** Filters mappings against instance arguments during the evaluation of an OTTR instance.**/
+    Set<Mapping> argFilter(Set<Mapping> mappings, Mapping argMap) {
+        Set<Mapping> result = new HashSet<>();
+
+        // The elements of a list argument are matched with the elements of a list by position.
+        Set<Term> listVars = new HashSet<>();
+        for (Term var : argMap.domain()) {
+            if (argMap.get(var) instanceof ListTerm) listVars.add(var);
+        }
+        if (!listVars.isEmpty()) mappings = expandBags(mappings, listVars);
+
+        for (Mapping map : mappings) {
+            if (Mapping.innerCompatible(map, argMap)) {
+                result.add(Mapping.transform(map, argMap));
+            }
+        }
+
+        return intern(result);
+    }
+
+    /** Generates additional mappings which have ottr:none for non-optional vars
+     * and thus are ignored in forward OTTR **/
+    Set<Mapping> generateNonOptSolutions(List<Parameter> parameters) {
+        Set<Mapping> result = new HashSet<>();
+
+        for (Parameter noParam : parameters) {
+            if (!noParam.isOptional()) {
+                Mapping.Builder m = this.dictionary.builder();
+                m.put(noParam.getTerm(), new NoneTerm());
+                for (Parameter parameter : parameters) {
+                    if (!parameter.equals(noParam)) {
+                        if (parameter.isNonBlank()) {
+                            m.put(parameter.getTerm(), TermRegistry.any_nb);
+                        } else {
+                            m.put(parameter.getTerm(), TermRegistry.any);
+                        }
+                    }
+                }
+
+                result.add(m.build());
+            }
+        }
+
+        return result;
+    }
+
+    /** Filters mappings according to parameter modifiers **/
+    private Set<Mapping> paramFilter(Set<Mapping> maps, List<Parameter> parameters) {
+        return maps.stream()
+                .map(m -> conform(m, parameters))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+    }
+
+    /** Checks whether a mapping conforms to a list of parameters,
+     * where the mapping-variables are the same as the parameter-variables.
+     * A DefaultOrNone-term is narrowed to the alternative that conforms, if only one does.
+     * @return The conforming mapping, or null if the mapping does not conform.**/
+    private Mapping conform(Mapping map, List<Parameter> parameters) {
+        Mapping.Builder narrowed = null;
+
+        for (Parameter param : parameters) {
+            Term var = param.getTerm();
+            if (map.containsVar(var)) {
+                Term term = map.get(var);
+
+                if (term instanceof DefaultOrNone) {
+                    Term value = ((DefaultOrNone) term).getValue();
+                    boolean valueConforms = !(param.isNonBlank() && value instanceof BlankNodeTerm);
+
+                    if (!param.isOptional() && !valueConforms) return null;
+                    if (param.isOptional() && valueConforms) continue;
+
+                    if (narrowed == null) narrowed = map.toBuilder();
+                    narrowed.put(var, param.isOptional() ? new NoneTerm() : value);
+
+                } else if ((term instanceof NoneTerm && !param.isOptional())
+                        || (param.isNonBlank() && term instanceof BlankNodeTerm)) {
+                    return null;
+                }
+            }
+        }
+
+        return narrowed == null ? map : narrowed.build();
+    }
+
+    /** Finds the default alternatives of each mapping in a set of mappings.
+     * A default alternative of a mapping is any mapping where variables, with default values
+     * according to a parameter list, have a default value and the mapping maps the variable
+     * to the default value or to the none-value. The alternatives of a mapping are represented
+     * by one mapping, where such variables are mapped to a DefaultOrNone-term.**/
+    private Set<Mapping> defaultAlternativesAll(Set<Mapping> maps, List<Parameter> parameters) {
+        Set<Mapping> resultMaps = new HashSet<>();
+        maps.forEach(m -> resultMaps.add(defaultAlternatives(m, parameters)));
+
+        return resultMaps;
+    }
+
+    private Mapping defaultAlternatives(Mapping map, List<Parameter> parameters) {
+        Mapping.Builder builder = null;
+
+        for (Parameter param : parameters) {
+            Term var = param.getTerm();
+            if (param.hasDefaultValue()
+                    && map.get(var).equals(param.getDefaultValue())) {
+                if (builder == null) builder = map.toBuilder();
+                builder.put(var, new DefaultOrNone(map.get(var)));
+            }
+        }
+
+        return builder == null ? map : builder.build();
+    }
+
+    /**
+     * Expands the DefaultOrNone-terms of a set of mappings, such that every variable with
+     * a default value is mapped to the default value in one mapping and to none in another.
+     * Since some of the expanded mappings may be less than others, they are removed.
+     *
+     * @param mappings Mappings that may contain DefaultOrNone-terms.
+     * @return The expanded mappings that are not less than another expanded mapping.**/
+    public Set<Mapping> expandDefaults(Set<Mapping> mappings) {
+        Set<Mapping> result = new HashSet<>();
+        boolean expanded = false;
+
+        for (Mapping mapping : mappings) {
+            Set<Mapping> alternatives = expandDefaults(mapping);
+            expanded |= alternatives.size() > 1;
+            result.addAll(alternatives);
+        }
+
+        return expanded ? removeSubMappings(result) : result;
+    }
+
+    private static Set<Mapping> expandDefaults(Mapping map) {
+        Set<Set<Mapping>> combinations = new HashSet<>();
+        TermDictionary dictionary = map.getDictionary();
+        Mapping.Builder rest = Mapping.builder(dictionary);
+
+        for (Term var : map.domain()) {
+            Term term = map.get(var);
+            if (term instanceof DefaultOrNone) {
+                Set<Mapping> combination = new HashSet<>();
+                combination.add(Mapping.builder(dictionary).put(var, ((DefaultOrNone) term).getValue()).build());
+                combination.add(Mapping.builder(dictionary).put(var, new NoneTerm()).build());
+
+                combinations.add(combination);
+            } else {
+                rest.put(var, term);
+            }
+        }
+
+        if (combinations.isEmpty()) return Collections.singleton(map);
+
+        Mapping restMap = rest.build();
+        return Mapping.joinAll(combinations).stream()
+                .map(m -> Mapping.union(m, restMap))
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Expands the RBagTerms of a set of mappings, such that every ordering of the elements
+     * of a bag is given as an unexpanded RListTerm in a mapping of its own.
+     *
+     * @param mappings Mappings that may contain RBagTerms, see setBagLists.
+     * @return The mappings with the orderings of the bags.**/
+    public Set<Mapping> expandBags(Set<Mapping> mappings) {
+        Set<Mapping> result = new HashSet<>();
+        mappings.forEach(mapping -> result.addAll(expandBags(mapping, mapping.domain())));
+        return result;
+    }
+
+    private static Set<Mapping> expandBags(Set<Mapping> mappings, Set<Term> vars) {
+        Set<Mapping> result = new HashSet<>();
+        mappings.forEach(mapping -> result.addAll(expandBags(mapping, vars)));
+        return result;
+    }
+
+    private static Set<Mapping> expandBags(Mapping map, Set<Term> vars) {
+        Set<Mapping> result = Collections.singleton(map);
+
+        for (Term var : vars) {
+            if (!(map.get(var) instanceof RBagTerm)) continue;
+
+            Set<Mapping> expanded = new HashSet<>();
+            for (Mapping mapping : result) {
+                for (RListTerm ordering : ((RBagTerm) map.get(var)).orderings()) {
+                    expanded.add(mapping.toBuilder().put(var, ordering).build());
+                }
+            }
+            result = expanded;
+        }
+
+        return result;
+    }
+
+    private static List<Term> parameterVars(List<Parameter> parameters) {
+        return parameters.stream().map(Parameter::getTerm).collect(Collectors.toList());
+    }
+
+    Template getTemplate(String templateIRI) {
+        if (templateManager.getTemplateStore().containsTemplate(templateIRI)) {
+            return templateManager.getTemplateStore().getTemplate(templateIRI).get();
+        }
+        return templateManager.getStandardLibrary().getTemplate(templateIRI).get();
+    }
+}
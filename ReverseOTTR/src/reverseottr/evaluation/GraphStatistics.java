@@ -0,0 +1,103 @@
+package reverseottr.evaluation;
+
+import reverseottr.model.Mapping;
+import xyz.ottr.lutra.model.terms.Term;
+
+import java.util.*;
+
+/**
+ * Statistics on the triples of a graph, used to estimate the number of solutions
+ * to instances of the Triple and NullableTriple base templates.
+ *
+ * For every predicate, the number of triples and the number of distinct subjects
+ * and objects are recorded.**/
+public class GraphStatistics {
+
+    private final int size;
+    private final int distinctSubjects;
+    private final int distinctObjects;
+    private final Map<Term, Integer> triples = new HashMap<>();
+    private final Map<Term, Integer> subjects = new HashMap<>();
+    private final Map<Term, Integer> objects = new HashMap<>();
+
+    /**
+     * Collects statistics from mappings that represent the triples of a graph.
+     *
+     * @param mappings Mappings from the variables of the Triple base template to terms.
+     * @param vars The subject, predicate and object variables of the Triple base template.**/
+    public GraphStatistics(Set<Mapping> mappings, List<Term> vars) {
+        Term sVar = vars.get(0);
+        Term pVar = vars.get(1);
+        Term oVar = vars.get(2);
+
+        Map<Term, Set<Term>> subjectSets = new HashMap<>();
+        Map<Term, Set<Term>> objectSets = new HashMap<>();
+        Set<Term> allSubjects = new HashSet<>();
+        Set<Term> allObjects = new HashSet<>();
+
+        for (Mapping mapping : mappings) {
+            Term p = mapping.get(pVar);
+            this.triples.merge(p, 1, Integer::sum);
+            subjectSets.computeIfAbsent(p, k -> new HashSet<>()).add(mapping.get(sVar));
+            objectSets.computeIfAbsent(p, k -> new HashSet<>()).add(mapping.get(oVar));
+            allSubjects.add(mapping.get(sVar));
+            allObjects.add(mapping.get(oVar));
+        }
+
+        subjectSets.forEach((p, set) -> this.subjects.put(p, set.size()));
+        objectSets.forEach((p, set) -> this.objects.put(p, set.size()));
+
+        this.size = mappings.size();
+        this.distinctSubjects = allSubjects.size();
+        this.distinctObjects = allObjects.size();
+    }
+
+    /**
+     * Creates statistics that are already collected, e.g. stored in a GraphSnapshot.
+     *
+     * @param size The number of triples.
+     * @param distinctSubjects The number of distinct subjects of all triples.
+     * @param distinctObjects The number of distinct objects of all triples.
+     * @param predicates The number of triples, distinct subjects and distinct objects,
+     * in that order, for each predicate.**/
+    public GraphStatistics(int size, int distinctSubjects, int distinctObjects, Map<Term, int[]> predicates) {
+        this.size = size;
+        this.distinctSubjects = distinctSubjects;
+        this.distinctObjects = distinctObjects;
+
+        predicates.forEach((p, counts) -> {
+            this.triples.put(p, counts[0]);
+            this.subjects.put(p, counts[1]);
+            this.objects.put(p, counts[2]);
+        });
+    }
+
+    /** The number of triples in the graph. **/
+    public int size() {
+        return this.size;
+    }
+
+    /** The number of triples with the given predicate. **/
+    public int triples(Term predicate) {
+        return this.triples.getOrDefault(predicate, 0);
+    }
+
+    /** The number of distinct subjects of triples with the given predicate,
+     * or of all triples if the predicate is null. **/
+    public int distinctSubjects(Term predicate) {
+        if (predicate == null) return this.distinctSubjects;
+        return this.subjects.getOrDefault(predicate, 0);
+    }
+
+    /** The number of distinct objects of triples with the given predicate,
+     * or of all triples if the predicate is null. **/
+    public int distinctObjects(Term predicate) {
+        if (predicate == null) return this.distinctObjects;
+        return this.objects.getOrDefault(predicate, 0);
+    }
+
+    /** The number of distinct predicates in the graph. **/
+    public int distinctPredicates() {
+        return this.triples.size();
+    }
+}
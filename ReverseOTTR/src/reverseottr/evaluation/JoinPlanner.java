@@ -0,0 +1,183 @@
+package reverseottr.evaluation;
+
+import reverseottr.model.Mapping;
+import xyz.ottr.lutra.OTTR;
+import xyz.ottr.lutra.model.Argument;
+import xyz.ottr.lutra.model.Instance;
+import xyz.ottr.lutra.model.terms.Term;
+
+import java.util.*;
+
+/**
+ * Decides the order in which the instance evaluations of a template are joined.
+ *
+ * Starting with the smallest evaluation, the next evaluation to be joined is the one
+ * that shares variables with the evaluations joined so far and has the smallest estimated
+ * join result. Evaluations that share no variables with the joined ones, i.e. cartesian
+ * products, are deferred until no connected evaluations remain.**/
+class JoinPlanner {
+
+    private final GraphStatistics statistics;
+
+    JoinPlanner(GraphStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Joins the evaluations of the instances of a template.
+     *
+     * @param evaluations The evaluation of each instance, together with the instance.
+     * @return The join of all the evaluations, as given by Mapping.joinAll.**/
+    Set<Mapping> joinAll(Map<Set<Mapping>, Instance> evaluations) {
+        PartialJoin partial = joinAllButLast(evaluations);
+
+        if (partial.last == null) return partial.joined;
+
+        return Mapping.join(partial.joined, partial.last);
+    }
+
+    /**
+     * Joins the evaluations of the instances of a template, except the evaluation that is last
+     * in the join order, such that the last join can be done by the caller.
+     *
+     * @param evaluations The evaluation of each instance, together with the instance.
+     * @return The join of all but the last evaluation, and the last evaluation. The last
+     * evaluation is null if there was only one evaluation or the join is already empty.**/
+    PartialJoin joinAllButLast(Map<Set<Mapping>, Instance> evaluations) {
+        List<Relation> remaining = new LinkedList<>();
+        evaluations.forEach((mappings, instance) -> remaining.add(estimate(mappings, instance)));
+
+        if (remaining.isEmpty()) return new PartialJoin(new HashSet<>(), null);
+
+        Relation current = Collections.min(remaining, Comparator.comparingDouble(r -> r.size));
+        remaining.remove(current);
+
+        while (!remaining.isEmpty()) {
+            if (current.mappings.isEmpty()) return new PartialJoin(new HashSet<>(), null);
+
+            Relation next = pick(current, remaining);
+            remaining.remove(next);
+
+            if (remaining.isEmpty()) return new PartialJoin(current.mappings, next.mappings);
+
+            current = current.join(next);
+        }
+
+        return new PartialJoin(current.mappings, null);
+    }
+
+    /** The join of all but the last evaluation, and the last evaluation or null. **/
+    static class PartialJoin {
+        final Set<Mapping> joined;
+        final Set<Mapping> last;
+
+        PartialJoin(Set<Mapping> joined, Set<Mapping> last) {
+            this.joined = joined;
+            this.last = last;
+        }
+    }
+
+    private Relation pick(Relation current, List<Relation> candidates) {
+        Relation best = null;
+        boolean bestConnected = false;
+        double bestSize = Double.MAX_VALUE;
+
+        for (Relation candidate : candidates) {
+            boolean connected = current.isConnected(candidate);
+            double size = current.joinSize(candidate);
+
+            if (best == null
+                    || (connected && !bestConnected)
+                    || (connected == bestConnected && size < bestSize)) {
+                best = candidate;
+                bestConnected = connected;
+                bestSize = size;
+            }
+        }
+
+        return best;
+    }
+
+    private Relation estimate(Set<Mapping> mappings, Instance instance) {
+        if (instance.getIri().equals(OTTR.BaseURI.Triple)
+                || instance.getIri().equals(OTTR.BaseURI.NullableTriple)) {
+            return estimateTriple(mappings, instance.getArguments());
+        }
+
+        Map<Term, Set<Term>> values = new HashMap<>();
+        for (Mapping mapping : mappings) {
+            for (Term var : mapping.domain()) {
+                values.computeIfAbsent(var, k -> new HashSet<>()).add(mapping.get(var));
+            }
+        }
+
+        Map<Term, Double> distinct = new HashMap<>();
+        values.forEach((var, set) -> distinct.put(var, (double) set.size()));
+
+        return new Relation(mappings, distinct);
+    }
+
+    // Uses the graph statistics for the distinct values of the subject, predicate and object.
+    private Relation estimateTriple(Set<Mapping> mappings, List<Argument> arguments) {
+        Term s = arguments.get(0).getTerm();
+        Term p = arguments.get(1).getTerm();
+        Term o = arguments.get(2).getTerm();
+
+        Term predicate = p.isVariable() ? null : p;
+
+        Map<Term, Double> distinct = new HashMap<>();
+        if (s.isVariable()) distinct.put(s, (double) this.statistics.distinctSubjects(predicate));
+        if (p.isVariable()) distinct.put(p, (double) this.statistics.distinctPredicates());
+        if (o.isVariable()) distinct.merge(o, (double) this.statistics.distinctObjects(predicate), Math::min);
+
+        // Variables nested in list arguments are not covered by the statistics.
+        if (!mappings.isEmpty()) {
+            for (Term var : mappings.iterator().next().domain()) {
+                distinct.putIfAbsent(var, (double) mappings.size());
+            }
+        }
+
+        return new Relation(mappings, distinct);
+    }
+
+    /** A set of mappings with an estimate of the number of distinct values of each variable.**/
+    private static class Relation {
+        private final Set<Mapping> mappings;
+        private final double size;
+        private final Map<Term, Double> distinct;
+
+        Relation(Set<Mapping> mappings, Map<Term, Double> distinct) {
+            this.mappings = mappings;
+            this.size = mappings.size();
+            this.distinct = new HashMap<>();
+            distinct.forEach((var, d) -> this.distinct.put(var, Math.max(1, Math.min(d, this.size))));
+        }
+
+        boolean isConnected(Relation other) {
+            for (Term var : this.distinct.keySet()) {
+                if (other.distinct.containsKey(var)) return true;
+            }
+            return false;
+        }
+
+        /** Estimates the join size assuming independent and uniformly distributed values. **/
+        double joinSize(Relation other) {
+            double result = this.size * other.size;
+            for (Term var : this.distinct.keySet()) {
+                if (other.distinct.containsKey(var)) {
+                    result /= Math.max(this.distinct.get(var), other.distinct.get(var));
+                }
+            }
+            return result;
+        }
+
+        Relation join(Relation other) {
+            Set<Mapping> joined = Mapping.join(this.mappings, other.mappings);
+
+            Map<Term, Double> joinedDistinct = new HashMap<>(this.distinct);
+            other.distinct.forEach((var, d) -> joinedDistinct.merge(var, d, Math::min));
+
+            return new Relation(joined, joinedDistinct);
+        }
+    }
+}
@@ -1,563 +1,788 @@
-package reverseottr.evaluation;
-
-import reverseottr.model.Mapping;
-import reverseottr.model.RListTerm;
-import reverseottr.model.TermRegistry;
-import xyz.ottr.lutra.model.Argument;
-import xyz.ottr.lutra.model.Parameter;
-import xyz.ottr.lutra.model.terms.ListTerm;
-import xyz.ottr.lutra.model.terms.NoneTerm;
-import xyz.ottr.lutra.model.terms.Term;
-
-import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-
-/**
- * Implements the reverse of OTTR list expansion.**/
-public class ListUnexpander {
-
-    private final List<Term> markedVariables;
-    private final List<Term> unmarkedVariables;
-    private final Set<Mapping> minEmpty;
-    private final Set<Mapping> maxEmpty;
-    private final int maxRepetitions;
-
-    public ListUnexpander(List<Parameter> parameters, List<Argument> arguments, int repetitions) {
-        this.markedVariables = getMarkedVars(parameters, arguments);
-        this.unmarkedVariables = getUnmarkedVars(parameters, arguments);
-        this.minEmpty = minUnfltr();
-        this.maxEmpty = maxUnfltr();
-        this.maxRepetitions = repetitions;
-    }
-
-    /**
-     * The reverse of OTTR cross.
-     *
-     * @param mappings Takes a set of mappings that is the result of evaluating a template as a query.
-     * @return all lists that could be crossed in OTTR to produce the input-set of mappings,
-     * limited by the maximum number of repetitions.**/
-    public Set<Mapping> uncross(Set<Mapping> mappings) {
-        var compSets = findCompatibleSets(mappings);
-
-        Set<Mapping> result = new HashSet<>();
-
-        for (Set<Mapping> compSet : compSets) {
-            var uncrossed = toMappings(compactifyAll(compSet));
-
-            Mapping glb = GLBSet(compSet);
-
-            for (Mapping mapping : uncrossed) {
-                for (Mapping mapPermutation : mapPermutations(mapping)) {
-                    Mapping resultMap = Mapping.union(glb, mapPermutation);
-                    result.add(resultMap);
-                }
-            }
-        }
-
-        result.addAll(this.minEmpty);
-
-        return result.stream()
-                .map(this::ListTermsToRListTerms)
-                .collect(Collectors.toSet());
-    }
-
-    /** Generate all possible orderings and sublists for the uncrossed lists in a mapping.
-     *
-     * @param mapping A mapping that is a solution to uncross.
-     * @return All permutations of the lists in the range of the input-mapping, such that these
-     * are also solutions to uncross.**/
-    private Set<Mapping> mapPermutations(Mapping mapping) {
-        Set<Set<Mapping>> tempSet = new HashSet<>();
-
-        for (Term var : mapping.domain()) {
-            Set<Mapping> varSet = new HashSet<>();
-
-            List<Term> list = ((ListTerm) mapping.get(var)).asList();
-
-            for (var sublist : sublists(list)) {
-                for (var repeated : repeat(sublist)) {
-                    for (var order : permutations(repeated.size())) {
-                        Mapping m = new Mapping();
-                        ListTerm term = new ListTerm(applyOrder(order, repeated));
-                        m.put(var, term);
-                        varSet.add(m);
-                    }
-                }
-            }
-
-            tempSet.add(varSet);
-        }
-
-        return Mapping.joinAll(tempSet);
-    }
-
-    private <T> Set<List<T>> sublists(List<T> list) {
-        Set<List<T>> result = new HashSet<>();
-        List<T> resultList = new LinkedList<>();
-        for (var t : list) {
-            resultList.add(t);
-            result.add(resultList);
-            resultList = new LinkedList<>(resultList);
-        }
-
-        return result;
-    }
-
-    private Set<Mapping> toMappings(Set<Map<Term, Set<Term>>> set) {
-        Set<Mapping> result = new HashSet<>();
-        for (Map<Term, Set<Term>> map : set) {
-            Mapping mapping = new Mapping();
-            for (Term var : map.keySet()) {
-                List<Term> termList = new LinkedList<>(map.get(var));
-                mapping.put(var, new ListTerm(termList));
-                result.add(mapping);
-            }
-        }
-
-        return result;
-    }
-
-    /** The main function of uncross, where elements of possible lists in the solution
-     * are determined.
-     *
-     * @param mappings A set of mappings that are compatible for the unmarked variables.
-     * @return A set of mappings from terms to sets of terms. The sets contain elements
-     * that may be present in list-solutions for uncross.
-     * @see "compactify-method" **/
-    private Set<Map<Term, Set<Term>>> compactifyAll(Set<Mapping> mappings) {
-        Set<Map<Term, Set<Term>>> compacted = uncrossMin(mappings);
-        Set<Map<Term, Set<Term>>> nextCompacted = new HashSet<>();
-
-        for (Term markedVar : markedVariables) {
-            for (var m1 : compacted) {
-                var map = m1;
-                for (var m2 : compacted) {
-                    var temp = compactify(map, m2, markedVar);
-                    if (temp != null) {
-                        map = temp;
-                    }
-                }
-                nextCompacted.add(map);
-            }
-            compacted = nextCompacted;
-            nextCompacted = new HashSet<>();
-        }
-
-        return compacted;
-    }
-
-    /**
-     * Combines two mappings that are potential solutions to uncross to create another potential solution.
-     *
-     * This method is based on idea that two mappings from terms to sets of terms, that represents solutions
-     * to uncross, with the same domain i.e. terms that represent variables, can be combined by the union of
-     * of one variable and the disjunction of the other variables in their domain.
-     *
-     * @param m1 A mapping from terms to sets of terms, which represents a solution to uncross.
-     * @param m2 A mapping from terms to sets of terms, which represents a solution to uncross.
-     * @param var The selected variable to combine m1 and m2 over.
-     * @return The combination of the two mappings that must also represent a solution to uncross.**/
-    private Map<Term, Set<Term>> compactify(Map<Term, Set<Term>> m1, Map<Term, Set<Term>> m2, Term var) {
-        Map<Term, Set<Term>> combination = new HashMap<>();
-        combination.put(var, union(m1.get(var), m2.get(var)));
-        for (Term otherVar : markedVariables) {
-            if (!otherVar.equals(var)) {
-                combination.put(otherVar, intersection(m1.get(otherVar), m2.get(otherVar)));
-            }
-        }
-
-        if (hasEmptySet(combination)) return null;
-
-        return combination;
-    }
-
-    private boolean hasEmptySet(Map<Term, Set<Term>> map) {
-        for (Term var : map.keySet()) {
-            if (map.get(var).isEmpty()) return true;
-        }
-        return false;
-    }
-
-    private Set<Term> intersection(Set<Term> s1, Set<Term> s2) {
-        Set<Term> result = new HashSet<>();
-        for (Term t1 : s1) {
-            for (Term t2 : s2) {
-                Term glb = TermRegistry.GLB(t1, t2);
-                if (glb != null) {
-                    result.add(glb);
-                }
-            }
-        }
-        return result;
-    }
-
-    private Set<Term> union(Set<Term> s1, Set<Term> s2) {
-        Set<Term> result = new HashSet<>();
-
-        for (Term t1 : s1) {
-            for (Term t2 : s2) {
-                Term glb = TermRegistry.GLB(t1, t2);
-                if (glb != null) {
-                    result.add(glb);
-                } else {
-                    result.add(t1);
-                    result.add(t2);
-                }
-            }
-        }
-
-        return result;
-    }
-
-    /**
-     * The smallest mappings that represents solutions to uncross.
-     *
-     * @param mappings A set of mappings that compatible over the unmarked variables.
-     * @return The smallest mappings that represents solutions to uncross.**/
-    private Set<Map<Term, Set<Term>>> uncrossMin(Set<Mapping> mappings) {
-        Set<Map<Term, Set<Term>>> result = new HashSet<>();
-        for (Mapping mapping : mappings) {
-            Map<Term, Set<Term>> uncrossed = new HashMap<>();
-            for (Term var : markedVariables) {
-                Set<Term> set = new HashSet<>();
-                set.add(mapping.get(var));
-                uncrossed.put(var, set);
-            }
-            result.add(uncrossed);
-        }
-
-        return result;
-    }
-
-    /**
-     * The reverse of zipMin in OTTR.
-     *
-     * Generates mappings with lists, such that applying zipMin re-obtains the input-set.
-     * Since zipMin ignores elements in lists past the index of the last element of the
-     * shortest list, unzipMin appends the placeholder TermRegistry.any_trail, to signify
-     * that the remaining elements of lists other than the shortest could be anything.
-     *
-     * @param mappings A set of mappings that were obtained from the evaluateTemplate-method
-     *                 in the Evaluator-class.
-     * @return A set of mappings that could be zipMined to produce the input-set.**/
-    public Set<Mapping> unzipMin(Set<Mapping> mappings) {
-        Set<Mapping> result = new HashSet<>();
-
-        Set<Mapping> unzipped = unzip(mappings);
-        for (Mapping mapping : unzipped) {
-            for (Term pick : markedVariables) {
-                Mapping trailing = new Mapping(unmarkedVariables, mapping.get(unmarkedVariables));
-                trailing.put(pick, mapping.get(pick));
-
-                for (Term var : markedVariables) {
-                    if (!pick.equals(var)) {
-                        List<Term> termList = new LinkedList<>(((ListTerm)mapping.get(var)).asList());
-                        termList.add(TermRegistry.any_trail);
-                        trailing.put(var, new ListTerm(termList));
-                    }
-                }
-
-                result.add(trailing);
-            }
-        }
-
-        result.addAll(this.minEmpty);
-
-        return result.stream().map(this::ListTermsToRListTerms).collect(Collectors.toSet());
-    }
-
-    /**
-     * The reverse of zipMax in OTTR.
-     *
-     * @param mappings A set of mappings that were obtained from evaluating a template as a query.
-     * @return A set of mappings that could be zipMaxed to produce the input-set.**/
-    public Set<Mapping> unzipMax(Set<Mapping> mappings) {
-        Set<Mapping> result = unzip(mappings).stream().map(this::noneTrailAlternatives)
-                .reduce((s1, s2) -> {s1.addAll(s2); return s1;})
-                .orElse(new HashSet<>())
-                .stream().map(this::ListTermsToRListTerms)
-                .collect(Collectors.toSet());
-
-        result.addAll(maxEmpty);
-        return result;
-    }
-
-    /** One or more trailing NoneTerm may be removed to produce another solution to unzipMax.
-     * This method finds all such solutions.
-     *
-     * @param mapping A mapping that is a solution to unzipMax.
-     * @return A set of mappings that are also solutions to unzipMax, obtained by removing
-     * trailing none-values**/
-    private Set<Mapping> noneTrailAlternatives(Mapping mapping) {
-        Set<Set<Mapping>> altLists = new HashSet<>();
-
-        for (Term var : markedVariables) {
-            altLists.add(noneTrailLists(mapping, var));
-        }
-
-        Set<Mapping> markedMappings = Mapping.joinAll(altLists);
-
-        for (Mapping m : markedMappings) {
-            m.put(unmarkedVariables, mapping.get(unmarkedVariables));
-        }
-
-        return markedMappings;
-    }
-
-    private Set<Mapping> noneTrailLists(Mapping mapping, Term var) {
-        Set<Mapping> result = new HashSet<>();
-        Mapping original = new Mapping(var, mapping.get(var));
-        result.add(original);
-
-        List<Term> termList = ((ListTerm) mapping.get(var)).asList();
-
-        for (int i = termList.size() - 1; i >= 0; i--) {
-            Term term = termList.get(i);
-
-            if (term instanceof NoneTerm) {
-                Mapping altMap = new Mapping();
-                List<Term> altList = new LinkedList<>(termList.subList(0, i));
-                ListTerm altListTerm = new ListTerm(altList);
-                altMap.put(var, altListTerm);
-                result.add(altMap);
-            } else {
-                break;
-            }
-        }
-
-        return result;
-    }
-
-    private <T> List<T> applyOrder(List<Integer> order, List<T> list) {
-        return order.stream().map(list::get).collect(Collectors.toList());
-    }
-
-    private Set<List<Integer>> permutations(int size) {
-        Set<List<Integer>> result = new HashSet<>();
-
-        if (size == 1) {
-            List<Integer> list = new LinkedList<>();
-            list.add(0);
-            result.add(list);
-            return result;
-        }
-
-        for (List<Integer> list : permutations(size - 1)) {
-            for (int i = 0; i <= list.size(); i++) {
-                List<Integer> newList = new LinkedList<>(list);
-                newList.add(i, size - 1);
-                result.add(newList);
-            }
-        }
-
-        return result;
-    }
-
-    /**
-     * Finds the relevant lists for unzipMin and unzipMax.
-     *
-     * It finds the mappings with lists, such that when either of zipMin or zipMax
-     * are applied, the input-set of mappings is re-obtained. These mappings must
-     * be compatible over the unmarked variables.
-     *
-     * Additionally, it generates all possible orders of such lists, because order
-     * doesn't matter for zipMin and zipMax.
-     *
-     * @param mappings A set of mappings obtained from the evaluateTemplate-method
-     *                 in the Evaluator-class.
-     * @return A set of mappings with solutions for both unzipMin and unzipMax.
-     * **/
-    private Set<Mapping> unzip(Set<Mapping> mappings) {
-        Set<Mapping> result = new HashSet<>();
-
-        Set<Set<Mapping>> compSets = findCompatibleSets(mappings);
-
-        for (Set<Mapping> compSet : compSets) {
-            List<Mapping> compList = new LinkedList<>(compSet);
-            for (List<Mapping> repeat : repeat(compList)) {
-                for (List<Integer> order : permutations(repeat.size())) {
-                    result.add(unzipList(applyOrder(order, repeat)));
-                }
-            }
-        }
-
-        return result;
-    }
-
-    private <T> Set<List<T>> repeat(List<T> list) {
-        Set<List<T>> result = new HashSet<>();
-        result.add(list);
-
-        for (T t : list) {
-            for (int i = 0; i < this.maxRepetitions; i++) {
-                Set<List<T>> temp = new HashSet<>();
-                for (List<T> resultList : result) {
-                    List<T> other = new LinkedList<>(resultList);
-                    other.add(t);
-                    temp.add(other);
-                }
-                result.addAll(temp);
-            }
-        }
-
-        return result;
-    }
-
-    private Mapping unzipList(List<Mapping> mappings) {
-        Map<Term, List<Term>> unzipMap = new HashMap<>();
-
-        for (Term var : markedVariables) {
-            List<Term> termList = new LinkedList<>();
-            unzipMap.put(var, termList);
-        }
-
-        for (Mapping mapping : mappings) {
-            for (Term var : markedVariables) {
-                unzipMap.get(var).add(mapping.get(var));
-            }
-        }
-
-        Mapping result = GLBSet(new HashSet<>(mappings));
-
-        for (Term var : markedVariables) {
-            ListTerm listTerm = new ListTerm(unzipMap.get(var));
-            result.put(var, listTerm);
-        }
-
-        return result;
-    }
-
-    private Set<Set<Mapping>> findCompatibleSets(Set<Mapping> mappings) {
-        Set<Set<Mapping>> result = new HashSet<>();
-
-        for (Mapping mapping : mappings) {
-            Set<Mapping> compSet = new HashSet<>();
-            compSet.add(mapping);
-            result.add(compSet);
-        }
-
-        for (Mapping mapping : mappings) {
-            Set<Set<Mapping>> workSet = new HashSet<>();
-            for (Set<Mapping> compSet : result) {
-                Mapping glb = GLBSet(compSet);
-                if (glb != null) {
-                    if (Mapping.compatible(glb, mapping)) {
-                        Set<Mapping> fresh = new HashSet<>(compSet);
-                        fresh.add(mapping);
-                        workSet.add(fresh);
-                    }
-                }
-            }
-
-            result.addAll(workSet);
-        }
-
-        return result;
-    }
-
-    private Mapping GLBSet(Set<Mapping> mappings) {
-        Mapping result = new Mapping();
-        for (Term var : unmarkedVariables) {
-            result.put(var, TermRegistry.any);
-        }
-
-        for (Mapping mapping : mappings) {
-            result = GLBMapping(result, mapping);
-            if (result == null) return null;
-        }
-
-        return result;
-    }
-
-    private Mapping GLBMapping(Mapping m1, Mapping m2) {
-        Mapping result = new Mapping();
-        for (Term var : unmarkedVariables) {
-            Term GLB = TermRegistry.GLB(m1.get(var), m2.get(var));
-            if (GLB != null) {
-                result.put(var, GLB);
-            } else {
-                return null;
-            }
-        }
-
-        return result;
-    }
-
-    private List<Term> getMarkedVars(List<Parameter> parameters, List<Argument> arguments) {
-        List<Term> result = new LinkedList<>();
-
-        for (int i = 0; i < parameters.size(); i++) {
-            if (arguments.get(i).isListExpander())
-                result.add(parameters.get(i).getTerm());
-        }
-
-        return result;
-    }
-
-    private List<Term> getUnmarkedVars(List<Parameter> parameters, List<Argument> arguments) {
-        List<Term> result = new LinkedList<>();
-
-        for (int i = 0; i < parameters.size(); i++) {
-            if (!arguments.get(i).isListExpander())
-                result.add(parameters.get(i).getTerm());
-        }
-
-        return result;
-    }
-
-    private Mapping ListTermsToRListTerms(Mapping mapping) {
-        Mapping result = new Mapping();
-        for (Term var : markedVariables) {
-            List<Term> termList = ((ListTerm) mapping.get(var)).asList();
-            result.put(var, new RListTerm(termList, true));
-        }
-
-        for (Term var : unmarkedVariables) {
-            result.put(var, mapping.get(var));
-        }
-
-        return result;
-    }
-
-    private Set<Mapping> minUnfltr() {
-        Set<Mapping> result = new HashSet<>();
-
-        for (Term marked : this.markedVariables) {
-            Mapping mapping = new Mapping();
-            mapping.put(marked, new RListTerm(new LinkedList<>(), true));
-            for (Term other : this.markedVariables) {
-                if (!other.equals(marked)) {
-                    List<Term> list = new LinkedList<>();
-                    list.add(TermRegistry.any_trail);
-                    mapping.put(other, new RListTerm(list, true));
-                }
-            }
-
-            for (Term unmarked : this.unmarkedVariables) {
-                mapping.put(unmarked, TermRegistry.any);
-            }
-
-            result.add(mapping);
-        }
-
-        return result;
-    }
-
-    private Set<Mapping> maxUnfltr() {
-        Set<Mapping> result = new HashSet<>();
-        Mapping mapping = new Mapping();
-
-        for (Term unmarked : this.unmarkedVariables) {
-            mapping.put(unmarked, TermRegistry.any);
-        }
-
-        for (Term marked : this.markedVariables) {
-            mapping.put(marked, new RListTerm(new LinkedList<>(), true));
-        }
-
-        result.add(mapping);
-
-        return result;
-    }
-}
+package reverseottr.evaluation;
+
+import reverseottr.model.Mapping;
+import reverseottr.model.RBagTerm;
+import reverseottr.model.RListTerm;
+import reverseottr.model.TermDictionary;
+import reverseottr.model.TermList;
+import reverseottr.model.TermRegistry;
+import xyz.ottr.lutra.model.Argument;
+import xyz.ottr.lutra.model.Parameter;
+import xyz.ottr.lutra.model.terms.ListTerm;
+import xyz.ottr.lutra.model.terms.NoneTerm;
+import xyz.ottr.lutra.model.terms.Term;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Implements the reverse of OTTR list expansion.
+ *
+ * An unexpander does not change after it is created, so it can be shared between the
+ * instances it is created for, and be used from several threads.**/
+public class ListUnexpander {
+
+    private final List<Term> markedVariables;
+    private final List<Term> unmarkedVariables;
+    private final Set<Mapping> minEmpty;
+    private final Set<Mapping> maxEmpty;
+    private final int maxRepetitions;
+    private final Set<Term> bagVariables;
+    private final TermDictionary dictionary;
+
+    public ListUnexpander(List<Parameter> parameters, List<Argument> arguments, int repetitions) {
+        this(parameters, arguments, repetitions, false);
+    }
+
+    public ListUnexpander(List<Parameter> parameters, List<Argument> arguments, int repetitions, boolean bags) {
+        this(parameters, arguments, repetitions, bags, null);
+    }
+
+    /**
+     * @param bags Whether uncross gives the lists of marked variables as RBagTerms, instead of
+     * giving every ordering of them. The lists of arguments that are lists themselves are
+     * still ordered, since their elements are matched with the elements of the argument.
+     * @param dictionary The dictionary the mappings of the unexpander take their ids from,
+     * or null to keep their values as terms.**/
+    public ListUnexpander(List<Parameter> parameters, List<Argument> arguments, int repetitions, boolean bags,
+                          TermDictionary dictionary) {
+        this.dictionary = dictionary;
+        this.markedVariables = getMarkedVars(parameters, arguments);
+        this.unmarkedVariables = getUnmarkedVars(parameters, arguments);
+        this.minEmpty = Collections.unmodifiableSet(minUnfltr());
+        this.maxEmpty = Collections.unmodifiableSet(maxUnfltr());
+        this.maxRepetitions = repetitions;
+        this.bagVariables = bags ? getBagVars(parameters, arguments) : Collections.emptySet();
+    }
+
+    /**
+     * The reverse of OTTR cross.
+     *
+     * @param mappings Takes a set of mappings that is the result of evaluating a template as a query.
+     * @return all lists that could be crossed in OTTR to produce the input-set of mappings,
+     * limited by the maximum number of repetitions.**/
+    public Set<Mapping> uncross(Set<Mapping> mappings) {
+        var compSets = findCompatibleSets(mappings);
+
+        Set<Mapping> result = new HashSet<>();
+
+        for (Set<Mapping> compSet : compSets) {
+            var uncrossed = toMappings(compactifyAll(compSet));
+
+            Mapping glb = GLBSet(compSet);
+
+            for (Mapping mapping : uncrossed) {
+                mapPermutations(mapping, mapPermutation -> result.add(Mapping.union(glb, mapPermutation)));
+            }
+        }
+
+        result.addAll(this.minEmpty);
+
+        return result.stream()
+                .map(this::ListTermsToRListTerms)
+                .collect(Collectors.toSet());
+    }
+
+    /** Generate all possible orderings and sublists for the uncrossed lists in a mapping.
+     * The mappings are generated one at a time, as the product of the lists of each variable.
+     *
+     * @param mapping A mapping that is a solution to uncross.
+     * @param consumer Receives all permutations of the lists in the range of the input-mapping,
+     * such that these are also solutions to uncross.**/
+    private void mapPermutations(Mapping mapping, Consumer<Mapping> consumer) {
+        List<Term> vars = new ArrayList<>(mapping.domain());
+        if (vars.isEmpty()) return;
+
+        mapPermutations(mapping, vars, 0, new Term[vars.size()], consumer);
+    }
+
+    private void mapPermutations(Mapping mapping, List<Term> vars, int i, Term[] terms,
+                                 Consumer<Mapping> consumer) {
+        if (i == vars.size()) {
+            Mapping.Builder permutation = builder();
+            for (int j = 0; j < vars.size(); j++) {
+                permutation.put(vars.get(j), terms[j]);
+            }
+            consumer.accept(permutation.build());
+            return;
+        }
+
+        List<Term> list = ((ListTerm) mapping.get(vars.get(i))).asList();
+
+        if (this.bagVariables.contains(vars.get(i))) {
+            for (int length = 1; length <= list.size(); length++) {
+                forEachRepetition(list.subList(0, length), repeated -> {
+                    terms[i] = new RBagTerm(new ArrayList<>(repeated));
+                    mapPermutations(mapping, vars, i + 1, terms, consumer);
+                });
+            }
+            return;
+        }
+
+        for (int length = 1; length <= list.size(); length++) {
+            forEachRepetition(list.subList(0, length), repeated ->
+                    forEachPermutation(repeated, order -> {
+                        terms[i] = new ListTerm(TermList.copyOf(order));
+                        mapPermutations(mapping, vars, i + 1, terms, consumer);
+                    }));
+        }
+    }
+
+    private Set<Mapping> toMappings(Set<Map<Term, Set<Term>>> set) {
+        Set<Mapping> result = new HashSet<>();
+        for (Map<Term, Set<Term>> map : set) {
+            Mapping.Builder mapping = builder();
+            for (Term var : map.keySet()) {
+                mapping.put(var, new ListTerm(TermList.copyOf(new ArrayList<>(map.get(var)))));
+            }
+
+            if (!map.isEmpty()) result.add(mapping.build());
+        }
+
+        return result;
+    }
+
+    /** The main function of uncross, where elements of possible lists in the solution
+     * are determined.
+     *
+     * @param mappings A set of mappings that are compatible for the unmarked variables.
+     * @return A set of mappings from terms to sets of terms. The sets contain elements
+     * that may be present in list-solutions for uncross.
+     * @see "compactify-method" **/
+    private Set<Map<Term, Set<Term>>> compactifyAll(Set<Mapping> mappings) {
+        Set<Map<Term, Set<Term>>> compacted = uncrossMin(mappings);
+
+        if (hasExactMarkedValues(mappings)) return compactifyAllExact(compacted);
+
+        Set<Map<Term, Set<Term>>> nextCompacted = new HashSet<>();
+
+        for (Term markedVar : markedVariables) {
+            for (var m1 : compacted) {
+                var map = m1;
+                for (var m2 : compacted) {
+                    var temp = compactify(map, m2, markedVar);
+                    if (temp != null) {
+                        map = temp;
+                    }
+                }
+                nextCompacted.add(map);
+            }
+            compacted = nextCompacted;
+            nextCompacted = new HashSet<>();
+        }
+
+        return compacted;
+    }
+
+    private boolean hasExactMarkedValues(Set<Mapping> mappings) {
+        for (Mapping mapping : mappings) {
+            for (Term var : markedVariables) {
+                if (!isExact(mapping.get(var))) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Does the same as compactifyAll, for mappings that map the marked variables to exact terms.
+     * Then the GLB of two terms is only defined if they are equal, so union and intersection
+     * are the set operations, and two maps can only be combined if their sets intersect
+     * for the marked variables other than the selected one.
+     *
+     * When the marked variables are combined over in order, the variables after the selected one
+     * are still mapped to one term each, so the maps are indexed by those terms, and a map is
+     * only combined with the maps with the same terms. The maps are visited in the same order
+     * as in compactifyAll, since a combination may prevent later ones.**/
+    private Set<Map<Term, Set<Term>>> compactifyAllExact(Set<Map<Term, Set<Term>>> compacted) {
+        for (int i = 0; i < markedVariables.size(); i++) {
+            Term markedVar = markedVariables.get(i);
+            List<Term> before = markedVariables.subList(0, i);
+            List<Term> after = markedVariables.subList(i + 1, markedVariables.size());
+
+            Map<List<Term>, List<Map<Term, Set<Term>>>> index = new HashMap<>();
+            for (var map : compacted) {
+                index.computeIfAbsent(singletonValues(map, after), k -> new ArrayList<>()).add(map);
+            }
+
+            Set<Map<Term, Set<Term>>> nextCompacted = new HashSet<>();
+
+            for (var m1 : compacted) {
+                var map = m1;
+                for (var m2 : index.get(singletonValues(m1, after))) {
+                    if (intersectsAll(map, m2, before)) {
+                        map = compactifyExact(map, m2, markedVar);
+                    }
+                }
+                nextCompacted.add(map);
+            }
+
+            compacted = nextCompacted;
+        }
+
+        return compacted;
+    }
+
+    private static List<Term> singletonValues(Map<Term, Set<Term>> map, List<Term> vars) {
+        List<Term> result = new ArrayList<>(vars.size());
+        for (Term var : vars) {
+            result.add(map.get(var).iterator().next());
+        }
+        return result;
+    }
+
+    private static boolean intersectsAll(Map<Term, Set<Term>> m1, Map<Term, Set<Term>> m2, List<Term> vars) {
+        for (Term var : vars) {
+            if (Collections.disjoint(m1.get(var), m2.get(var))) return false;
+        }
+        return true;
+    }
+
+    // The sets are built by adding the terms in the same order as union and intersection do,
+    // such that they are iterated in the same order.
+    private Map<Term, Set<Term>> compactifyExact(Map<Term, Set<Term>> m1, Map<Term, Set<Term>> m2, Term var) {
+        Map<Term, Set<Term>> combination = new HashMap<>();
+
+        Set<Term> union = new HashSet<>();
+        union.add(m1.get(var).iterator().next());
+        union.addAll(m2.get(var));
+        union.addAll(m1.get(var));
+        combination.put(var, union);
+
+        for (Term otherVar : markedVariables) {
+            if (!otherVar.equals(var)) {
+                Set<Term> intersection = new HashSet<>();
+                for (Term term : m1.get(otherVar)) {
+                    if (m2.get(otherVar).contains(term)) intersection.add(term);
+                }
+                combination.put(otherVar, intersection);
+            }
+        }
+
+        return combination;
+    }
+
+    /**
+     * Combines two mappings that are potential solutions to uncross to create another potential solution.
+     *
+     * This method is based on idea that two mappings from terms to sets of terms, that represents solutions
+     * to uncross, with the same domain i.e. terms that represent variables, can be combined by the union of
+     * of one variable and the disjunction of the other variables in their domain.
+     *
+     * @param m1 A mapping from terms to sets of terms, which represents a solution to uncross.
+     * @param m2 A mapping from terms to sets of terms, which represents a solution to uncross.
+     * @param var The selected variable to combine m1 and m2 over.
+     * @return The combination of the two mappings that must also represent a solution to uncross.**/
+    private Map<Term, Set<Term>> compactify(Map<Term, Set<Term>> m1, Map<Term, Set<Term>> m2, Term var) {
+        Map<Term, Set<Term>> combination = new HashMap<>();
+        combination.put(var, union(m1.get(var), m2.get(var)));
+        for (Term otherVar : markedVariables) {
+            if (!otherVar.equals(var)) {
+                combination.put(otherVar, intersection(m1.get(otherVar), m2.get(otherVar)));
+            }
+        }
+
+        if (hasEmptySet(combination)) return null;
+
+        return combination;
+    }
+
+    private boolean hasEmptySet(Map<Term, Set<Term>> map) {
+        for (Term var : map.keySet()) {
+            if (map.get(var).isEmpty()) return true;
+        }
+        return false;
+    }
+
+    private Set<Term> intersection(Set<Term> s1, Set<Term> s2) {
+        Set<Term> result = new HashSet<>();
+        for (Term t1 : s1) {
+            for (Term t2 : s2) {
+                Term glb = TermRegistry.GLB(t1, t2);
+                if (glb != null) {
+                    result.add(glb);
+                }
+            }
+        }
+        return result;
+    }
+
+    private Set<Term> union(Set<Term> s1, Set<Term> s2) {
+        Set<Term> result = new HashSet<>();
+
+        for (Term t1 : s1) {
+            for (Term t2 : s2) {
+                Term glb = TermRegistry.GLB(t1, t2);
+                if (glb != null) {
+                    result.add(glb);
+                } else {
+                    result.add(t1);
+                    result.add(t2);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * The smallest mappings that represents solutions to uncross.
+     *
+     * @param mappings A set of mappings that compatible over the unmarked variables.
+     * @return The smallest mappings that represents solutions to uncross.**/
+    private Set<Map<Term, Set<Term>>> uncrossMin(Set<Mapping> mappings) {
+        Set<Map<Term, Set<Term>>> result = new HashSet<>();
+        for (Mapping mapping : mappings) {
+            Map<Term, Set<Term>> uncrossed = new HashMap<>();
+            for (Term var : markedVariables) {
+                Set<Term> set = new HashSet<>();
+                set.add(mapping.get(var));
+                uncrossed.put(var, set);
+            }
+            result.add(uncrossed);
+        }
+
+        return result;
+    }
+
+    /**
+     * The reverse of zipMin in OTTR.
+     *
+     * Generates mappings with lists, such that applying zipMin re-obtains the input-set.
+     * Since zipMin ignores elements in lists past the index of the last element of the
+     * shortest list, unzipMin appends the placeholder TermRegistry.any_trail, to signify
+     * that the remaining elements of lists other than the shortest could be anything.
+     *
+     * @param mappings A set of mappings that were obtained from the evaluateTemplate-method
+     *                 in the Evaluator-class.
+     * @return A set of mappings that could be zipMined to produce the input-set.**/
+    public Set<Mapping> unzipMin(Set<Mapping> mappings) {
+        Set<Mapping> result = new HashSet<>();
+
+        Set<Mapping> unzipped = unzip(mappings);
+        for (Mapping mapping : unzipped) {
+            for (Term pick : markedVariables) {
+                Mapping.Builder trailing = builder()
+                        .put(unmarkedVariables, mapping.get(unmarkedVariables))
+                        .put(pick, mapping.get(pick));
+
+                for (Term var : markedVariables) {
+                    if (!pick.equals(var)) {
+                        TermList termList = TermList.copyOf(((ListTerm) mapping.get(var)).asList());
+                        trailing.put(var, new ListTerm(termList.append(TermRegistry.any_trail)));
+                    }
+                }
+
+                result.add(trailing.build());
+            }
+        }
+
+        result.addAll(this.minEmpty);
+
+        return result.stream().map(this::ListTermsToRListTerms).collect(Collectors.toSet());
+    }
+
+    /**
+     * The reverse of zipMax in OTTR.
+     *
+     * @param mappings A set of mappings that were obtained from evaluating a template as a query.
+     * @return A set of mappings that could be zipMaxed to produce the input-set.**/
+    public Set<Mapping> unzipMax(Set<Mapping> mappings) {
+        Set<Mapping> result = unzip(mappings).stream().map(this::noneTrailAlternatives)
+                .reduce((s1, s2) -> {s1.addAll(s2); return s1;})
+                .orElse(new HashSet<>())
+                .stream().map(this::ListTermsToRListTerms)
+                .collect(Collectors.toSet());
+
+        result.addAll(maxEmpty);
+        return result;
+    }
+
+    /** One or more trailing NoneTerm may be removed to produce another solution to unzipMax.
+     * This method finds all such solutions.
+     *
+     * @param mapping A mapping that is a solution to unzipMax.
+     * @return A set of mappings that are also solutions to unzipMax, obtained by removing
+     * trailing none-values**/
+    private Set<Mapping> noneTrailAlternatives(Mapping mapping) {
+        Set<Set<Mapping>> altLists = new HashSet<>();
+
+        for (Term var : markedVariables) {
+            altLists.add(noneTrailLists(mapping, var));
+        }
+
+        Set<Mapping> result = new HashSet<>();
+
+        for (Mapping m : Mapping.joinAll(altLists)) {
+            result.add(m.toBuilder().put(unmarkedVariables, mapping.get(unmarkedVariables)).build());
+        }
+
+        return result;
+    }
+
+    private Set<Mapping> noneTrailLists(Mapping mapping, Term var) {
+        Set<Mapping> result = new HashSet<>();
+        Mapping original = builder().put(var, mapping.get(var)).build();
+        result.add(original);
+
+        TermList termList = TermList.copyOf(((ListTerm) mapping.get(var)).asList());
+
+        for (int i = termList.size() - 1; i >= 0; i--) {
+            Term term = termList.get(i);
+
+            if (term instanceof NoneTerm) {
+                ListTerm altListTerm = new ListTerm(termList.prefix(i));
+                result.add(builder().put(var, altListTerm).build());
+            } else {
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Generates the permutations of a list one at a time by Heap's algorithm, which swaps
+     * two elements between each permutation.
+     *
+     * @param consumer Receives each permutation. The list is changed after the consumer returns,
+     * so it must be copied to be kept.**/
+    private static <T> void forEachPermutation(List<T> list, Consumer<List<T>> consumer) {
+        List<T> elements = new ArrayList<>(list);
+        List<T> view = Collections.unmodifiableList(elements);
+        int[] counters = new int[elements.size()];
+
+        consumer.accept(view);
+
+        int i = 1;
+        while (i < elements.size()) {
+            if (counters[i] < i) {
+                Collections.swap(elements, i % 2 == 0 ? 0 : counters[i], i);
+                consumer.accept(view);
+                counters[i]++;
+                i = 1;
+            } else {
+                counters[i] = 0;
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Finds the relevant lists for unzipMin and unzipMax.
+     *
+     * It finds the mappings with lists, such that when either of zipMin or zipMax
+     * are applied, the input-set of mappings is re-obtained. These mappings must
+     * be compatible over the unmarked variables.
+     *
+     * Additionally, it generates all possible orders of such lists, because order
+     * doesn't matter for zipMin and zipMax.
+     *
+     * @param mappings A set of mappings obtained from the evaluateTemplate-method
+     *                 in the Evaluator-class.
+     * @return A set of mappings with solutions for both unzipMin and unzipMax.
+     * **/
+    private Set<Mapping> unzip(Set<Mapping> mappings) {
+        Set<Mapping> result = new HashSet<>();
+
+        Set<Set<Mapping>> compSets = findCompatibleSets(mappings);
+
+        for (Set<Mapping> compSet : compSets) {
+            List<Mapping> compList = new ArrayList<>(compSet);
+            forEachRepetition(compList, repeated ->
+                    forEachPermutation(repeated, order -> result.add(unzipList(order))));
+        }
+
+        return result;
+    }
+
+    /**
+     * Generates the lists where each element of a list is repeated up to the maximum number of
+     * repetitions, by appending the repetitions to the list. The number of repetitions of each
+     * element is counted like the digits of a number.
+     *
+     * @param consumer Receives each list. The list is changed after the consumer returns,
+     * so it must be copied to be kept.**/
+    private <T> void forEachRepetition(List<T> list, Consumer<List<T>> consumer) {
+        int[] counts = new int[list.size()];
+        List<T> repeated = new ArrayList<>(list);
+        List<T> view = Collections.unmodifiableList(repeated);
+
+        while (true) {
+            consumer.accept(view);
+
+            int i = 0;
+            while (i < counts.length && counts[i] == this.maxRepetitions) {
+                counts[i++] = 0;
+            }
+            if (i == counts.length) return;
+            counts[i]++;
+
+            repeated.subList(list.size(), repeated.size()).clear();
+            for (int j = 0; j < counts.length; j++) {
+                for (int k = 0; k < counts[j]; k++) {
+                    repeated.add(list.get(j));
+                }
+            }
+        }
+    }
+
+    private Mapping unzipList(List<Mapping> mappings) {
+        Map<Term, List<Term>> unzipMap = new HashMap<>();
+
+        for (Term var : markedVariables) {
+            List<Term> termList = new ArrayList<>(mappings.size());
+            unzipMap.put(var, termList);
+        }
+
+        for (Mapping mapping : mappings) {
+            for (Term var : markedVariables) {
+                unzipMap.get(var).add(mapping.get(var));
+            }
+        }
+
+        Mapping.Builder result = GLBSet(new HashSet<>(mappings)).toBuilder();
+
+        for (Term var : markedVariables) {
+            ListTerm listTerm = new ListTerm(TermList.copyOf(unzipMap.get(var)));
+            result.put(var, listTerm);
+        }
+
+        return result.build();
+    }
+
+    /**
+     * Finds the sets of mappings that are compatible over the unmarked variables.
+     *
+     * A mapping that maps the unmarked variables to exact terms, i.e. ground terms and none,
+     * is only compatible with mappings that map them to the same terms, or to placeholders
+     * or lists. Such mappings are grouped by the terms of the unmarked variables, such that
+     * a compatible set has mappings of at most one group, and any subset of a group is compatible.
+     * Only the sets with other mappings are found by comparing the mappings one by one.**/
+    private Set<Set<Mapping>> findCompatibleSets(Set<Mapping> mappings) {
+        Map<List<Term>, List<Mapping>> groups = new HashMap<>();
+        List<Mapping> others = new ArrayList<>();
+        Map<Mapping, Integer> positions = new HashMap<>();
+
+        for (Mapping mapping : mappings) {
+            positions.put(mapping, positions.size());
+
+            List<Term> values = mapping.get(this.unmarkedVariables);
+            if (values.stream().allMatch(ListUnexpander::isExact)) {
+                groups.computeIfAbsent(values, k -> new ArrayList<>()).add(mapping);
+            } else {
+                others.add(mapping);
+            }
+        }
+
+        if (groups.isEmpty()) return compatibleSets(others);
+
+        Set<Set<Mapping>> result = new HashSet<>();
+
+        for (List<Mapping> group : groups.values()) {
+            if (others.isEmpty()) {
+                result.addAll(subsets(group));
+            } else {
+                result.addAll(compatibleSets(merge(group, others, positions)));
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean isExact(Term term) {
+        return TermRegistry.isGround(term) || term instanceof NoneTerm;
+    }
+
+    /** All non-empty subsets of mappings. **/
+    private static Set<Set<Mapping>> subsets(List<Mapping> mappings) {
+        Set<Set<Mapping>> result = new HashSet<>();
+        List<Set<Mapping>> current = new ArrayList<>();
+
+        for (Mapping mapping : mappings) {
+            List<Set<Mapping>> next = new ArrayList<>(current);
+            next.add(new HashSet<>(Collections.singleton(mapping)));
+            for (Set<Mapping> subset : current) {
+                Set<Mapping> fresh = new HashSet<>(subset);
+                fresh.add(mapping);
+                next.add(fresh);
+            }
+            current = next;
+        }
+
+        result.addAll(current);
+        return result;
+    }
+
+    // Merges two lists of mappings in the order the mappings were given in, since the sets
+    // found by compatibleSets may depend on the order when the GLB of placeholders is null.
+    private static List<Mapping> merge(List<Mapping> l1, List<Mapping> l2, Map<Mapping, Integer> positions) {
+        List<Mapping> result = new ArrayList<>(l1.size() + l2.size());
+        int i = 0;
+        int j = 0;
+
+        while (i < l1.size() || j < l2.size()) {
+            if (j == l2.size() || i < l1.size() && positions.get(l1.get(i)) < positions.get(l2.get(j))) {
+                result.add(l1.get(i++));
+            } else {
+                result.add(l2.get(j++));
+            }
+        }
+
+        return result;
+    }
+
+    /** Finds the sets of compatible mappings by extending every set found so far with each mapping. **/
+    private Set<Set<Mapping>> compatibleSets(List<Mapping> mappings) {
+        Set<Set<Mapping>> result = new HashSet<>();
+
+        for (Mapping mapping : mappings) {
+            Set<Mapping> compSet = new HashSet<>();
+            compSet.add(mapping);
+            result.add(compSet);
+        }
+
+        for (Mapping mapping : mappings) {
+            Set<Set<Mapping>> workSet = new HashSet<>();
+            for (Set<Mapping> compSet : result) {
+                Mapping glb = GLBSet(compSet);
+                if (glb != null) {
+                    if (Mapping.compatible(glb, mapping)) {
+                        Set<Mapping> fresh = new HashSet<>(compSet);
+                        fresh.add(mapping);
+                        workSet.add(fresh);
+                    }
+                }
+            }
+
+            result.addAll(workSet);
+        }
+
+        return result;
+    }
+
+    private Mapping GLBSet(Set<Mapping> mappings) {
+        Mapping.Builder builder = builder();
+        for (Term var : unmarkedVariables) {
+            builder.put(var, TermRegistry.any);
+        }
+
+        Mapping result = builder.build();
+
+        for (Mapping mapping : mappings) {
+            result = GLBMapping(result, mapping);
+            if (result == null) return null;
+        }
+
+        return result;
+    }
+
+    private Mapping GLBMapping(Mapping m1, Mapping m2) {
+        Mapping.Builder result = builder();
+        for (Term var : unmarkedVariables) {
+            Term GLB = TermRegistry.GLB(m1.get(var), m2.get(var));
+            if (GLB != null) {
+                result.put(var, GLB);
+            } else {
+                return null;
+            }
+        }
+
+        return result.build();
+    }
+
+    private List<Term> getMarkedVars(List<Parameter> parameters, List<Argument> arguments) {
+        List<Term> result = new ArrayList<>();
+
+        for (int i = 0; i < parameters.size(); i++) {
+            if (arguments.get(i).isListExpander())
+                result.add(parameters.get(i).getTerm());
+        }
+
+        return result;
+    }
+
+    private Set<Term> getBagVars(List<Parameter> parameters, List<Argument> arguments) {
+        Set<Term> result = new HashSet<>();
+
+        for (int i = 0; i < parameters.size(); i++) {
+            if (arguments.get(i).isListExpander() && !(arguments.get(i).getTerm() instanceof ListTerm))
+                result.add(parameters.get(i).getTerm());
+        }
+
+        return result;
+    }
+
+    private List<Term> getUnmarkedVars(List<Parameter> parameters, List<Argument> arguments) {
+        List<Term> result = new ArrayList<>();
+
+        for (int i = 0; i < parameters.size(); i++) {
+            if (!arguments.get(i).isListExpander())
+                result.add(parameters.get(i).getTerm());
+        }
+
+        return result;
+    }
+
+    private Mapping ListTermsToRListTerms(Mapping mapping) {
+        Mapping.Builder result = builder();
+        for (Term var : markedVariables) {
+            Term term = mapping.get(var);
+            if (term instanceof RBagTerm) {
+                result.put(var, term);
+            } else {
+                result.put(var, new RListTerm(((ListTerm) term).asList(), true));
+            }
+        }
+
+        for (Term var : unmarkedVariables) {
+            result.put(var, mapping.get(var));
+        }
+
+        return result.build();
+    }
+
+    private Set<Mapping> minUnfltr() {
+        Set<Mapping> result = new HashSet<>();
+
+        for (Term marked : this.markedVariables) {
+            Mapping.Builder mapping = builder();
+            mapping.put(marked, new RListTerm(TermList.empty(), true));
+            for (Term other : this.markedVariables) {
+                if (!other.equals(marked)) {
+                    mapping.put(other, new RListTerm(TermList.of(TermRegistry.any_trail), true));
+                }
+            }
+
+            for (Term unmarked : this.unmarkedVariables) {
+                mapping.put(unmarked, TermRegistry.any);
+            }
+
+            result.add(mapping.build());
+        }
+
+        return result;
+    }
+
+    private Set<Mapping> maxUnfltr() {
+        Set<Mapping> result = new HashSet<>();
+        Mapping.Builder mapping = builder();
+
+        for (Term unmarked : this.unmarkedVariables) {
+            mapping.put(unmarked, TermRegistry.any);
+        }
+
+        for (Term marked : this.markedVariables) {
+            mapping.put(marked, new RListTerm(TermList.empty(), true));
+        }
+
+        result.add(mapping.build());
+
+        return result;
+    }
+
+    private Mapping.Builder builder() {
+        return Mapping.builder(this.dictionary);
+    }
+}
@@ -0,0 +1,318 @@
+package reverseottr.evaluation;
+
+import reverseottr.model.Mapping;
+import reverseottr.model.TripleStore;
+import xyz.ottr.lutra.OTTR;
+import xyz.ottr.lutra.model.Instance;
+import xyz.ottr.lutra.model.Template;
+
+import java.util.*;
+
+/**
+ * Keeps the results of registered queries up to date when triples are added to or removed
+ * from the graph of an Evaluator.
+ *
+ * The evaluation of every template a query depends on is kept, together with the evaluation
+ * of each of its instances. When triples are added, only the new mappings of an instance are
+ * joined with the evaluations of the other instances, and the new mappings of a template are
+ * passed on to the instances of it. Removed mappings can not be passed on like this, since
+ * a removed mapping may have hidden other mappings by removeSubMappings, so a template with
+ * an instance that lost mappings, or with a list expanded instance, is joined again from the
+ * kept evaluations of its instances.**/
+class MaterializedViews {
+
+    private final Evaluator evaluator;
+    private final Map<String, Set<Mapping>> queries = new HashMap<>();
+    private final Map<String, Set<Mapping>> templates = new HashMap<>();
+    private final Map<String, SubsumptionIndex> indexes = new HashMap<>();
+    private final Map<Instance, Set<Mapping>> instances = new IdentityHashMap<>();
+
+    MaterializedViews(Evaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+
+    /** Evaluates a query, and keeps its result up to date from now on. **/
+    Set<Mapping> register(String iri) {
+        Set<Mapping> result = this.evaluator.queryResult(materialize(this.evaluator.getTemplate(iri)));
+        this.queries.put(iri, result);
+        return result;
+    }
+
+    void unregister(String iri) {
+        if (this.queries.remove(iri) == null) return;
+
+        Set<String> kept = new HashSet<>();
+        this.queries.keySet().forEach(query -> collect(this.evaluator.getTemplate(query), kept));
+
+        for (String template : new ArrayList<>(this.templates.keySet())) {
+            if (!kept.contains(template)) {
+                this.templates.remove(template);
+                this.indexes.remove(template);
+                this.evaluator.getTemplate(template).getPattern().forEach(this.instances::remove);
+            }
+        }
+    }
+
+    private void collect(Template template, Set<String> kept) {
+        if (this.evaluator.isBaseTemplate(template) || !kept.add(template.getIri())) return;
+
+        for (Instance instance : template.getPattern()) {
+            collect(this.evaluator.getTemplate(instance.getIri()), kept);
+        }
+    }
+
+    /** The current result of a registered query, or null if the query is not registered. **/
+    Set<Mapping> get(String iri) {
+        return this.queries.get(iri);
+    }
+
+    boolean isEmpty() {
+        return this.queries.isEmpty();
+    }
+
+    /** Evaluates all registered queries again, e.g. after the lists of the graph changed. **/
+    void recompute() {
+        this.templates.clear();
+        this.indexes.clear();
+        this.instances.clear();
+
+        for (String iri : new ArrayList<>(this.queries.keySet())) {
+            register(iri);
+        }
+    }
+
+    /**
+     * Updates the results of the registered queries after triples were added or removed.
+     * The triple indexes of the Evaluator must already contain the graph after the change.
+     *
+     * @param tripleDelta The mappings of the Triple template for the added or removed triples.
+     * @param nullableDelta The mappings of the NullableTriple template for the same triples.
+     * @param added Whether the triples were added or removed.**/
+    void update(TripleStore tripleDelta, TripleStore nullableDelta, boolean added) {
+        Delta delta = new Delta(tripleDelta, nullableDelta, added);
+
+        for (Map.Entry<String, Set<Mapping>> query : this.queries.entrySet()) {
+            Template template = this.evaluator.getTemplate(query.getKey());
+
+            if (this.evaluator.isBaseTemplate(template)) {
+                query.setValue(this.evaluator.queryResult(this.evaluator.evaluateTemplate(template)));
+
+            } else if (update(template, delta).changed()) {
+                query.setValue(this.evaluator.queryResult(this.templates.get(template.getIri())));
+            }
+        }
+    }
+
+    private Set<Mapping> materialize(Template template) {
+        if (this.evaluator.isBaseTemplate(template)) return this.evaluator.evaluateTemplate(template);
+
+        Set<Mapping> result = this.templates.get(template.getIri());
+        if (result != null) return result;
+
+        Map<Set<Mapping>, Instance> instanceEvaluations = new HashMap<>();
+        for (Instance instance : template.getPattern()) {
+            instanceEvaluations.putIfAbsent(materialize(instance), instance);
+        }
+
+        result = this.evaluator.filterTemplateMappings(
+                this.evaluator.getPlanner().joinAll(instanceEvaluations), template.getParameters());
+        this.templates.put(template.getIri(), result);
+
+        return result;
+    }
+
+    private Set<Mapping> materialize(Instance instance) {
+        Template template = this.evaluator.getTemplate(instance.getIri());
+
+        Set<Mapping> result = this.evaluator.isBaseTemplate(template)
+                ? this.evaluator.evaluateInstance(instance)
+                : this.evaluator.evaluateInstance(instance, materialize(template));
+        this.instances.put(instance, result);
+
+        return result;
+    }
+
+    private Change update(Template template, Delta delta) {
+        String iri = template.getIri();
+
+        Change change = delta.templates.get(iri);
+        if (change != null) return change;
+
+        List<Instance> pattern = new ArrayList<>(template.getPattern());
+        List<Set<Mapping>> before = new ArrayList<>();
+        List<Change> changes = new ArrayList<>();
+        boolean changed = false;
+        boolean removed = false;
+
+        for (Instance instance : pattern) {
+            before.add(this.instances.get(instance));
+            Change instanceChange = update(instance, delta);
+            changes.add(instanceChange);
+
+            changed |= instanceChange.changed();
+            removed |= !instanceChange.removed.isEmpty();
+        }
+
+        if (!changed) {
+            delta.templates.put(iri, Change.NONE);
+            return Change.NONE;
+        }
+
+        Set<Mapping> oldResult = this.templates.get(iri);
+        Set<Mapping> newResult;
+
+        if (removed) {
+            Map<Set<Mapping>, Instance> instanceEvaluations = new HashMap<>();
+            pattern.forEach(instance -> instanceEvaluations.putIfAbsent(this.instances.get(instance), instance));
+
+            newResult = this.evaluator.filterTemplateMappings(
+                    this.evaluator.getPlanner().joinAll(instanceEvaluations), template.getParameters());
+            this.indexes.remove(iri);
+
+        } else {
+            Set<Mapping> joined = new HashSet<>();
+
+            // The new mappings of each instance are joined with the new evaluations of the
+            // instances before it and the old evaluations of the instances after it.
+            for (int i = 0; i < pattern.size(); i++) {
+                Set<Mapping> added = changes.get(i).added;
+                if (added.isEmpty()) continue;
+
+                Map<Set<Mapping>, Instance> instanceEvaluations = new HashMap<>();
+                instanceEvaluations.put(added, pattern.get(i));
+
+                for (int j = 0; j < pattern.size(); j++) {
+                    if (j == i) continue;
+
+                    Set<Mapping> evaluation = j < i ? this.instances.get(pattern.get(j)) : before.get(j);
+                    instanceEvaluations.putIfAbsent(evaluation, pattern.get(j));
+                }
+
+                joined.addAll(this.evaluator.getPlanner().joinAll(instanceEvaluations));
+            }
+
+            newResult = insert(iri, oldResult,
+                    this.evaluator.filterMappings(joined, template.getParameters()));
+        }
+
+        this.templates.put(iri, newResult);
+        change = Change.between(oldResult, newResult);
+        delta.templates.put(iri, change);
+
+        return change;
+    }
+
+    private Change update(Instance instance, Delta delta) {
+        Template template = this.evaluator.getTemplate(instance.getIri());
+        Set<Mapping> oldResult = this.instances.get(instance);
+        Set<Mapping> newResult;
+
+        if (this.evaluator.isBaseTemplate(template)) {
+            TripleStore triples = delta.triples(template);
+            if (triples.size() == 0) return Change.NONE;
+
+            if (instance.hasListExpander()) {
+                newResult = this.evaluator.evaluateInstance(instance);
+
+            } else {
+                Set<Mapping> matches = this.evaluator.evaluateBaseInstance(instance, triples);
+                if (matches.isEmpty()) return Change.NONE;
+
+                if (delta.added) {
+                    newResult = new HashSet<>(oldResult);
+                    newResult.addAll(matches);
+                } else {
+                    newResult = this.evaluator.evaluateInstance(instance);
+                }
+            }
+
+        } else {
+            Change change = update(template, delta);
+            if (!change.changed()) return Change.NONE;
+
+            if (instance.hasListExpander() || !change.removed.isEmpty()) {
+                newResult = this.evaluator.evaluateInstance(instance, this.templates.get(template.getIri()));
+            } else {
+                newResult = new HashSet<>(oldResult);
+                newResult.addAll(this.evaluator.evaluateInstance(instance, change.added));
+            }
+        }
+
+        this.instances.put(instance, newResult);
+        return Change.between(oldResult, newResult);
+    }
+
+    /** Adds mappings to the result of a template, keeping only the mappings that are
+     * not less than another, as removeSubMappings in the Evaluator. **/
+    private Set<Mapping> insert(String iri, Set<Mapping> mappings, Set<Mapping> candidates) {
+        Set<Mapping> result = new HashSet<>(mappings);
+        SubsumptionIndex index = this.indexes.computeIfAbsent(iri, k -> new SubsumptionIndex(mappings));
+
+        for (Mapping candidate : candidates) {
+            if (result.contains(candidate) || index.containsGreater(candidate)) continue;
+
+            // A mapping of only exact terms is not greater than any other mapping.
+            if (!SubsumptionIndex.isExact(candidate)) {
+                Iterator<Mapping> iterator = result.iterator();
+                while (iterator.hasNext()) {
+                    Mapping mapping = iterator.next();
+                    if (SubsumptionIndex.lessOrEqualMapping(mapping, candidate)) {
+                        iterator.remove();
+                        index.remove(mapping);
+                    }
+                }
+            }
+
+            result.add(candidate);
+            index.add(candidate);
+        }
+
+        return result;
+    }
+
+    /** The triples added or removed, and the changes to the templates so far. **/
+    private static class Delta {
+        final TripleStore tripleDelta;
+        final TripleStore nullableDelta;
+        final boolean added;
+        final Map<String, Change> templates = new HashMap<>();
+
+        Delta(TripleStore tripleDelta, TripleStore nullableDelta, boolean added) {
+            this.tripleDelta = tripleDelta;
+            this.nullableDelta = nullableDelta;
+            this.added = added;
+        }
+
+        TripleStore triples(Template template) {
+            return template.getIri().equals(OTTR.BaseURI.Triple)
+                    ? this.tripleDelta : this.nullableDelta;
+        }
+    }
+
+    /** The mappings added to and removed from an evaluation. **/
+    private static class Change {
+        static final Change NONE = new Change(Collections.emptySet(), Collections.emptySet());
+
+        final Set<Mapping> added;
+        final Set<Mapping> removed;
+
+        Change(Set<Mapping> added, Set<Mapping> removed) {
+            this.added = added;
+            this.removed = removed;
+        }
+
+        static Change between(Set<Mapping> before, Set<Mapping> after) {
+            Set<Mapping> added = new HashSet<>(after);
+            added.removeAll(before);
+
+            Set<Mapping> removed = new HashSet<>(before);
+            removed.removeAll(after);
+
+            return new Change(added, removed);
+        }
+
+        boolean changed() {
+            return !this.added.isEmpty() || !this.removed.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package reverseottr.evaluation;
+
+import reverseottr.model.Mapping;
+import xyz.ottr.lutra.model.Argument;
+import xyz.ottr.lutra.model.Instance;
+import xyz.ottr.lutra.model.ListExpander;
+import xyz.ottr.lutra.model.Parameter;
+import xyz.ottr.lutra.model.Template;
+import xyz.ottr.lutra.model.terms.Term;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * A template compiled into a plan of operators, that can be executed as a query many times.
+ *
+ * The templates, parameters, arguments and list unexpanders of the template and its
+ * sub-templates are resolved once, when the query is prepared by Evaluator.prepare. A sub-template
+ * used by several instances is compiled into one operator, which is evaluated once per execution,
+ * and so are instances with the same template, arguments and list expander.
+ *
+ * The plan does not change when it is executed, so it can be executed over the graphs of
+ * different Evaluators, and from several threads at the same time. It uses the templates,
+ * the maximum number of repetitions and the bag lists setting of the Evaluator that prepared
+ * it, and does not use the cache of template evaluations of the Evaluator it is executed with.**/
+public class PreparedQuery {
+
+    private final String iri;
+    private final Operator root;
+
+    private PreparedQuery(String iri, Operator root) {
+        this.iri = iri;
+        this.root = root;
+    }
+
+    /** Compiles the template with the given IRI, and all the templates it depends on. **/
+    static PreparedQuery compile(Evaluator evaluator, String iri) {
+        Compiler compiler = new Compiler(evaluator);
+        return new PreparedQuery(iri, compiler.template(evaluator.getTemplate(iri)));
+    }
+
+    /**
+     * Compiles several templates, such that the sub-templates and instances they have in common
+     * are compiled into the same operators, and can be evaluated once by executeAll.**/
+    static List<PreparedQuery> compileAll(Evaluator evaluator, Collection<String> iris) {
+        Compiler compiler = new Compiler(evaluator);
+
+        List<PreparedQuery> queries = new ArrayList<>();
+        for (String iri : iris) {
+            queries.add(new PreparedQuery(iri, compiler.template(evaluator.getTemplate(iri))));
+        }
+
+        return queries;
+    }
+
+    /**
+     * Executes several queries over the graph of an Evaluator in one execution, where every
+     * operator the queries have in common is evaluated once.
+     *
+     * @return The result of each query, by the IRI of its template.**/
+    static Map<String, Set<Mapping>> executeAll(Collection<PreparedQuery> queries, Evaluator evaluator) {
+        Execution execution = new Execution(evaluator);
+
+        Map<String, Set<Mapping>> results = new HashMap<>();
+        for (PreparedQuery query : queries) {
+            results.put(query.iri, evaluator.queryResult(query.root.execute(execution)));
+        }
+
+        return results;
+    }
+
+    /** The IRI of the template of the query. **/
+    public String getIri() {
+        return this.iri;
+    }
+
+    /**
+     * Executes the query over the graph of an Evaluator.
+     *
+     * @return The same mappings as evaluateQuery of the Evaluator gives for the template.**/
+    public Set<Mapping> execute(Evaluator evaluator) {
+        return evaluator.queryResult(this.root.execute(new Execution(evaluator)));
+    }
+
+    /** The state of one execution of a plan. **/
+    private static class Execution {
+        final Evaluator evaluator;
+        final Map<Operator, Set<Mapping>> shared = new IdentityHashMap<>();
+
+        Execution(Evaluator evaluator) {
+            this.evaluator = evaluator;
+        }
+    }
+
+    private interface Operator {
+        Set<Mapping> execute(Execution execution);
+    }
+
+    /** Builds the operators of a template, compiling each template once. **/
+    private static class Compiler {
+        private final Evaluator evaluator;
+        private final Map<String, Operator> templates = new HashMap<>();
+        private final Map<List<Object>, Operator> instances = new HashMap<>();
+
+        Compiler(Evaluator evaluator) {
+            this.evaluator = evaluator;
+        }
+
+        Operator template(Template template) {
+            Operator operator = this.templates.get(template.getIri());
+            if (operator != null) return operator;
+
+            if (this.evaluator.isBaseTemplate(template)) {
+                operator = prune(template, new Scan(template, null, null, null));
+
+            } else {
+                List<Instance> instances = new ArrayList<>(template.getPattern());
+                List<Operator> inputs = new ArrayList<>();
+                for (Instance instance : instances) {
+                    inputs.add(instance(instance));
+                }
+
+                operator = new Shared(prune(template, new Join(inputs, instances)));
+            }
+
+            this.templates.put(template.getIri(), operator);
+            return operator;
+        }
+
+        private Operator prune(Template template, Operator input) {
+            List<Parameter> parameters = template.getParameters();
+            return new Prune(new ParameterFilter(input, parameters),
+                    this.evaluator.generateNonOptSolutions(parameters));
+        }
+
+        private Operator instance(Instance instance) {
+            List<Object> key = Arrays.asList(instance.getIri(), instance.getListExpander(),
+                    instance.getArguments().stream()
+                            .map(argument -> Arrays.asList(argument.getTerm(), argument.isListExpander()))
+                            .collect(Collectors.toList()));
+
+            Operator operator = this.instances.get(key);
+            if (operator == null) {
+                operator = new Shared(compile(instance));
+                this.instances.put(key, operator);
+            }
+
+            return operator;
+        }
+
+        private Operator compile(Instance instance) {
+            Template template = this.evaluator.getTemplate(instance.getIri());
+            List<Term> argTerms = instance.getArguments().stream()
+                    .map(Argument::getTerm).collect(Collectors.toList());
+
+            Operator operator;
+
+            if (this.evaluator.isBaseTemplate(template) && !instance.hasListExpander()) {
+                operator = prune(template, new Scan(template, this.evaluator.indexKey(argTerms.get(0)),
+                        this.evaluator.indexKey(argTerms.get(1)), this.evaluator.indexKey(argTerms.get(2))));
+
+            } else {
+                operator = template(template);
+            }
+
+            if (instance.hasListExpander()) {
+                operator = new Unexpand(new ExpandDefaults(operator),
+                        this.evaluator.getUnexpander(template, instance), instance.getListExpander());
+            }
+
+            List<Term> vars = template.getParameters().stream()
+                    .map(Parameter::getTerm).collect(Collectors.toList());
+
+            return new ArgumentFilter(operator, new Mapping(vars, argTerms));
+        }
+    }
+
+    /** The triples of a base template that match some terms, where null matches any term. **/
+    private static class Scan implements Operator {
+        private final Template template;
+        private final Term s;
+        private final Term p;
+        private final Term o;
+
+        Scan(Template template, Term s, Term p, Term o) {
+            this.template = template;
+            this.s = s;
+            this.p = p;
+            this.o = o;
+        }
+
+        @Override
+        public Set<Mapping> execute(Execution execution) {
+            return execution.evaluator.scan(this.template, this.s, this.p, this.o);
+        }
+    }
+
+    /** The join of the evaluations of the instances of a template, in the order of the JoinPlanner. **/
+    private static class Join implements Operator {
+        private final List<Operator> inputs;
+        private final List<Instance> instances;
+
+        Join(List<Operator> inputs, List<Instance> instances) {
+            this.inputs = inputs;
+            this.instances = instances;
+        }
+
+        @Override
+        public Set<Mapping> execute(Execution execution) {
+            Map<Set<Mapping>, Instance> instanceEvaluations = new HashMap<>();
+            for (int i = 0; i < this.inputs.size(); i++) {
+                instanceEvaluations.putIfAbsent(this.inputs.get(i).execute(execution), this.instances.get(i));
+            }
+
+            return execution.evaluator.getPlanner().joinAll(instanceEvaluations);
+        }
+    }
+
+    /** Applies the parameter modifiers, default values and placeholder filtering of a template. **/
+    private static class ParameterFilter implements Operator {
+        private final Operator input;
+        private final List<Parameter> parameters;
+
+        ParameterFilter(Operator input, List<Parameter> parameters) {
+            this.input = input;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public Set<Mapping> execute(Execution execution) {
+            return execution.evaluator.filterMappings(this.input.execute(execution), this.parameters);
+        }
+    }
+
+    /** Adds the non-optional solutions of a template, and removes the mappings that are
+     * less than another mapping. **/
+    private static class Prune implements Operator {
+        private final Operator input;
+        private final Set<Mapping> nonOptSolutions;
+
+        Prune(Operator input, Set<Mapping> nonOptSolutions) {
+            this.input = input;
+            this.nonOptSolutions = nonOptSolutions;
+        }
+
+        @Override
+        public Set<Mapping> execute(Execution execution) {
+            Set<Mapping> result = this.input.execute(execution);
+            result.addAll(this.nonOptSolutions);
+            return execution.evaluator.intern(execution.evaluator.removeSubMappings(result));
+        }
+    }
+
+    private static class ExpandDefaults implements Operator {
+        private final Operator input;
+
+        ExpandDefaults(Operator input) {
+            this.input = input;
+        }
+
+        @Override
+        public Set<Mapping> execute(Execution execution) {
+            return execution.evaluator.expandDefaults(this.input.execute(execution));
+        }
+    }
+
+    /** The reverse of the list expansion of an instance. **/
+    private static class Unexpand implements Operator {
+        private final Operator input;
+        private final ListUnexpander unexpander;
+        private final ListExpander expander;
+
+        Unexpand(Operator input, ListUnexpander unexpander, ListExpander expander) {
+            this.input = input;
+            this.unexpander = unexpander;
+            this.expander = expander;
+        }
+
+        @Override
+        public Set<Mapping> execute(Execution execution) {
+            Set<Mapping> mappings = this.input.execute(execution);
+
+            if (this.expander.equals(ListExpander.zipMin)) {
+                return this.unexpander.unzipMin(mappings);
+            } else if (this.expander.equals(ListExpander.zipMax)) {
+                return this.unexpander.unzipMax(mappings);
+            }
+            return this.unexpander.uncross(mappings);
+        }
+    }
+
+    /** Filters mappings against the arguments of an instance, and renames the variables. **/
+    private static class ArgumentFilter implements Operator {
+        private final Operator input;
+        private final Mapping argMap;
+
+        ArgumentFilter(Operator input, Mapping argMap) {
+            this.input = input;
+            this.argMap = argMap;
+        }
+
+        @Override
+        public Set<Mapping> execute(Execution execution) {
+            return execution.evaluator.argFilter(this.input.execute(execution), this.argMap);
+        }
+    }
+
+    /** An operator that is used by several instances, and is executed once per execution. **/
+    private static class Shared implements Operator {
+        private final Operator input;
+
+        Shared(Operator input) {
+            this.input = input;
+        }
+
+        @Override
+        public Set<Mapping> execute(Execution execution) {
+            Set<Mapping> result = execution.shared.get(this);
+            if (result == null) {
+                result = Collections.unmodifiableSet(this.input.execute(execution));
+                execution.shared.put(this, result);
+            }
+            return result;
+        }
+    }
+}
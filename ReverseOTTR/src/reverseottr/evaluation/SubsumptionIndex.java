@@ -0,0 +1,120 @@
+package reverseottr.evaluation;
+
+import reverseottr.model.Mapping;
+import reverseottr.model.TermRegistry;
+import xyz.ottr.lutra.model.terms.NoneTerm;
+import xyz.ottr.lutra.model.terms.Term;
+
+import java.util.*;
+
+/**
+ * Finds the mappings in a set that are greater than a given mapping, according to the
+ * partial order in TermRegistry, without comparing the mapping to every mapping in the set.
+ *
+ * A term is exact if the only terms less than or equal to it are equal to it, which holds for
+ * IRIs, literals, blank nodes and none. Mappings are grouped by the variables they map to exact
+ * terms, and within a group by those exact terms. A mapping can only be less than or equal to
+ * mappings in a group if it maps the same variables to the same exact terms, so only one bucket
+ * per group has to be compared.**/
+class SubsumptionIndex {
+
+    private final Map<Set<Term>, Map<Mapping, List<Mapping>>> groups = new HashMap<>();
+
+    SubsumptionIndex(Collection<Mapping> mappings) {
+        mappings.forEach(this::add);
+    }
+
+    void add(Mapping mapping) {
+        Set<Term> exactVars = exactVars(mapping);
+
+        this.groups.computeIfAbsent(exactVars, k -> new HashMap<>())
+                .computeIfAbsent(project(mapping, exactVars), k -> new ArrayList<>())
+                .add(mapping);
+    }
+
+    void remove(Mapping mapping) {
+        Set<Term> exactVars = exactVars(mapping);
+        Map<Mapping, List<Mapping>> group = this.groups.get(exactVars);
+        if (group == null) return;
+
+        Mapping key = project(mapping, exactVars);
+        List<Mapping> bucket = group.get(key);
+        if (bucket == null) return;
+
+        bucket.remove(mapping);
+        if (bucket.isEmpty()) group.remove(key);
+        if (group.isEmpty()) this.groups.remove(exactVars);
+    }
+
+    /** Checks whether the index contains a mapping that is greater than,
+     * and not equal to, the input-mapping. **/
+    boolean containsGreater(Mapping mapping) {
+        for (Map.Entry<Set<Term>, Map<Mapping, List<Mapping>>> entry : this.groups.entrySet()) {
+            Set<Term> exactVars = entry.getKey();
+            Map<Mapping, List<Mapping>> group = entry.getValue();
+
+            if (!mapping.domain().containsAll(exactVars)) {
+                // Variables outside the domain of the mapping are not compared.
+                for (List<Mapping> bucket : group.values()) {
+                    if (containsGreater(bucket, mapping)) return true;
+                }
+
+            } else if (isExact(mapping, exactVars)) {
+                List<Mapping> bucket = group.get(project(mapping, exactVars));
+                if (bucket != null && containsGreater(bucket, mapping)) return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean containsGreater(List<Mapping> candidates, Mapping mapping) {
+        for (Mapping other : candidates) {
+            if (lessOrEqualMapping(mapping, other) && !mapping.equals(other))
+                return true;
+        }
+
+        return false;
+    }
+
+    static boolean lessOrEqualMapping(Mapping m1, Mapping m2) {
+        for (Term var : m1.domain()) {
+            if (!TermRegistry.lessOrEqual(m1.get(var), m2.get(var)))
+                return false;
+        }
+        return true;
+    }
+
+    /** Checks whether a mapping only maps variables to exact terms. Such a mapping can not
+     * be greater than any other mapping with the same domain. **/
+    static boolean isExact(Mapping mapping) {
+        return isExact(mapping, mapping.domain());
+    }
+
+    private static boolean isExact(Term term) {
+        return TermRegistry.isGround(term) || term instanceof NoneTerm;
+    }
+
+    private static boolean isExact(Mapping mapping, Set<Term> vars) {
+        for (Term var : vars) {
+            if (!isExact(mapping.get(var))) return false;
+        }
+        return true;
+    }
+
+    private static Set<Term> exactVars(Mapping mapping) {
+        Set<Term> result = new HashSet<>();
+        for (Term var : mapping.domain()) {
+            if (isExact(mapping.get(var))) result.add(var);
+        }
+        return result;
+    }
+
+    private static Mapping project(Mapping mapping, Set<Term> vars) {
+        Mapping.Builder builder = Mapping.builder(mapping.getDictionary());
+        for (Term var : vars) {
+            builder.put(var, mapping.get(var));
+        }
+        return builder.build();
+    }
+}
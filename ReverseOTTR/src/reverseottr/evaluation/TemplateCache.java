@@ -0,0 +1,99 @@
+package reverseottr.evaluation;
+
+import reverseottr.model.Mapping;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A bounded cache of template evaluations, keyed by template IRI.
+ *
+ * When the cache is full, the least recently used evaluation is evicted.
+ * The cached sets are unmodifiable, since they are shared between all instances
+ * of the same template.**/
+public class TemplateCache {
+
+    private final Map<String, Set<Mapping>> evaluations;
+    private int maxSize;
+    private long hits = 0;
+    private long misses = 0;
+
+    public TemplateCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.evaluations = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Set<Mapping>> eldest) {
+                return size() > TemplateCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Gets the cached evaluation of a template, or evaluates and caches it if it is not cached.
+     *
+     * @param iri The IRI of the template.
+     * @param evaluation Evaluates the template.
+     * @return The evaluation of the template.**/
+    public Set<Mapping> get(String iri, Supplier<Set<Mapping>> evaluation) {
+        synchronized (this) {
+            Set<Mapping> cached = this.evaluations.get(iri);
+            if (cached != null) {
+                this.hits++;
+                return cached;
+            }
+            this.misses++;
+        }
+
+        // Evaluated outside the lock, since evaluating a template evaluates its sub-templates.
+        Set<Mapping> result = Collections.unmodifiableSet(evaluation.get());
+
+        synchronized (this) {
+            if (this.maxSize > 0) this.evaluations.put(iri, result);
+        }
+
+        return result;
+    }
+
+    /** Checks whether the evaluation of a template is in the cache, without counting a hit or miss. **/
+    public synchronized boolean contains(String iri) {
+        return this.evaluations.containsKey(iri);
+    }
+
+    public synchronized void clear() {
+        this.evaluations.clear();
+    }
+
+    public synchronized void resetStatistics() {
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    public synchronized int size() {
+        return this.evaluations.size();
+    }
+
+    public synchronized int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /** Sets the maximum number of cached evaluations, evicting the least recently used ones. **/
+    public synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        var iterator = this.evaluations.keySet().iterator();
+        while (this.evaluations.size() > maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+}
@@ -0,0 +1,99 @@
+package reverseottr.model;
+
+import org.apache.jena.shared.PrefixMapping;
+import xyz.ottr.lutra.OTTR;
+import xyz.ottr.lutra.model.Substitution;
+import xyz.ottr.lutra.model.terms.Term;
+import xyz.ottr.lutra.model.types.Type;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Stands for either a default value or ottr:none. A mapping with this term for a variable
+ * represents the two mappings where the variable is mapped to the default value and to none,
+ * so that the default alternatives of a mapping do not have to be generated one by one.
+ *
+ * In the partial order, a term is less than or equal to this term if it is less than or equal
+ * to the default value or is none, and this term is less than or equal to another term if both
+ * the default value and none are.**/
+public class DefaultOrNone implements Term {
+
+    private final Term value;
+    private Type type;
+    private boolean variable;
+
+    public DefaultOrNone(Term value) {
+        this.value = value;
+        this.type = value.getType();
+    }
+
+    /** The default value that this term stands for, in addition to none. **/
+    public Term getValue() {
+        return this.value;
+    }
+
+    @Override
+    public Object getIdentifier() {
+        return this.value.getIdentifier();
+    }
+
+    @Override
+    public void setVariable(boolean b) {
+        this.variable = b;
+    }
+
+    @Override
+    public boolean isVariable() {
+        return this.variable;
+    }
+
+    @Override
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    @Override
+    public Type getType() {
+        return this.type;
+    }
+
+    @Override
+    public Optional<Term> unify(Term term) {
+        return Optional.of(term);
+    }
+
+    @Override
+    public DefaultOrNone shallowClone() {
+        DefaultOrNone term = new DefaultOrNone(this.value);
+        term.setVariable(this.variable);
+        return term;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.value.hashCode() + 7;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o
+                || Objects.nonNull(o)
+                && getClass() == o.getClass()
+                && this.variable == ((Term) o).isVariable()
+                && Objects.equals(this.value, ((DefaultOrNone) o).value);
+    }
+
+    @Override
+    public Term apply(Substitution substitution) {
+        return Objects.requireNonNullElse(substitution.get(this), this);
+    }
+
+    public String toString(PrefixMapping prefixes) {
+        return "(" + this.value + " | none)";
+    }
+
+    public String toString() {
+        return toString(OTTR.getDefaultPrefixes());
+    }
+
+}
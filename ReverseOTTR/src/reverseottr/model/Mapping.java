@@ -1,278 +1,808 @@
-package reverseottr.model;
-
-import org.apache.jena.shared.PrefixMapping;
-import xyz.ottr.lutra.model.terms.BlankNodeTerm;
-import xyz.ottr.lutra.model.terms.ListTerm;
-import xyz.ottr.lutra.model.terms.NoneTerm;
-import xyz.ottr.lutra.model.terms.Term;
-import java.util.*;
-
-public class Mapping {
-
-    private final Map<Term, Term> map;
-
-    public Mapping() {
-        this.map = new HashMap<>();
-    }
-
-    public Mapping(Term var, Term term) {
-        this.map = new HashMap<>();
-        this.put(var, term);
-    }
-
-    public Mapping(List<Term> vars, List<Term> terms) {
-        this.map = new HashMap<>();
-        this.put(vars, terms);
-    }
-
-    public void put(Term var, Term value) {
-        this.map.put(var, value);
-    }
-
-    public void put(List<Term> vars, List<Term> terms) {
-        for (int i = 0; i < vars.size(); i++) {
-            this.put(vars.get(i), terms.get(i));
-        }
-    }
-
-    public Term get(Term var) {
-        return this.map.get(var);
-    }
-
-    public List<Term> get(List<Term> vars) {
-        List<Term> list = new LinkedList<>();
-
-        for (Term var : vars) {
-            list.add(this.get(var));
-        }
-
-        return list;
-    }
-
-    public Set<Term> domain() {
-        return this.map.keySet();
-    }
-
-    public boolean containsVar(Term var) {
-        return this.map.containsKey(var);
-    }
-
-    public String toString() {
-        return this.map.toString();
-    }
-
-    public static Set<Mapping> joinAll(Set<Set<Mapping>> sets) {
-        return sets.stream().reduce(Mapping::join).orElse(new HashSet<>());
-    }
-
-    public static Set<Mapping> join(Set<Mapping> a, Set<Mapping> b) {
-        Set<Mapping> resultSet = new HashSet<>();
-
-        for (Mapping mapA : a) {
-            for (Mapping mapB : b) {
-                if (compatible(mapA, mapB)) {
-                    resultSet.add(union(mapA, mapB));
-                }
-            }
-        }
-
-        return resultSet;
-    }
-
-    public static Mapping union(Mapping a, Mapping b) {
-        Mapping result = new Mapping();
-        Set<Term> domain = new HashSet<>();
-        domain.addAll(a.domain());
-        domain.addAll(b.domain());
-
-        for (Term var : domain) {
-            if (!a.containsVar(var)) {
-                result.put(var, b.get(var));
-            } else if (!b.containsVar(var)) {
-                result.put(var, a.get(var));
-            } else {
-                result.put(var, TermRegistry.GLB(a.get(var), b.get(var)));
-            }
-        }
-
-        return result;
-    }
-
-    public static boolean compatible(Mapping a, Mapping b) {
-        for (Term var : a.domain()) {
-            if (b.containsVar(var) && TermRegistry.GLB(a.get(var), b.get(var)) == null) {
-                return false;
-            }
-        }
-        return true;
-    }
-
-    public static Mapping transform(Mapping termMap, Mapping argMap) {
-        Mapping result = new Mapping();
-        for (Term var : argMap.domain()) {
-            Term argValue = argMap.get(var);
-            Term termValue = termMap.get(var);
-            Mapping tempMap = termTransform(termValue, argValue);
-            if (compatible(result, tempMap)) result = union(result, tempMap);
-        }
-
-        return result;
-    }
-
-    public static Mapping termTransform(Term term, Term arg) {
-        Mapping result = new Mapping();
-
-        if (arg instanceof ListTerm && term instanceof ListTerm) {
-            return listTransform(((ListTerm) term).asList(), ((ListTerm) arg).asList());
-
-        } else if (arg.isVariable()) {
-            result.put(arg, term);
-        }
-
-        return result;
-    }
-
-    public static Mapping listTransform(List<Term> termList, List<Term> argList) {
-        int size = argList.size();
-
-        if (termList.get(termList.size() - 1).equals(TermRegistry.any_trail)) {
-            size = termList.size() - 1;
-
-        }
-
-        Mapping result = new Mapping();
-
-        for (int i = 0; i < size; i++) {
-            Term arg = argList.get(i);
-            Term term = termList.get(i);
-
-            Mapping tempMap = termTransform(term, arg);
-
-            if (compatible(result, tempMap)) {
-                result = union(result, tempMap);
-            }
-        }
-
-        for (int i = size; i < argList.size(); i++) {
-            Term arg = argList.get(i);
-            if (arg.isVariable()) {
-                Mapping tempMap = new Mapping();
-                tempMap.put(arg, TermRegistry.any);
-                result = union(result, tempMap);
-            }
-        }
-
-        return result;
-    }
-
-    public static boolean innerCompatible(Mapping termMap, Mapping argMap) {
-        if (!termMap.domain().equals(argMap.domain())) return false;
-
-        for (Term var : argMap.domain()) {
-            Term arg = argMap.get(var);
-            Term term = termMap.get(var);
-
-            if (!arg.isVariable() && TermRegistry.GLB(arg, term) == null) {
-                return false;
-            }
-        }
-
-        return true;
-    }
-
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-
-        Mapping mapping = (Mapping) o;
-
-        if (!mapping.domain().equals(this.domain())) return false;
-
-        for (Term var : this.domain()) {
-            Term t1 = this.get(var);
-            Term t2 = mapping.get(var);
-            if (!t1.equals(t2) && !(t1 instanceof NoneTerm && t2 instanceof NoneTerm))
-                return false;
-        }
-
-        return true;
-    }
-
-    @Override
-    public int hashCode() {
-        int hash = 0;
-        for (Term var : domain()) {
-            Term term = get(var);
-            hash += term.hashCode();
-        }
-
-        return hash;
-    }
-
-    /*
-    private int listHash(List<Term> termList) {
-        int hash = 0;
-
-        for (Term term : termList) {
-            if (term instanceof ListTerm) {
-                hash += listHash(((ListTerm) term).asList());
-            } else {
-                hash += term.hashCode();
-            }
-        }
-
-        return hash;
-    }
-     */
-
-    public String toString(PrefixMapping prefixes) {
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append("{");
-        for (Term var : domain()) {
-            stringBuilder.append("?");
-            stringBuilder.append(var.getIdentifier());
-            stringBuilder.append("=");
-
-            Term term = get(var);
-            String id;
-            if (term instanceof ListTerm) {
-                id = listToString(term, prefixes);
-            } else {
-                id = prefixes.shortForm(get(var).getIdentifier().toString());
-            }
-
-            stringBuilder.append(id);
-            stringBuilder.append(", ");
-        }
-        stringBuilder.delete(stringBuilder.length() - 2, stringBuilder.length());
-        stringBuilder.append("}");
-
-        return stringBuilder.toString();
-    }
-
-    private String listToString(Term term, PrefixMapping prefixes) {
-        List<Term> list = ((ListTerm) term).asList();
-
-        if (list.size() == 0) return "[]";
-
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append("[");
-        for (Term t : list) {
-            String id;
-            if (t instanceof ListTerm) {
-                id = listToString(t, prefixes);
-            } else {
-                id = prefixes.shortForm(t.getIdentifier().toString());
-            }
-
-            stringBuilder.append(id);
-            stringBuilder.append(", ");
-        }
-        stringBuilder.delete(stringBuilder.length() - 2, stringBuilder.length());
-        stringBuilder.append("]");
-        stringBuilder.append("{").append(term.getIdentifier()).append("}");
-
-        return stringBuilder.toString();
-    }
-}
+package reverseottr.model;
+
+import org.apache.jena.shared.PrefixMapping;
+import xyz.ottr.lutra.model.terms.ListTerm;
+import xyz.ottr.lutra.model.terms.Term;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * An immutable mapping from variables to terms, built with a Mapping.Builder.
+ *
+ * The variables of a mapping are kept in a domain that is shared by all mappings with the
+ * same variables, and the values are kept as ids from a TermDictionary, in the slot given by
+ * the position of the variable in the domain. Terms that are not in the dictionary, such as
+ * lists generated by reverse list expansion, are kept as terms in a separate array. Comparing
+ * and joining mappings with the same dictionary therefore mostly compares integers, while
+ * mappings with different dictionaries are compared by their terms.
+ *
+ * A mapping takes the dictionary of the builder it is built with, see TermDictionary.builder,
+ * or the dictionary of the mappings it is built from. The constructors and Mapping.builder
+ * give mappings without a dictionary.
+ *
+ * The hash code is computed once, from both the variables and the values.**/
+public final class Mapping {
+
+    private final Domain domain;
+    private final int[] values;
+    private final Term[] others;
+    private final TermDictionary dictionary;
+    private final int hash;
+
+    public Mapping() {
+        this(Domain.EMPTY, new int[0], null, null);
+    }
+
+    public Mapping(Term var, Term term) {
+        this(new Builder().put(var, term));
+    }
+
+    public Mapping(List<Term> vars, List<Term> terms) {
+        this(new Builder().put(vars, terms));
+    }
+
+    private Mapping(Builder builder) {
+        this(builder.domain, builder.values, builder.others, builder.dictionary);
+    }
+
+    private Mapping(Domain domain, int[] values, Term[] others, TermDictionary dictionary) {
+        this.domain = domain;
+        this.values = values;
+        this.others = others;
+        this.dictionary = dictionary;
+        this.hash = computeHash();
+    }
+
+    /** A builder of mappings that keep their values as terms, without a dictionary. **/
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** A builder of mappings that take their ids from the dictionary, or keep their values
+     * as terms if it is null. **/
+    public static Builder builder(TermDictionary dictionary) {
+        return new Builder(Domain.EMPTY, dictionary);
+    }
+
+    /** @return A builder that starts out with the variables and values of this mapping. **/
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * Builds mappings by putting values for variables. A builder can be reused after
+     * building a mapping, and later puts do not affect the mappings already built.**/
+    public static final class Builder {
+        private Domain domain;
+        private int[] values;
+        private Term[] others;
+        private final TermDictionary dictionary;
+        private boolean shared = false;
+
+        public Builder() {
+            this(Domain.EMPTY, null);
+        }
+
+        private Builder(Domain domain, TermDictionary dictionary) {
+            this.domain = domain;
+            this.values = new int[domain.size()];
+            this.dictionary = dictionary;
+        }
+
+        private Builder(Mapping mapping) {
+            this.domain = mapping.domain;
+            this.values = mapping.values;
+            this.others = mapping.others;
+            this.dictionary = mapping.dictionary;
+            this.shared = true;
+        }
+
+        public Builder put(Term var, Term value) {
+            int slot = this.domain.slot(var);
+
+            if (slot < 0) {
+                extend(var);
+                slot = this.domain.slot(var);
+            } else {
+                unshare();
+            }
+
+            set(slot, value);
+            return this;
+        }
+
+        public Builder put(List<Term> vars, List<Term> terms) {
+            for (int i = 0; i < vars.size(); i++) {
+                this.put(vars.get(i), terms.get(i));
+            }
+            return this;
+        }
+
+        public boolean containsVar(Term var) {
+            return this.domain.slot(var) >= 0;
+        }
+
+        public Mapping build() {
+            this.shared = true;
+            return new Mapping(this);
+        }
+
+        private void unshare() {
+            if (!this.shared) return;
+
+            this.values = this.values.clone();
+            if (this.others != null) this.others = this.others.clone();
+            this.shared = false;
+        }
+
+        private void extend(Term var) {
+            Domain extended = this.domain.with(var);
+            int[] slots = this.domain.slotsIn(extended);
+
+            int[] extendedValues = new int[extended.size()];
+            Term[] extendedOthers = this.others == null ? null : new Term[extended.size()];
+
+            for (int i = 0; i < this.values.length; i++) {
+                extendedValues[slots[i]] = this.values[i];
+                if (extendedOthers != null) extendedOthers[slots[i]] = this.others[i];
+            }
+
+            this.domain = extended;
+            this.values = extendedValues;
+            this.others = extendedOthers;
+            this.shared = false;
+        }
+
+        private void set(int slot, Term value) {
+            int id = encode(value);
+            this.values[slot] = id;
+
+            if (id == TermDictionary.UNENCODED) {
+                if (this.others == null) this.others = new Term[this.values.length];
+                this.others[slot] = value;
+            } else if (this.others != null) {
+                this.others[slot] = null;
+            }
+        }
+
+        private int encode(Term value) {
+            if (this.dictionary != null) return this.dictionary.encode(value);
+            return value == null ? TermDictionary.NULL : TermDictionary.UNENCODED;
+        }
+
+        private void copy(int slot, Mapping source, int sourceSlot) {
+            if (source.dictionary != this.dictionary) {
+                set(slot, source.value(sourceSlot));
+                return;
+            }
+
+            int id = source.values[sourceSlot];
+            this.values[slot] = id;
+
+            if (id == TermDictionary.UNENCODED) {
+                if (this.others == null) this.others = new Term[this.values.length];
+                this.others[slot] = source.others[sourceSlot];
+            } else if (this.others != null) {
+                this.others[slot] = null;
+            }
+        }
+    }
+
+    /**
+     * Keeps one shared instance of each distinct mapping, such that equal mappings
+     * produced by different operators are represented by the same object.
+     *
+     * The instances are only referenced weakly, so a mapping is dropped from the interner
+     * when nothing else, such as an evaluation in a cache, refers to it. The interner therefore
+     * holds no more mappings than are in use, also when it is never cleared.**/
+    public static final class Interner {
+        private final Map<Mapping, WeakReference<Mapping>> mappings = new WeakHashMap<>();
+
+        public synchronized Mapping intern(Mapping mapping) {
+            WeakReference<Mapping> reference = this.mappings.get(mapping);
+            Mapping interned = reference == null ? null : reference.get();
+            if (interned != null) return interned;
+
+            this.mappings.put(mapping, new WeakReference<>(mapping));
+            return mapping;
+        }
+
+        public Set<Mapping> internAll(Set<Mapping> mappings) {
+            Set<Mapping> result = new HashSet<>();
+            for (Mapping mapping : mappings) {
+                result.add(intern(mapping));
+            }
+            return result;
+        }
+
+        public synchronized int size() {
+            return this.mappings.size();
+        }
+
+        public synchronized void clear() {
+            this.mappings.clear();
+        }
+    }
+
+    private Term value(int slot) {
+        int id = this.values[slot];
+        if (id == TermDictionary.UNENCODED) return this.others[slot];
+        if (id == TermDictionary.NULL) return null;
+        return this.dictionary.decode(id);
+    }
+
+    // Equal ids of encoded terms means equal terms, and the GLB of equal terms is the term itself.
+    private boolean sameValue(int slot, Mapping other, int otherSlot) {
+        return this.values[slot] >= 0 && this.dictionary == other.dictionary
+                && this.values[slot] == other.values[otherSlot];
+    }
+
+    /** The dictionary of the ids of the values, or null if the values are kept as terms. **/
+    public TermDictionary getDictionary() {
+        return this.dictionary;
+    }
+
+    public Term get(Term var) {
+        int slot = this.domain.slot(var);
+        if (slot < 0) return null;
+        return value(slot);
+    }
+
+    public List<Term> get(List<Term> vars) {
+        List<Term> list = new ArrayList<>(vars.size());
+
+        for (Term var : vars) {
+            list.add(this.get(var));
+        }
+
+        return list;
+    }
+
+    public Set<Term> domain() {
+        return this.domain.vars();
+    }
+
+    public boolean containsVar(Term var) {
+        return this.domain.slot(var) >= 0;
+    }
+
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("{");
+        for (int i = 0; i < this.values.length; i++) {
+            if (i > 0) stringBuilder.append(", ");
+            stringBuilder.append(this.domain.var(i)).append("=").append(value(i));
+        }
+        stringBuilder.append("}");
+
+        return stringBuilder.toString();
+    }
+
+    public static Set<Mapping> joinAll(Set<Set<Mapping>> sets) {
+        return sets.stream().reduce(Mapping::join).orElse(new HashSet<>());
+    }
+
+    /**
+     * Joins two sets of mappings by hash-partitioning the mappings of b on the values
+     * of the variables shared by all mappings. Only mappings with non-ground values for
+     * the shared variables, i.e. placeholders, none-values or lists, are checked pairwise.
+     * Compatible mappings are combined by unions, so a bag gives every lower bound it has.
+     *
+     * @return The same set as pairwise joining every compatible pair of mappings.**/
+    public static Set<Mapping> join(Set<Mapping> a, Set<Mapping> b) {
+        Set<Mapping> resultSet = new HashSet<>();
+
+        if (a.isEmpty() || b.isEmpty()) return resultSet;
+
+        Partitions partitions = new Partitions(b, sharedVars(a, b));
+
+        for (Mapping mapA : a) {
+            partitions.join(mapA, resultSet::add);
+        }
+
+        return resultSet;
+    }
+
+    /**
+     * Joins two sets of mappings lazily. The partitions of b are built when the method is called,
+     * while the mappings of a are joined with them as the stream is consumed.
+     *
+     * @return A stream of the mappings in join(a, b), possibly with duplicates.**/
+    public static Stream<Mapping> joinStream(Set<Mapping> a, Set<Mapping> b) {
+        if (a.isEmpty() || b.isEmpty()) return Stream.empty();
+
+        Partitions partitions = new Partitions(b, sharedVars(a, b));
+
+        return a.stream().flatMap(mapA -> {
+            List<Mapping> joined = new ArrayList<>();
+            partitions.join(mapA, joined::add);
+            return joined.stream();
+        });
+    }
+
+    /** The mappings of one side of a join, partitioned on their ground values for the shared variables. **/
+    private static final class Partitions {
+        private final List<Term> shared;
+        private final Collection<Mapping> mappings;
+        private final TermDictionary dictionary;
+        private final Map<Key, List<Mapping>> partitions = new HashMap<>();
+        private final List<Mapping> nonGround = new ArrayList<>();
+
+        Partitions(Collection<Mapping> mappings, List<Term> shared) {
+            this.shared = shared;
+            this.mappings = mappings;
+
+            // The keys are ids of one dictionary, also for mappings from other or no dictionaries.
+            TermDictionary dictionary = mappings.iterator().next().dictionary;
+            this.dictionary = dictionary != null ? dictionary : new TermDictionary();
+
+            for (Mapping mapping : mappings) {
+                Key key = groundKey(mapping, shared, this.dictionary);
+                if (key == null) {
+                    this.nonGround.add(mapping);
+                } else {
+                    this.partitions.computeIfAbsent(key, k -> new ArrayList<>()).add(mapping);
+                }
+            }
+        }
+
+        void join(Mapping mapA, Consumer<Mapping> consumer) {
+            Key key = groundKey(mapA, this.shared, this.dictionary);
+
+            if (key == null) {
+                joinWith(mapA, this.mappings, consumer);
+            } else {
+                joinWith(mapA, this.partitions.getOrDefault(key, Collections.emptyList()), consumer);
+                joinWith(mapA, this.nonGround, consumer);
+            }
+        }
+
+        private static void joinWith(Mapping mapA, Collection<Mapping> b, Consumer<Mapping> consumer) {
+            for (Mapping mapB : b) {
+                if (compatible(mapA, mapB)) {
+                    unions(mapA, mapB, consumer);
+                }
+            }
+        }
+    }
+
+    // The variables in the domain of every mapping of both sets.
+    private static List<Term> sharedVars(Set<Mapping> a, Set<Mapping> b) {
+        Set<Term> shared = new HashSet<>(a.iterator().next().domain());
+
+        for (Mapping mapping : a) {
+            shared.retainAll(mapping.domain());
+        }
+
+        for (Mapping mapping : b) {
+            shared.retainAll(mapping.domain());
+        }
+
+        return new ArrayList<>(shared);
+    }
+
+    // The ids of the values of a mapping for the given variables, or null if any of them is not ground.
+    private static Key groundKey(Mapping mapping, List<Term> vars, TermDictionary dictionary) {
+        int[] ids = new int[vars.size()];
+
+        for (int i = 0; i < ids.length; i++) {
+            int slot = mapping.domain.slot(vars.get(i));
+            Term value = mapping.value(slot);
+            if (!TermRegistry.isGround(value)) return null;
+            ids[i] = mapping.dictionary == dictionary ? mapping.values[slot] : dictionary.encode(value);
+        }
+
+        return new Key(ids);
+    }
+
+    private static final class Key {
+        private final int[] ids;
+        private final int hash;
+
+        Key(int[] ids) {
+            this.ids = ids;
+            this.hash = Arrays.hashCode(ids);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(this.ids, ((Key) o).ids);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    public static Mapping union(Mapping a, Mapping b) {
+        Domain domain = a.domain.union(b.domain);
+        Builder result = new Builder(domain, a.dictionary != null ? a.dictionary : b.dictionary);
+
+        int[] inA = domain.slotsIn(a.domain);
+        int[] inB = domain.slotsIn(b.domain);
+
+        for (int slot = 0; slot < inA.length; slot++) {
+            if (inA[slot] < 0) {
+                result.copy(slot, b, inB[slot]);
+            } else if (inB[slot] < 0 || a.sameValue(inA[slot], b, inB[slot])) {
+                result.copy(slot, a, inA[slot]);
+            } else {
+                result.set(slot, TermRegistry.GLB(a.value(inA[slot]), b.value(inB[slot])));
+            }
+        }
+
+        return result.build();
+    }
+
+    /**
+     * Gives the unions of two compatible mappings, which is one mapping like union, unless a variable
+     * is mapped to a bag that has several maximal lower bounds with the other value, see
+     * TermRegistry.GLBs. Then there is one union for each combination of the lower bounds.**/
+    public static void unions(Mapping a, Mapping b, Consumer<Mapping> consumer) {
+        Domain domain = a.domain.union(b.domain);
+        Builder result = new Builder(domain, a.dictionary != null ? a.dictionary : b.dictionary);
+
+        int[] inA = domain.slotsIn(a.domain);
+        int[] inB = domain.slotsIn(b.domain);
+
+        List<Integer> boundSlots = new ArrayList<>();
+        List<List<Term>> bounds = new ArrayList<>();
+
+        for (int slot = 0; slot < inA.length; slot++) {
+            if (inA[slot] < 0) {
+                result.copy(slot, b, inB[slot]);
+            } else if (inB[slot] < 0 || a.sameValue(inA[slot], b, inB[slot])) {
+                result.copy(slot, a, inA[slot]);
+            } else {
+                Term valueA = a.value(inA[slot]);
+                Term valueB = b.value(inB[slot]);
+
+                if (valueA instanceof RBagTerm || valueB instanceof RBagTerm) {
+                    boundSlots.add(slot);
+                    bounds.add(new ArrayList<>(TermRegistry.GLBs(valueA, valueB)));
+                } else {
+                    result.set(slot, TermRegistry.GLB(valueA, valueB));
+                }
+            }
+        }
+
+        combine(result, boundSlots, bounds, 0, consumer);
+    }
+
+    // Builds a mapping for each combination of the lower bounds of the remaining slots.
+    private static void combine(Builder builder, List<Integer> slots, List<List<Term>> bounds, int next,
+                                Consumer<Mapping> consumer) {
+        if (next == slots.size()) {
+            consumer.accept(builder.build());
+            return;
+        }
+
+        for (Term bound : bounds.get(next)) {
+            builder.unshare();
+            builder.set(slots.get(next), bound);
+            combine(builder, slots, bounds, next + 1, consumer);
+        }
+    }
+
+    public static boolean compatible(Mapping a, Mapping b) {
+        int[] inB = a.domain.slotsIn(b.domain);
+
+        for (int slot = 0; slot < inB.length; slot++) {
+            if (inB[slot] >= 0 && !a.sameValue(slot, b, inB[slot])
+                    && TermRegistry.GLB(a.value(slot), b.value(inB[slot])) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** The transformed mapping takes the dictionary of termMap. **/
+    public static Mapping transform(Mapping termMap, Mapping argMap) {
+        TermDictionary dictionary = termMap.dictionary;
+        Mapping result = builder(dictionary).build();
+        for (Term var : argMap.domain()) {
+            Term argValue = argMap.get(var);
+            Term termValue = termMap.get(var);
+            Mapping tempMap = termTransform(termValue, argValue, dictionary);
+            if (compatible(result, tempMap)) result = union(result, tempMap);
+        }
+
+        return result;
+    }
+
+    public static Mapping termTransform(Term term, Term arg) {
+        return termTransform(term, arg, null);
+    }
+
+    /** As termTransform, where the mapping takes its ids from the dictionary. **/
+    public static Mapping termTransform(Term term, Term arg, TermDictionary dictionary) {
+        // A list argument is not compatible with none, so only the default value is left.
+        if (arg instanceof ListTerm && term instanceof DefaultOrNone) {
+            term = ((DefaultOrNone) term).getValue();
+        }
+
+        if (arg instanceof ListTerm && term instanceof ListTerm) {
+            return listTransform(((ListTerm) term).asList(), ((ListTerm) arg).asList(), dictionary);
+
+        } else if (arg.isVariable()) {
+            return builder(dictionary).put(arg, term).build();
+        }
+
+        return builder(dictionary).build();
+    }
+
+    public static Mapping listTransform(List<Term> termList, List<Term> argList) {
+        return listTransform(termList, argList, null);
+    }
+
+    /** As listTransform, where the mapping takes its ids from the dictionary. **/
+    public static Mapping listTransform(List<Term> termList, List<Term> argList, TermDictionary dictionary) {
+        int size = argList.size();
+
+        if (TermRegistry.hasTrail(termList)) {
+            size = termList.size() - 1;
+
+        }
+
+        Mapping result = builder(dictionary).build();
+
+        for (int i = 0; i < size; i++) {
+            Term arg = argList.get(i);
+            Term term = termList.get(i);
+
+            Mapping tempMap = termTransform(term, arg, dictionary);
+
+            if (compatible(result, tempMap)) {
+                result = union(result, tempMap);
+            }
+        }
+
+        for (int i = size; i < argList.size(); i++) {
+            Term arg = argList.get(i);
+            if (arg.isVariable()) {
+                result = union(result, builder(dictionary).put(arg, TermRegistry.any).build());
+            }
+        }
+
+        return result;
+    }
+
+    public static boolean innerCompatible(Mapping termMap, Mapping argMap) {
+        if (!termMap.domain().equals(argMap.domain())) return false;
+
+        for (Term var : argMap.domain()) {
+            Term arg = argMap.get(var);
+            Term term = termMap.get(var);
+
+            if (!arg.isVariable() && TermRegistry.GLB(arg, term) == null) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Mapping mapping = (Mapping) o;
+
+        if (mapping.hash != this.hash || mapping.domain != this.domain) return false;
+
+        boolean sameDictionary = this.dictionary == mapping.dictionary;
+
+        for (int slot = 0; slot < this.values.length; slot++) {
+            int id = this.values[slot];
+            int otherId = mapping.values[slot];
+
+            if (sameDictionary && id == otherId && id != TermDictionary.UNENCODED) continue;
+            if (sameDictionary && id != TermDictionary.UNENCODED
+                    && otherId != TermDictionary.UNENCODED) return false;
+
+            if (!TermDictionary.equal(value(slot), mapping.value(slot))) return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    // The values are hashed as terms, such that equal mappings with different dictionaries have the same hash.
+    private int computeHash() {
+        int hash = this.domain.hashCode();
+        for (int slot = 0; slot < this.values.length; slot++) {
+            int id = this.values[slot];
+            hash = 31 * hash + (id == TermDictionary.UNENCODED ? TermDictionary.hash(this.others[slot])
+                    : id == TermDictionary.NULL ? 0 : this.dictionary.hash(id));
+        }
+
+        return hash;
+    }
+
+    /*
+    private int listHash(List<Term> termList) {
+        int hash = 0;
+
+        for (Term term : termList) {
+            if (term instanceof ListTerm) {
+                hash += listHash(((ListTerm) term).asList());
+            } else {
+                hash += term.hashCode();
+            }
+        }
+
+        return hash;
+    }
+     */
+
+    public String toString(PrefixMapping prefixes) {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("{");
+        for (Term var : domain()) {
+            stringBuilder.append("?");
+            stringBuilder.append(var.getIdentifier());
+            stringBuilder.append("=");
+
+            Term term = get(var);
+            String id;
+            if (term instanceof ListTerm) {
+                id = listToString(term, prefixes);
+            } else {
+                id = prefixes.shortForm(get(var).getIdentifier().toString());
+            }
+
+            stringBuilder.append(id);
+            stringBuilder.append(", ");
+        }
+        stringBuilder.delete(stringBuilder.length() - 2, stringBuilder.length());
+        stringBuilder.append("}");
+
+        return stringBuilder.toString();
+    }
+
+    private String listToString(Term term, PrefixMapping prefixes) {
+        List<Term> list = ((ListTerm) term).asList();
+
+        if (list.size() == 0) return "[]";
+
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("[");
+        for (Term t : list) {
+            String id;
+            if (t instanceof ListTerm) {
+                id = listToString(t, prefixes);
+            } else {
+                id = prefixes.shortForm(t.getIdentifier().toString());
+            }
+
+            stringBuilder.append(id);
+            stringBuilder.append(", ");
+        }
+        stringBuilder.delete(stringBuilder.length() - 2, stringBuilder.length());
+        stringBuilder.append("]");
+        stringBuilder.append("{").append(term.getIdentifier()).append("}");
+
+        return stringBuilder.toString();
+    }
+
+    /** The variables of mappings, shared by all mappings with the same set of variables.
+     * The position of a variable in the domain is the slot of its value in a mapping. **/
+    /**
+     * The variables of mappings, interned such that there is one domain for equal sets of variables
+     * while any mapping uses it. The domains and their caches only keep weak references to other
+     * domains, so the domains of mappings that are no longer used are released.**/
+    private static final class Domain {
+        private static final Map<Set<Term>, WeakReference<Domain>> domains = new WeakHashMap<>();
+        private static final Domain EMPTY = of(Collections.emptySet());
+
+        private final Term[] vars;
+        private final Set<Term> varSet;
+        private final Map<Term, Integer> slots = new HashMap<>();
+        private final Map<Term, WeakReference<Domain>> extensions = Collections.synchronizedMap(new WeakHashMap<>());
+        private final Map<Domain, WeakReference<Domain>> unions = Collections.synchronizedMap(new WeakHashMap<>());
+        private final Map<Domain, int[]> slotsIn = Collections.synchronizedMap(new WeakHashMap<>());
+        private final int hash;
+
+        private Domain(Set<Term> vars) {
+            this.vars = vars.toArray(new Term[0]);
+            this.varSet = Collections.unmodifiableSet(vars);
+            this.hash = vars.hashCode();
+            for (int i = 0; i < this.vars.length; i++) {
+                this.slots.put(this.vars[i], i);
+            }
+        }
+
+        // The key of an interned domain is the set it wraps, so the entry lives as long as the domain.
+        static Domain of(Set<Term> vars) {
+            synchronized (domains) {
+                Domain domain = get(domains, vars);
+                if (domain != null) return domain;
+
+                Set<Term> copy = new LinkedHashSet<>(vars);
+                domain = new Domain(copy);
+                domains.put(copy, new WeakReference<>(domain));
+                return domain;
+            }
+        }
+
+        private static <K> Domain get(Map<K, WeakReference<Domain>> cache, K key) {
+            WeakReference<Domain> reference = cache.get(key);
+            return reference == null ? null : reference.get();
+        }
+
+        // A domain computed outside the lock of the cache, since of takes the lock of the interned domains.
+        private static <K> Domain cached(Map<K, WeakReference<Domain>> cache, K key, Function<K, Domain> compute) {
+            Domain domain = get(cache, key);
+            if (domain != null) return domain;
+
+            domain = compute.apply(key);
+            cache.put(key, new WeakReference<>(domain));
+            return domain;
+        }
+
+        int size() {
+            return this.vars.length;
+        }
+
+        Set<Term> vars() {
+            return this.varSet;
+        }
+
+        Term var(int slot) {
+            return this.vars[slot];
+        }
+
+        int slot(Term var) {
+            Integer slot = this.slots.get(var);
+            return slot == null ? -1 : slot;
+        }
+
+        Domain with(Term var) {
+            return cached(this.extensions, var, v -> {
+                Set<Term> vars = new LinkedHashSet<>(this.varSet);
+                vars.add(v);
+                return of(vars);
+            });
+        }
+
+        Domain union(Domain other) {
+            if (other == this) return this;
+
+            if (other == EMPTY) return this;
+            if (this == EMPTY) return other;
+
+            return cached(this.unions, other, o -> {
+                Set<Term> vars = new LinkedHashSet<>(this.varSet);
+                vars.addAll(o.varSet);
+                return of(vars);
+            });
+        }
+
+        /** For each slot in this domain, the slot of the same variable in the other domain, or -1. **/
+        int[] slotsIn(Domain other) {
+            int[] result = this.slotsIn.get(other);
+            if (result != null) return result;
+
+            result = new int[this.vars.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = other.slot(this.vars[i]);
+            }
+            this.slotsIn.put(other, result);
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
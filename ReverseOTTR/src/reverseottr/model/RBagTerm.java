@@ -0,0 +1,129 @@
+package reverseottr.model;
+
+import xyz.ottr.lutra.model.terms.ListTerm;
+import xyz.ottr.lutra.model.terms.Term;
+
+import java.util.*;
+
+/**
+ * RBagTerms are lists generated by reverse list expansion, where the order of the elements
+ * does not matter. A bag stands for every unexpanded list with the same elements in any order,
+ * so one bag replaces the permutations of a list in the result of uncross.
+ *
+ * Two bags are equal if they have the same elements the same number of times.
+ * The orderings can be generated by orderings, or by Evaluator.expandBags for mappings.
+ *
+ * The elements are kept in a TermList where equal elements are next to each other, so the
+ * number of times an element is in the bag is the length of its run, and the hash code is
+ * computed once, as the sum of the hash codes of the elements.**/
+public class RBagTerm extends ListTerm {
+
+    private final int hash;
+
+    public RBagTerm(List<Term> termList) {
+        super(grouped(termList));
+
+        int hash = 0;
+        for (Term term : asList()) {
+            hash += term.hashCode();
+        }
+        this.hash = hash;
+    }
+
+    // The elements with equal elements next to each other, in the order they first occur.
+    private static TermList grouped(List<Term> termList) {
+        Map<Term, Integer> counts = new LinkedHashMap<>();
+        termList.forEach(term -> counts.merge(term, 1, Integer::sum));
+        if (counts.size() == termList.size()) return TermList.copyOf(termList);
+
+        Term[] grouped = new Term[termList.size()];
+        int i = 0;
+        for (Map.Entry<Term, Integer> entry : counts.entrySet()) {
+            for (int n = 0; n < entry.getValue(); n++) {
+                grouped[i++] = entry.getKey();
+            }
+        }
+
+        return TermList.of(grouped);
+    }
+
+    /** The number of times each element is in the bag. **/
+    public Map<Term, Integer> getCounts() {
+        Map<Term, Integer> counts = new LinkedHashMap<>();
+        List<Term> elements = asList();
+
+        for (int i = 0; i < elements.size(); i = runEnd(elements, i)) {
+            counts.put(elements.get(i), runEnd(elements, i) - i);
+        }
+
+        return Collections.unmodifiableMap(counts);
+    }
+
+    // The number of times an element is in the bag.
+    private int count(Term term) {
+        List<Term> elements = asList();
+
+        for (int i = 0; i < elements.size(); i = runEnd(elements, i)) {
+            if (elements.get(i).equals(term)) return runEnd(elements, i) - i;
+        }
+
+        return 0;
+    }
+
+    // The index after the run of elements equal to the one at start.
+    private static int runEnd(List<Term> elements, int start) {
+        int end = start + 1;
+        while (end < elements.size() && elements.get(end).equals(elements.get(start))) {
+            end++;
+        }
+        return end;
+    }
+
+    /** The distinct orderings of the elements, as unexpanded lists. **/
+    public Set<RListTerm> orderings() {
+        Set<RListTerm> result = new HashSet<>();
+        orderings(new ArrayList<>(), new HashMap<>(getCounts()), asList().size(), result);
+        return result;
+    }
+
+    // Picks each distinct element that is left as the next element, so equal elements
+    // are not permuted with each other.
+    private static void orderings(List<Term> prefix, Map<Term, Integer> left, int size, Set<RListTerm> result) {
+        if (prefix.size() == size) {
+            result.add(new RListTerm(new ArrayList<>(prefix), true));
+            return;
+        }
+
+        for (Term term : new ArrayList<>(left.keySet())) {
+            int count = left.get(term);
+            if (count == 0) continue;
+
+            left.put(term, count - 1);
+            prefix.add(term);
+            orderings(prefix, left, size, result);
+            prefix.remove(prefix.size() - 1);
+            left.put(term, count);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        RBagTerm other = (RBagTerm) o;
+        List<Term> elements = asList();
+        if (this.hash != other.hash || elements.size() != other.asList().size()) return false;
+
+        for (int i = 0; i < elements.size(); i = runEnd(elements, i)) {
+            if (other.count(elements.get(i)) != runEnd(elements, i) - i) return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+}
@@ -1,47 +1,54 @@
-package reverseottr.model;
-
-import xyz.ottr.lutra.model.terms.ListTerm;
-import xyz.ottr.lutra.model.terms.Term;
-
-import java.util.List;
-import java.util.Objects;
-
-/**RListTerms are Lutra ListTerms that remember whether they were generated by reverse list expansion.**/
-public class RListTerm extends ListTerm {
-    private boolean unexpanded;
-
-    public RListTerm(List<Term> termList, boolean unexpanded) {
-        super(termList);
-        this.unexpanded = unexpanded;
-    }
-
-    public RListTerm(List<Term> termList) {
-        this(termList, false);
-    }
-
-    public void setUnexpanded(boolean unexpanded) {
-        this.unexpanded = unexpanded;
-    }
-
-    public boolean isUnexpanded() {
-        return unexpanded;
-    }
-
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        RListTerm rListTerm = (RListTerm) o;
-        if (this.unexpanded != rListTerm.unexpanded) return false;
-        if (this.asList().size() != rListTerm.asList().size()) return false;
-        for (int i = 0; i < this.asList().size(); i++) {
-            if (!this.asList().get(i).equals(rListTerm.asList().get(i))) return false;
-        }
-        return true;
-    }
-
-    @Override
-    public int hashCode() {
-        return Objects.hash(asList(), unexpanded);
-    }
-}
+package reverseottr.model;
+
+import xyz.ottr.lutra.model.terms.ListTerm;
+import xyz.ottr.lutra.model.terms.Term;
+
+import java.util.List;
+
+/**RListTerms are Lutra ListTerms that remember whether they were generated by reverse list expansion.
+ * The elements are kept in an immutable TermList, so the hash code is only computed once.**/
+public class RListTerm extends ListTerm {
+    private final TermList termList;
+    private final boolean unexpanded;
+
+    public RListTerm(List<Term> termList, boolean unexpanded) {
+        this(TermList.copyOf(termList), unexpanded);
+    }
+
+    private RListTerm(TermList termList, boolean unexpanded) {
+        super(termList);
+        this.termList = termList;
+        this.unexpanded = unexpanded;
+    }
+
+    public RListTerm(List<Term> termList) {
+        this(termList, false);
+    }
+
+    public boolean isUnexpanded() {
+        return unexpanded;
+    }
+
+    @Override
+    public List<Term> asList() {
+        return this.termList;
+    }
+
+    /** Checks whether the list ends with TermRegistry.any_trail. **/
+    public boolean hasTrail() {
+        return this.termList.hasTrail();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RListTerm rListTerm = (RListTerm) o;
+        return this.unexpanded == rListTerm.unexpanded && this.termList.equals(rListTerm.termList);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.termList.hashCode() + Boolean.hashCode(this.unexpanded);
+    }
+}
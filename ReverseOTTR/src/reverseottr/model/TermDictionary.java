@@ -0,0 +1,111 @@
+package reverseottr.model;
+
+import xyz.ottr.lutra.model.terms.*;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns dense integer ids to terms, such that mappings can store and compare their values as integers.
+ *
+ * IRIs, literals, blank nodes and placeholders are encoded the first time they are seen,
+ * and all none-terms share the id NONE. Lists are only encoded if they are added explicitly,
+ * as is done for the lists of a graph when it is read. Other terms, such as the lists generated
+ * by reverse list expansion, are not encoded and are kept as terms by mappings.
+ *
+ * A dictionary is owned by an Evaluator, which builds its mappings with builders of the dictionary,
+ * see builder, and passes it to the triple index it reads the graph into. Mappings built with
+ * Mapping.builder keep their values as terms. A mapping refers to the dictionary of its ids, so the
+ * dictionary is released together with the Evaluator and the mappings built by it.**/
+public final class TermDictionary {
+
+    public static final int NULL = -1;
+    public static final int UNENCODED = -2;
+    public static final int NONE = 0;
+
+    private static final Term none = new NoneTerm();
+
+    private final Map<Term, Integer> ids = new ConcurrentHashMap<>();
+    private volatile Term[] terms = new Term[64];
+    private volatile int[] hashes = new int[64];
+    private int size = 0;
+
+    public TermDictionary() {
+        append(none);
+    }
+
+    /** A builder of mappings that take their ids from this dictionary. **/
+    public Mapping.Builder builder() {
+        return Mapping.builder(this);
+    }
+
+    /**
+     * @return The id of the term, NULL if the term is null, or UNENCODED if the term
+     * is a list or another kind of term that has not been added to the dictionary.**/
+    public int encode(Term term) {
+        if (term == null) return NULL;
+
+        if (term instanceof NoneTerm) return NONE;
+
+        Integer id = this.ids.get(term);
+        if (id != null) return id;
+
+        if (term instanceof IRITerm || term instanceof LiteralTerm
+                || term instanceof BlankNodeTerm || term instanceof Placeholder) {
+            return add(term);
+        }
+
+        return UNENCODED;
+    }
+
+    /** Adds a term of any kind to the dictionary, unless it is already added.
+     * @return The id of the term. **/
+    public int add(Term term) {
+        if (term instanceof NoneTerm) return NONE;
+
+        return this.ids.computeIfAbsent(term, this::append);
+    }
+
+    private synchronized int append(Term term) {
+        if (this.size == this.terms.length) {
+            this.hashes = Arrays.copyOf(this.hashes, this.size * 2);
+            this.terms = Arrays.copyOf(this.terms, this.size * 2);
+        }
+
+        this.hashes[this.size] = hash(term);
+        this.terms[this.size] = term;
+        return this.size++;
+    }
+
+    /** @return The term with the given id, or null if the id is NULL. **/
+    public Term decode(int id) {
+        if (id == NULL) return null;
+        return this.terms[id];
+    }
+
+    /** @return The hash of the term with the given id, as given by hash(Term). **/
+    public int hash(int id) {
+        if (id == NULL) return 0;
+        return this.hashes[id];
+    }
+
+    /** @return The number of terms in the dictionary. **/
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /** The hash of a term, where all none-terms have the same hash, as they have the same id. **/
+    public static int hash(Term term) {
+        if (term == null) return 0;
+        if (term instanceof NoneTerm) return NONE;
+        return term.hashCode();
+    }
+
+    /** Whether two terms are equal, where all none-terms are equal, as they have the same id. **/
+    public static boolean equal(Term a, Term b) {
+        if (a instanceof NoneTerm) return b instanceof NoneTerm;
+        return Objects.equals(a, b);
+    }
+}
@@ -0,0 +1,113 @@
+package reverseottr.model;
+
+import xyz.ottr.lutra.model.terms.Term;
+
+import java.util.*;
+
+/**
+ * An immutable list of terms backed by an array, used as the elements of list terms.
+ *
+ * Sublists and prefixes share the array of the list they are taken from, and the hash code
+ * and whether the list ends with TermRegistry.any_trail are computed once.**/
+public final class TermList extends AbstractList<Term> implements RandomAccess {
+
+    private static final TermList EMPTY = new TermList(new Term[0], 0, 0);
+
+    private final Term[] terms;
+    private final int offset;
+    private final int size;
+    private final boolean trail;
+    private int hash;
+
+    private TermList(Term[] terms, int offset, int size) {
+        this.terms = terms;
+        this.offset = offset;
+        this.size = size;
+        this.trail = size > 0 && terms[offset + size - 1].equals(TermRegistry.any_trail);
+    }
+
+    public static TermList empty() {
+        return EMPTY;
+    }
+
+    public static TermList of(Term... terms) {
+        return terms.length == 0 ? EMPTY : new TermList(terms.clone(), 0, terms.length);
+    }
+
+    /** The terms of a list, which is not copied if it is already a TermList. **/
+    public static TermList copyOf(List<Term> list) {
+        if (list instanceof TermList) return (TermList) list;
+        if (list.isEmpty()) return EMPTY;
+
+        Term[] terms = list.toArray(new Term[0]);
+        return new TermList(terms, 0, terms.length);
+    }
+
+    /** Checks whether the last term of the list is TermRegistry.any_trail. **/
+    public boolean hasTrail() {
+        return this.trail;
+    }
+
+    /** The list with one more term at the end. **/
+    public TermList append(Term term) {
+        Term[] terms = Arrays.copyOfRange(this.terms, this.offset, this.offset + this.size + 1);
+        terms[this.size] = term;
+        return new TermList(terms, 0, terms.length);
+    }
+
+    /** The first terms of the list, sharing the array of this list. **/
+    public TermList prefix(int length) {
+        return subList(0, length);
+    }
+
+    @Override
+    public TermList subList(int fromIndex, int toIndex) {
+        Objects.checkFromToIndex(fromIndex, toIndex, this.size);
+        if (fromIndex == 0 && toIndex == this.size) return this;
+        if (fromIndex == toIndex) return EMPTY;
+        return new TermList(this.terms, this.offset + fromIndex, toIndex - fromIndex);
+    }
+
+    @Override
+    public Term get(int index) {
+        Objects.checkIndex(index, this.size);
+        return this.terms[this.offset + index];
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Object[] toArray() {
+        return Arrays.copyOfRange(this.terms, this.offset, this.offset + this.size, Object[].class);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = this.hash;
+        if (h == 0) {
+            h = 1;
+            for (int i = this.offset; i < this.offset + this.size; i++) {
+                h = 31 * h + this.terms[i].hashCode();
+            }
+            this.hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TermList)) return super.equals(o);
+
+        TermList other = (TermList) o;
+        if (this.size != other.size || hashCode() != other.hashCode()) return false;
+
+        for (int i = 0; i < this.size; i++) {
+            if (!this.terms[this.offset + i].equals(other.terms[other.offset + i])) return false;
+        }
+        return true;
+    }
+}
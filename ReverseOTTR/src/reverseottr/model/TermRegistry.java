@@ -1,185 +1,442 @@
-package reverseottr.model;
-
-import reverseottr.model.Placeholder;
-import xyz.ottr.lutra.model.Parameter;
-import xyz.ottr.lutra.model.terms.*;
-
-import java.util.*;
-
-/**
- * Encodes the partial order on ground terms, as defined in the Reverse OTTR semantics.**/
-public enum TermRegistry {
-    ;
-
-    public static final String ph_ns = "http://example.org/placeholder/";
-    private static final String any_IRI = ph_ns + "any";
-    private static final String any_nb_IRI = ph_ns + "any-nb";
-    private static final String any_no_IRI = ph_ns + "any-no";
-    private static final String any_nbno_IRI = ph_ns + "any-nbno";
-    private static final String any_trail_IRI = ph_ns + "any-trail";
-
-    public static final Term any = new Placeholder(any_IRI);
-    public static final Term any_nb = new Placeholder(any_nb_IRI);
-    public static final Term any_no = new Placeholder(any_no_IRI);
-    public static final Term any_nbno = new Placeholder(any_nbno_IRI);
-    public static final Term any_trail = new Placeholder(any_trail_IRI);
-
-    public static final Set<Mapping> lattice = populateLattice();
-
-    public static Term GLB(Term t1, Term t2) {
-        if (lessOrEqual(t1, t2)) return t1;
-
-        if (lessOrEqual(t2, t1)) return t2;
-
-        if (t1 instanceof ListTerm && t2 instanceof ListTerm) {
-            if (t1.getIdentifier().equals(t2.getIdentifier())) return t1;
-
-            List<Term> list = GLBList(((ListTerm) t1).asList(), ((ListTerm) t2).asList());
-            if (list == null) return null;
-
-            if (isUnexpanded(t1) && !isUnexpanded(t2))
-                return t2;
-
-            if (isUnexpanded(t2) && !isUnexpanded(t1))
-                return t1;
-
-            if (isUnexpanded(t1) && isUnexpanded(t2))
-                return new RListTerm(list, true);
-
-            return null;
-        }
-
-        if ((t1.equals(any_nb) && t2.equals(any_nb)) ||
-                (t2.equals(any_nb) && t1.equals(any_nb))) {
-            return any_nbno;
-        }
-
-        return null;
-    }
-
-    private static List<Term> GLBList(List<Term> l1, List<Term> l2) {
-
-        if (l1.isEmpty() && l2.isEmpty()) return l1;
-
-        if (l1.isEmpty() && !l2.get(l2.size() - 1).equals(any_trail)) return null;
-
-        if (l2.isEmpty() && !l1.get(l1.size() - 1).equals(any_trail)) return null;
-
-        if ((l1.size() < l2.size() && !l1.get(l1.size() - 1).equals(any_trail)) ||
-                (l2.size() < l1.size() && !l2.get(l2.size() - 1).equals(any_trail)))
-            return null;
-
-        int size = Math.min(l1.size(), l2.size());
-        List<Term> resultList = new LinkedList<>();
-
-        for (int i = 0; i < size - 1; i++) {
-            Term currentTerm = GLB(l1.get(i), l2.get(i));
-            if (currentTerm == null) return null;
-            resultList.add(currentTerm);
-        }
-
-        List<Term> longer = l1;
-        List<Term> shorter = l2;
-
-        if (l1.get(l1.size() - 1).equals(any_trail)) {
-            shorter = l1;
-            longer = l2;
-
-        } else if (!l2.get(l2.size() - 1).equals(any_trail)) {
-            Term lastTerm = GLB(l1.get(l1.size() - 1), l2.get(l2.size() - 1));
-            if (lastTerm == null) return null;
-            resultList.add(lastTerm);
-        }
-
-        for (int i = shorter.size() - 1; i < longer.size(); i++) {
-            resultList.add(longer.get(i));
-        }
-
-        return resultList;
-    }
-
-    public static boolean lessOrEqual(Term t1, Term t2) {
-        if (t1.equals(t2)) return true;
-
-        if (lattice.contains(new Mapping(t1, t2))) return true;
-
-        if (t1 instanceof NoneTerm && t2 instanceof NoneTerm) return true;
-
-        if (t1 instanceof NoneTerm && lessOrEqual(any_nb, t2)) return true;
-
-        if (t1 instanceof BlankNodeTerm && lessOrEqual(any_no, t2)) return true;
-
-        if (t1 instanceof IRITerm && lessOrEqual(any_nbno, t2)) return true;
-
-        if (t1 instanceof LiteralTerm && lessOrEqual(any_nbno, t2)) return true;
-
-        if (t1 instanceof ListTerm && lessOrEqual(any_nbno, t2)) return true;
-
-        if (t1 instanceof ListTerm && t2 instanceof ListTerm)
-            return lessOrEqualList((ListTerm) t1, (ListTerm) t2);
-
-        if (t1 instanceof Placeholder && t2 instanceof Placeholder) {
-            for (Mapping map : lattice) {
-                if (map.containsVar(t1)) {
-                    return lessOrEqual(map.get(t1), t2);
-                }
-            }
-        }
-
-        return false;
-    }
-
-    private static boolean lessOrEqualList(ListTerm t1, ListTerm t2) {
-        if (t1.getIdentifier().equals(t2.getIdentifier())) return true;
-
-        if (!isUnexpanded(t2)) return false;
-
-        List<Term> list1 = t1.asList();
-        List<Term> list2 = t2.asList();
-
-        if (list1.isEmpty() && list2.isEmpty()) return true;
-
-        if (list1.size() < list2.size()) return false;
-
-        if (list2.isEmpty() && !list1.isEmpty()) return false;
-
-        if (list1.size() > list2.size() &&
-                !list2.get(list2.size() - 1).equals(any_trail))
-            return false;
-
-        for (int i = 0; i < list2.size(); i++) {
-            if (!lessOrEqual(list1.get(i), list2.get(i))) {
-                if (!list2.get(i).equals(any_trail))
-                    return false;
-            }
-        }
-
-        return true;
-    }
-
-    public static boolean isUnexpanded(Term t) {
-        return t instanceof RListTerm && ((RListTerm) t).isUnexpanded();
-    }
-
-    public static Term paramPlaceholder(Parameter parameter) {
-        if (parameter.isNonBlank() && !parameter.isOptional()) {
-            return any_nbno;
-        } else if (parameter.isNonBlank()) {
-            return any_nb;
-        } else if (!parameter.isOptional()) {
-            return any_no;
-        } else {
-            return any;
-        }
-    }
-
-    private static Set<Mapping> populateLattice() {
-        Set<Mapping> maps = new HashSet<>();
-        maps.add(new Mapping(any_nb, any));
-        maps.add(new Mapping(any_no, any));
-        maps.add(new Mapping(any_nbno, any_nb));
-        maps.add(new Mapping(any_nbno, any_no));
-
-        return maps;
-    }
-}
+package reverseottr.model;
+
+import reverseottr.model.Placeholder;
+import xyz.ottr.lutra.model.Parameter;
+import xyz.ottr.lutra.model.terms.*;
+
+import java.util.*;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+
+/**
+ * Encodes the partial order on ground terms, as defined in the Reverse OTTR semantics.**/
+public enum TermRegistry {
+    ;
+
+    public static final String ph_ns = "http://example.org/placeholder/";
+    private static final String any_IRI = ph_ns + "any";
+    private static final String any_nb_IRI = ph_ns + "any-nb";
+    private static final String any_no_IRI = ph_ns + "any-no";
+    private static final String any_nbno_IRI = ph_ns + "any-nbno";
+    private static final String any_trail_IRI = ph_ns + "any-trail";
+
+    public static final Term any = new Placeholder(any_IRI);
+    public static final Term any_nb = new Placeholder(any_nb_IRI);
+    public static final Term any_no = new Placeholder(any_no_IRI);
+    public static final Term any_nbno = new Placeholder(any_nbno_IRI);
+    public static final Term any_trail = new Placeholder(any_trail_IRI);
+
+    private static final Term none = new NoneTerm();
+
+    public static final Set<Mapping> lattice = populateLattice();
+
+    private static final Term[] placeholders = { any, any_nb, any_no, any_nbno, any_trail };
+
+    // Kinds of terms that are not placeholders, numbered after the placeholders.
+    private static final int NONE = placeholders.length;
+    private static final int BLANK = NONE + 1;
+    private static final int GROUND = NONE + 2;
+    private static final int LIST = NONE + 3;
+    private static final int OTHER = NONE + 4;
+
+    // below[kind][p] is true if terms of the kind are less than or equal to placeholder p.
+    private static final boolean[][] below = populateBelow();
+
+    public static Term GLB(Term t1, Term t2) {
+        if (lessOrEqual(t1, t2)) return t1;
+
+        if (lessOrEqual(t2, t1)) return t2;
+
+        if (t1 instanceof DefaultOrNone) return GLBDefaultOrNone((DefaultOrNone) t1, t2);
+
+        if (t2 instanceof DefaultOrNone) return GLBDefaultOrNone((DefaultOrNone) t2, t1);
+
+        if (t1 instanceof RBagTerm && t2 instanceof ListTerm) return GLBBag((RBagTerm) t1, (ListTerm) t2);
+
+        if (t2 instanceof RBagTerm && t1 instanceof ListTerm) return GLBBag((RBagTerm) t2, (ListTerm) t1);
+
+        if (t1 instanceof ListTerm && t2 instanceof ListTerm) {
+            if (t1.getIdentifier().equals(t2.getIdentifier())) return t1;
+
+            List<Term> list = GLBList(((ListTerm) t1).asList(), ((ListTerm) t2).asList());
+            if (list == null) return null;
+
+            if (isUnexpanded(t1) && !isUnexpanded(t2))
+                return t2;
+
+            if (isUnexpanded(t2) && !isUnexpanded(t1))
+                return t1;
+
+            if (isUnexpanded(t1) && isUnexpanded(t2))
+                return new RListTerm(list, true);
+
+            return null;
+        }
+
+        return null;
+    }
+
+    // The GLB of the default value and of none with the other term, which is none if the
+    // default value has no GLB with it, and stands for the GLB or none otherwise.
+    private static Term GLBDefaultOrNone(DefaultOrNone t1, Term t2) {
+        Term valueGLB = GLB(t1.getValue(), t2);
+        Term noneGLB = lessOrEqual(none, t2) ? none : null;
+
+        if (valueGLB == null) return noneGLB;
+
+        if (noneGLB == null) return valueGLB;
+
+        return new DefaultOrNone(valueGLB);
+    }
+
+    /**
+     * The maximal lower bounds of two terms. A bag and a list or bag may have several, one for
+     * each way of matching the elements of the bag with the elements of the other term, while
+     * other terms have at most one, which is their GLB.
+     *
+     * @return The lower bounds that are not less than another, which is empty if there are none.**/
+    public static Set<Term> GLBs(Term t1, Term t2) {
+        if (lessOrEqual(t1, t2)) return Collections.singleton(t1);
+
+        if (lessOrEqual(t2, t1)) return Collections.singleton(t2);
+
+        if (t1 instanceof RBagTerm && t2 instanceof ListTerm) return GLBsBag((RBagTerm) t1, (ListTerm) t2);
+
+        if (t2 instanceof RBagTerm && t1 instanceof ListTerm) return GLBsBag((RBagTerm) t2, (ListTerm) t1);
+
+        Term glb = GLB(t1, t2);
+        return glb == null ? Collections.emptySet() : Collections.singleton(glb);
+    }
+
+    // The lower bounds of a bag and a list or bag given by every matching of their elements,
+    // without the ones that are less than another. The order of a list is kept.
+    private static Set<Term> GLBsBag(RBagTerm bag, ListTerm other) {
+        if (!(other instanceof RBagTerm) && !isUnexpanded(other)) return Collections.emptySet();
+
+        List<Term> otherElements = other.asList();
+        if (bag.asList().size() != otherElements.size() || otherElements.contains(any_trail)) {
+            return Collections.emptySet();
+        }
+
+        Set<Term> bounds = new LinkedHashSet<>();
+        matchAll(otherElements, new HashMap<>(bag.getCounts()), new ArrayList<>(), lowerBound -> bounds.add(
+                other instanceof RBagTerm ? new RBagTerm(lowerBound) : new RListTerm(lowerBound, true)));
+
+        Set<Term> result = new LinkedHashSet<>();
+        for (Term bound : bounds) {
+            if (bounds.stream().noneMatch(greater -> !greater.equals(bound) && lessOrEqual(bound, greater))) {
+                result.add(bound);
+            }
+        }
+
+        return result;
+    }
+
+    // Matches the next element of the list with each distinct element of the bag that is left,
+    // and gives the lower bound of every complete matching.
+    private static void matchAll(List<Term> list, Map<Term, Integer> left, List<Term> prefix,
+                                 Consumer<List<Term>> consumer) {
+        if (prefix.size() == list.size()) {
+            consumer.accept(new ArrayList<>(prefix));
+            return;
+        }
+
+        Term element = list.get(prefix.size());
+        for (Term term : new ArrayList<>(left.keySet())) {
+            int count = left.get(term);
+            if (count == 0) continue;
+
+            left.put(term, count - 1);
+            for (Term glb : GLBs(element, term)) {
+                prefix.add(glb);
+                matchAll(list, left, prefix, consumer);
+                prefix.remove(prefix.size() - 1);
+            }
+            left.put(term, count);
+        }
+    }
+
+    // A lower bound of a bag and a list or bag, found by matching the elements of the bag with
+    // elements of the other term that they have a GLB with. The order of a list is kept.
+    // There may be other lower bounds that are not less than this one, see GLBs.
+    private static Term GLBBag(RBagTerm bag, ListTerm other) {
+        if (!(other instanceof RBagTerm) && !isUnexpanded(other)) return null;
+
+        List<Term> elements = bag.asList();
+        List<Term> otherElements = other.asList();
+        if (elements.size() != otherElements.size() || otherElements.contains(any_trail)) return null;
+
+        int[] matching = matchElements(otherElements, elements, (t1, t2) -> GLB(t1, t2) != null);
+        if (matching == null) return null;
+
+        List<Term> resultList = new ArrayList<>(otherElements.size());
+        for (int i = 0; i < otherElements.size(); i++) {
+            resultList.add(GLB(otherElements.get(i), elements.get(matching[i])));
+        }
+
+        return other instanceof RBagTerm ? new RBagTerm(resultList) : new RListTerm(resultList, true);
+    }
+
+    private static List<Term> GLBList(List<Term> l1, List<Term> l2) {
+
+        if (l1.isEmpty() && l2.isEmpty()) return l1;
+
+        boolean trail1 = hasTrail(l1);
+        boolean trail2 = hasTrail(l2);
+
+        if (l1.isEmpty() && !trail2) return null;
+
+        if (l2.isEmpty() && !trail1) return null;
+
+        if ((l1.size() < l2.size() && !trail1) || (l2.size() < l1.size() && !trail2))
+            return null;
+
+        int size = Math.min(l1.size(), l2.size());
+        List<Term> resultList = new ArrayList<>(Math.max(l1.size(), l2.size()));
+
+        for (int i = 0; i < size - 1; i++) {
+            Term currentTerm = GLB(l1.get(i), l2.get(i));
+            if (currentTerm == null) return null;
+            resultList.add(currentTerm);
+        }
+
+        List<Term> longer = l1;
+        List<Term> shorter = l2;
+
+        if (trail1) {
+            shorter = l1;
+            longer = l2;
+
+        } else if (!trail2) {
+            Term lastTerm = GLB(l1.get(l1.size() - 1), l2.get(l2.size() - 1));
+            if (lastTerm == null) return null;
+            resultList.add(lastTerm);
+        }
+
+        for (int i = shorter.size() - 1; i < longer.size(); i++) {
+            resultList.add(longer.get(i));
+        }
+
+        return resultList;
+    }
+
+    /** Checks whether a list ends with any_trail, which is cached by TermLists. **/
+    public static boolean hasTrail(List<Term> list) {
+        if (list instanceof TermList) return ((TermList) list).hasTrail();
+        return !list.isEmpty() && list.get(list.size() - 1).equals(any_trail);
+    }
+
+    /** Checks whether t1 is less than or equal to t2 in the partial order. Only comparing
+     * two lists allocates, other comparisons are lookups in a precomputed table. **/
+    public static boolean lessOrEqual(Term t1, Term t2) {
+        if (t1.equals(t2)) return true;
+
+        if (t2 instanceof DefaultOrNone) {
+            Term value = ((DefaultOrNone) t2).getValue();
+            if (t1 instanceof DefaultOrNone) return lessOrEqual(((DefaultOrNone) t1).getValue(), value);
+            return t1 instanceof NoneTerm || lessOrEqual(t1, value);
+        }
+
+        if (t1 instanceof DefaultOrNone) {
+            return lessOrEqual(((DefaultOrNone) t1).getValue(), t2) && lessOrEqual(none, t2);
+        }
+
+        int placeholder = placeholderIndex(t2);
+        if (placeholder >= 0) return below[kind(t1)][placeholder];
+
+        if (t1 instanceof NoneTerm && t2 instanceof NoneTerm) return true;
+
+        if (t1 instanceof ListTerm && t2 instanceof RBagTerm)
+            return lessOrEqualBag((ListTerm) t1, (RBagTerm) t2);
+
+        if (t1 instanceof RBagTerm && t2 instanceof ListTerm)
+            return lessOrEqualBagList((RBagTerm) t1, (ListTerm) t2);
+
+        if (t1 instanceof ListTerm && t2 instanceof ListTerm)
+            return lessOrEqualList((ListTerm) t1, (ListTerm) t2);
+
+        return false;
+    }
+
+    // The index of a placeholder in the placeholders-array, or -1 for other terms.
+    private static int placeholderIndex(Term t) {
+        if (!(t instanceof Placeholder)) return -1;
+
+        for (int i = 0; i < placeholders.length; i++) {
+            if (placeholders[i] == t) return i;
+        }
+
+        for (int i = 0; i < placeholders.length; i++) {
+            if (placeholders[i].equals(t)) return i;
+        }
+
+        return -1;
+    }
+
+    private static int kind(Term t) {
+        int placeholder = placeholderIndex(t);
+        if (placeholder >= 0) return placeholder;
+
+        if (t instanceof NoneTerm) return NONE;
+        if (t instanceof BlankNodeTerm) return BLANK;
+        if (t instanceof IRITerm || t instanceof LiteralTerm) return GROUND;
+        if (t instanceof ListTerm) return LIST;
+        return OTHER;
+    }
+
+    // A list or bag is less than or equal to a bag if its elements can be matched with
+    // the elements of the bag they are less than or equal to.
+    private static boolean lessOrEqualBag(ListTerm t1, RBagTerm t2) {
+        List<Term> list1 = t1.asList();
+        List<Term> list2 = t2.asList();
+
+        if (list1.size() != list2.size() || list1.contains(any_trail)) return false;
+
+        return matchElements(list1, list2, TermRegistry::lessOrEqual) != null;
+    }
+
+    // A bag is less than or equal to a list if every ordering of it is, i.e. if the list
+    // with only one of the elements of the bag is, for each of the elements.
+    private static boolean lessOrEqualBagList(RBagTerm t1, ListTerm t2) {
+        int size = t1.asList().size();
+
+        for (Term term : t1.getCounts().keySet()) {
+            if (!lessOrEqualList(new RListTerm(Collections.nCopies(size, term), true), t2)) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Matches every element of a list with a distinct element of another list of the same size,
+     * such that the two are related, by finding augmenting paths as in bipartite matching.
+     *
+     * @return The index in l2 of the element matched with each element of l1, or null if
+     * there is no such matching.**/
+    private static int[] matchElements(List<Term> l1, List<Term> l2, BiPredicate<Term, Term> related) {
+        int[] matched = new int[l2.size()];
+        Arrays.fill(matched, -1);
+
+        for (int i = 0; i < l1.size(); i++) {
+            if (!augment(i, l1, l2, related, matched, new boolean[l2.size()])) return null;
+        }
+
+        int[] result = new int[l1.size()];
+        for (int j = 0; j < matched.length; j++) {
+            result[matched[j]] = j;
+        }
+
+        return result;
+    }
+
+    private static boolean augment(int i, List<Term> l1, List<Term> l2, BiPredicate<Term, Term> related,
+                                   int[] matched, boolean[] visited) {
+        for (int j = 0; j < l2.size(); j++) {
+            if (visited[j] || !related.test(l1.get(i), l2.get(j))) continue;
+            visited[j] = true;
+
+            if (matched[j] < 0 || augment(matched[j], l1, l2, related, matched, visited)) {
+                matched[j] = i;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean lessOrEqualList(ListTerm t1, ListTerm t2) {
+        if (t1.getIdentifier().equals(t2.getIdentifier())) return true;
+
+        if (!isUnexpanded(t2)) return false;
+
+        List<Term> list1 = t1.asList();
+        List<Term> list2 = t2.asList();
+
+        if (list1.isEmpty() && list2.isEmpty()) return true;
+
+        if (list1.size() < list2.size()) return false;
+
+        if (list2.isEmpty() && !list1.isEmpty()) return false;
+
+        if (list1.size() > list2.size() && !hasTrail(list2))
+            return false;
+
+        for (int i = 0; i < list2.size(); i++) {
+            if (!lessOrEqual(list1.get(i), list2.get(i))) {
+                if (!list2.get(i).equals(any_trail))
+                    return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Ground terms are IRIs, literals and blank nodes. Two ground terms have a GLB
+     * if and only if they are equal, so they can be compared by hashing.**/
+    public static boolean isGround(Term t) {
+        return t instanceof IRITerm || t instanceof LiteralTerm || t instanceof BlankNodeTerm;
+    }
+
+    public static boolean isUnexpanded(Term t) {
+        return t instanceof RListTerm && ((RListTerm) t).isUnexpanded() || t instanceof RBagTerm;
+    }
+
+    public static Term paramPlaceholder(Parameter parameter) {
+        if (parameter.isNonBlank() && !parameter.isOptional()) {
+            return any_nbno;
+        } else if (parameter.isNonBlank()) {
+            return any_nb;
+        } else if (!parameter.isOptional()) {
+            return any_no;
+        } else {
+            return any;
+        }
+    }
+
+    /**
+     * Computes the order between placeholders as the reflexive and transitive closure of the
+     * lattice, and places none below any_nb, blank nodes below any_no, and IRIs, literals and
+     * lists below any_nbno.**/
+    private static boolean[][] populateBelow() {
+        boolean[][] result = new boolean[OTHER + 1][placeholders.length];
+
+        for (int i = 0; i < placeholders.length; i++) {
+            result[i][i] = true;
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Mapping edge : lattice) {
+                Term lower = edge.domain().iterator().next();
+                int from = placeholderIndex(lower);
+                int to = placeholderIndex(edge.get(lower));
+
+                for (int p = 0; p < placeholders.length; p++) {
+                    if (result[to][p] && !result[from][p]) {
+                        result[from][p] = true;
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        result[NONE] = result[placeholderIndex(any_nb)].clone();
+        result[BLANK] = result[placeholderIndex(any_no)].clone();
+        result[GROUND] = result[placeholderIndex(any_nbno)].clone();
+        result[LIST] = result[placeholderIndex(any_nbno)].clone();
+
+        return result;
+    }
+
+    private static Set<Mapping> populateLattice() {
+        Set<Mapping> maps = new HashSet<>();
+        maps.add(new Mapping(any_nb, any));
+        maps.add(new Mapping(any_no, any));
+        maps.add(new Mapping(any_nbno, any_nb));
+        maps.add(new Mapping(any_nbno, any_no));
+
+        return maps;
+    }
+}
@@ -0,0 +1,261 @@
+package reverseottr.model;
+
+import xyz.ottr.lutra.model.terms.Term;
+
+import java.util.*;
+
+/**
+ * An index over the triples of a graph, which is shared by the Triple and NullableTriple
+ * base templates. The triples are stored once as terms, and are read as mappings from the
+ * subject, predicate and object variables of a base template through views, that create
+ * the mappings when they are looked up.
+ *
+ * The triples are indexed by subject, predicate and object (SPO), by predicate, object
+ * and subject (POS) and by object, subject and predicate (OSP), such that the triples matching
+ * any combination of bound positions can be looked up without scanning the whole graph.
+ *
+ * The mappings of the views take their ids from the dictionary of the index, to which the
+ * lists of the triples are added when the triples are added.**/
+public class TripleIndex {
+
+    private final Set<Triple> triples = new HashSet<>();
+    private final Map<Term, Map<Term, List<Triple>>> spo = new HashMap<>();
+    private final Map<Term, Map<Term, List<Triple>>> pos = new HashMap<>();
+    private final Map<Term, Map<Term, List<Triple>>> osp = new HashMap<>();
+    private final TermDictionary dictionary;
+
+    /** @param dictionary The dictionary of the mappings of the views, or null to keep their values as terms. **/
+    public TripleIndex(TermDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public void add(Term s, Term p, Term o) {
+        Triple triple = new Triple(s, p, o);
+        if (!this.triples.add(triple)) return;
+
+        // Lists are only encoded if added, while other terms are encoded when put in a mapping.
+        if (this.dictionary != null) {
+            this.dictionary.add(s);
+            this.dictionary.add(o);
+        }
+
+        insert(this.spo, s, p, triple);
+        insert(this.pos, p, o, triple);
+        insert(this.osp, o, s, triple);
+    }
+
+    public void remove(Term s, Term p, Term o) {
+        Triple triple = new Triple(s, p, o);
+        if (!this.triples.remove(triple)) return;
+
+        delete(this.spo, s, p, triple);
+        delete(this.pos, p, o, triple);
+        delete(this.osp, o, s, triple);
+    }
+
+    /** Checks whether a term is the subject or object of a triple. **/
+    public boolean containsTerm(Term term) {
+        return this.spo.containsKey(term) || this.osp.containsKey(term);
+    }
+
+    /**
+     * Replaces a term in the subjects and objects of the triples, e.g. a blank node that turns
+     * out to be the head of a list when the list is read, see StreamingRDFToOTTR.**/
+    public void replace(Term term, Term replacement) {
+        List<Triple> affected = new ArrayList<>();
+        Map<Term, List<Triple>> bySubject = this.spo.get(term);
+        if (bySubject != null) bySubject.values().forEach(affected::addAll);
+        Map<Term, List<Triple>> byObject = this.osp.get(term);
+        if (byObject != null) byObject.values().forEach(affected::addAll);
+
+        // A triple with the term as both subject and object is found twice, and removed once.
+        for (Triple triple : affected) {
+            remove(triple.s, triple.p, triple.o);
+        }
+        for (Triple triple : affected) {
+            add(triple.s.equals(term) ? replacement : triple.s, triple.p,
+                    triple.o.equals(term) ? replacement : triple.o);
+        }
+    }
+
+    private static void insert(Map<Term, Map<Term, List<Triple>>> index,
+                               Term first, Term second, Triple triple) {
+        index.computeIfAbsent(first, k -> new HashMap<>())
+                .computeIfAbsent(second, k -> new ArrayList<>())
+                .add(triple);
+    }
+
+    private static void delete(Map<Term, Map<Term, List<Triple>>> index,
+                               Term first, Term second, Triple triple) {
+        Map<Term, List<Triple>> inner = index.get(first);
+        List<Triple> list = inner.get(second);
+        list.remove(triple);
+
+        if (list.isEmpty()) inner.remove(second);
+        if (inner.isEmpty()) index.remove(first);
+    }
+
+    public int size() {
+        return this.triples.size();
+    }
+
+    /**
+     * A view of the triples as mappings from the given variables.
+     *
+     * @param vars The subject, predicate and object variables, in that order.**/
+    public TripleStore view(List<Term> vars) {
+        return new View(vars);
+    }
+
+    private Collection<Triple> match(Term s, Term p, Term o) {
+        if (s != null && p != null && o != null) {
+            List<Triple> result = new ArrayList<>();
+            for (Triple triple : lookup(this.spo, s, p)) {
+                if (triple.o.equals(o)) result.add(triple);
+            }
+            return result;
+
+        } else if (s != null && p != null) {
+            return lookup(this.spo, s, p);
+
+        } else if (p != null && o != null) {
+            return lookup(this.pos, p, o);
+
+        } else if (o != null && s != null) {
+            return lookup(this.osp, o, s);
+
+        } else if (s != null) {
+            return lookup(this.spo, s);
+
+        } else if (p != null) {
+            return lookup(this.pos, p);
+
+        } else if (o != null) {
+            return lookup(this.osp, o);
+        }
+
+        return this.triples;
+    }
+
+    private static List<Triple> lookup(Map<Term, Map<Term, List<Triple>>> index,
+                                       Term first, Term second) {
+        return index.getOrDefault(first, Collections.emptyMap())
+                .getOrDefault(second, Collections.emptyList());
+    }
+
+    private static List<Triple> lookup(Map<Term, Map<Term, List<Triple>>> index, Term first) {
+        List<Triple> result = new ArrayList<>();
+        index.getOrDefault(first, Collections.emptyMap()).values().forEach(result::addAll);
+        return result;
+    }
+
+    private static final class Triple {
+        private final Term s;
+        private final Term p;
+        private final Term o;
+        private final int hash;
+
+        Triple(Term s, Term p, Term o) {
+            this.s = s;
+            this.p = p;
+            this.o = o;
+            this.hash = Objects.hash(s, p, o);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Triple)) return false;
+
+            Triple triple = (Triple) o;
+            return this.hash == triple.hash && this.s.equals(triple.s)
+                    && this.p.equals(triple.p) && this.o.equals(triple.o);
+        }
+    }
+
+    /** The triples as mappings from the variables of a base template. **/
+    private class View implements TripleStore {
+
+        private final Term sVar;
+        private final Term pVar;
+        private final Term oVar;
+        private final Set<Mapping> all = new AbstractSet<>() {
+            @Override
+            public Iterator<Mapping> iterator() {
+                Iterator<Triple> iterator = triples.iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Mapping next() {
+                        return toMapping(iterator.next());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return triples.size();
+            }
+
+            @Override
+            public boolean contains(Object object) {
+                if (!(object instanceof Mapping)) return false;
+
+                Mapping mapping = (Mapping) object;
+                return mapping.domain().size() == 3 && mapping.containsVar(sVar)
+                        && mapping.containsVar(pVar) && mapping.containsVar(oVar) && triples.contains(new Triple(
+                        mapping.get(sVar), mapping.get(pVar), mapping.get(oVar)));
+            }
+        };
+
+        View(List<Term> vars) {
+            this.sVar = vars.get(0);
+            this.pVar = vars.get(1);
+            this.oVar = vars.get(2);
+        }
+
+        private Mapping toMapping(Triple triple) {
+            return Mapping.builder(dictionary)
+                    .put(this.sVar, triple.s)
+                    .put(this.pVar, triple.p)
+                    .put(this.oVar, triple.o)
+                    .build();
+        }
+
+        @Override
+        public Collection<Mapping> match(Term s, Term p, Term o) {
+            if (s == null && p == null && o == null) return this.all;
+
+            Collection<Triple> matches = TripleIndex.this.match(s, p, o);
+
+            List<Mapping> result = new ArrayList<>(matches.size());
+            matches.forEach(triple -> result.add(toMapping(triple)));
+            return result;
+        }
+
+        /** All the triples, as mappings that are created while the set is iterated. **/
+        @Override
+        public Set<Mapping> all() {
+            return this.all;
+        }
+
+        @Override
+        public int size() {
+            return triples.size();
+        }
+
+        @Override
+        public List<Term> getVariables() {
+            return Arrays.asList(this.sVar, this.pVar, this.oVar);
+        }
+    }
+}
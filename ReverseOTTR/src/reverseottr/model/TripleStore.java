@@ -0,0 +1,30 @@
+package reverseottr.model;
+
+import xyz.ottr.lutra.model.terms.Term;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The triples of a graph, as mappings from the subject, predicate and object variables
+ * of a base template to terms, that can be looked up by triple patterns.**/
+public interface TripleStore {
+
+    /**
+     * Finds the mappings matching a triple pattern.
+     *
+     * @param s The subject, or null if the subject is unbound.
+     * @param p The predicate, or null if the predicate is unbound.
+     * @param o The object, or null if the object is unbound.
+     * @return The mappings whose subject, predicate and object are equal to the bound positions.**/
+    Collection<Mapping> match(Term s, Term p, Term o);
+
+    /** All the mappings in the store. **/
+    Set<Mapping> all();
+
+    int size();
+
+    /** The subject, predicate and object variables, in that order. **/
+    List<Term> getVariables();
+}
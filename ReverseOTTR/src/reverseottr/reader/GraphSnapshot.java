@@ -0,0 +1,781 @@
+package reverseottr.reader;
+
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDFBase;
+import reverseottr.model.Mapping;
+import reverseottr.model.TermDictionary;
+import reverseottr.model.TripleStore;
+import xyz.ottr.lutra.model.terms.*;
+import xyz.ottr.lutra.wottr.parser.WTermParser;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A binary snapshot of a graph, that is written once from an RDF file and then opened
+ * by mapping it into memory, such that an Evaluator can start without parsing the file.
+ *
+ * The snapshot consists of a dictionary of the RDF terms of the graph, a hash table from
+ * terms to their number in the dictionary, and the triples as numbers sorted by subject,
+ * predicate and object (SPO), by predicate, object and subject (POS) and by object, subject
+ * and predicate (OSP). Triples with rdf:first or rdf:rest as predicate are kept in a separate
+ * table, and are used to convert lists, as in RDFToOTTR. Terms are only converted to Lutra
+ * terms when a triple pattern reaches them, so the operating system pages data in on demand.
+ *
+ * The size and the modification time of the source file are stored, such that a snapshot
+ * that is older than its source file can be detected when it is loaded, as well as a SHA-256
+ * digest of the whole file, which verify compares with the file.**/
+public class GraphSnapshot {
+
+    private static final int MAGIC = 0x524f5454;
+    private static final int VERSION = 3;
+    private static final int FINGERPRINT_LONGS = 5;
+
+    private static final byte URI = 1;
+    private static final byte BLANK = 2;
+    private static final byte LITERAL = 3;
+
+    // The positions of the fields of the header.
+    private static final int FINGERPRINT = 8;
+    private static final int MODIFIED = FINGERPRINT + 8 * FINGERPRINT_LONGS;
+    private static final int COUNTS = MODIFIED + 8;
+    private static final int SECTIONS = COUNTS + 16;
+    private static final int HEADER_SIZE = SECTIONS + 8 * 8;
+
+    private static final int SPO = 0;
+    private static final int POS = 1;
+    private static final int OSP = 2;
+
+    // ORDER[table][j] is the position in the triple (subject, predicate, object) of the j-th number.
+    private static final int[][] ORDER = { { 0, 1, 2 }, { 1, 2, 0 }, { 2, 0, 1 } };
+
+    private final MappedFile file;
+    private final long[] fingerprint;
+    private final long modified;
+    private final int tripleCount;
+    private final int hashCapacity;
+    private final long nodeOffsets;
+    private final long hashTable;
+    private final long[] tables;
+    private final long statisticsPosition;
+
+    private final Model lists = ModelFactory.createDefaultModel();
+    private final Map<Integer, Term> terms = new ConcurrentHashMap<>();
+
+    private GraphSnapshot(MappedFile file) throws IOException {
+        this.file = file;
+
+        if (file.getInt(0) != MAGIC || file.getInt(4) != VERSION) {
+            throw new IOException("Not a graph snapshot of version " + VERSION + ".");
+        }
+
+        this.fingerprint = new long[FINGERPRINT_LONGS];
+        for (int i = 0; i < FINGERPRINT_LONGS; i++) {
+            this.fingerprint[i] = file.getLong(FINGERPRINT + 8L * i);
+        }
+        this.modified = file.getLong(MODIFIED);
+        this.tripleCount = file.getInt(COUNTS + 4);
+        int listTripleCount = file.getInt(COUNTS + 8);
+        this.hashCapacity = file.getInt(COUNTS + 12);
+
+        this.nodeOffsets = file.getLong(SECTIONS);
+        this.hashTable = file.getLong(SECTIONS + 16);
+        this.tables = new long[] { file.getLong(SECTIONS + 24), file.getLong(SECTIONS + 32),
+                file.getLong(SECTIONS + 40) };
+        long listTable = file.getLong(SECTIONS + 48);
+        this.statisticsPosition = file.getLong(SECTIONS + 56);
+
+        for (int i = 0; i < listTripleCount; i++) {
+            long position = listTable + 12L * i;
+            this.lists.getGraph().add(Triple.create(node(file.getInt(position)),
+                    node(file.getInt(position + 4)), node(file.getInt(position + 8))));
+        }
+    }
+
+    /**
+     * Opens a snapshot of an RDF file, and writes the snapshot first if it does not exist
+     * or is older than the file.
+     *
+     * @param sourceFile The RDF file.
+     * @param snapshotFile The snapshot of the RDF file.**/
+    public static GraphSnapshot load(String sourceFile, Path snapshotFile) throws IOException {
+        if (Files.exists(snapshotFile)) {
+            GraphSnapshot snapshot = open(snapshotFile);
+            if (!snapshot.isStale(sourceFile)) return snapshot;
+        }
+
+        write(sourceFile, snapshotFile);
+        return open(snapshotFile);
+    }
+
+    /** Opens a snapshot by mapping it into memory. Only the list triples are read at once. **/
+    public static GraphSnapshot open(Path snapshotFile) throws IOException {
+        return new GraphSnapshot(new MappedFile(snapshotFile));
+    }
+
+    /**
+     * Checks whether the RDF file has changed since the snapshot was written from it, by its size
+     * and modification time. The file itself is not read, see verify.**/
+    public boolean isStale(String sourceFile) throws IOException {
+        Path path = Paths.get(sourceFile);
+
+        return Files.size(path) != this.fingerprint[0] || modified(path) != this.modified;
+    }
+
+    /**
+     * Checks whether the snapshot was written from the current content of the RDF file, by the
+     * SHA-256 digest of the whole file, which is read to compute it.**/
+    public boolean verify(String sourceFile) throws IOException {
+        return Arrays.equals(this.fingerprint, fingerprint(Paths.get(sourceFile)));
+    }
+
+    public int size() {
+        return this.tripleCount;
+    }
+
+    /**
+     * A view of the triples of the snapshot as mappings from the given variables, which take their
+     * ids from the dictionary, or null to keep their values as terms.**/
+    public TripleStore view(List<Term> vars, TermDictionary dictionary) {
+        return new View(vars, dictionary);
+    }
+
+    /** The number of distinct subjects of all triples. **/
+    public int distinctSubjects() {
+        return this.file.getInt(this.statisticsPosition);
+    }
+
+    /** The number of distinct objects of all triples. **/
+    public int distinctObjects() {
+        return this.file.getInt(this.statisticsPosition + 4);
+    }
+
+    /** The number of triples, distinct subjects and distinct objects, in that order, for each predicate. **/
+    public Map<Term, int[]> predicateStatistics() {
+        Map<Term, int[]> result = new HashMap<>();
+        int predicates = this.file.getInt(this.statisticsPosition + 8);
+
+        for (int i = 0; i < predicates; i++) {
+            long position = this.statisticsPosition + 12 + 16L * i;
+            result.put(term(this.file.getInt(position)), new int[] { this.file.getInt(position + 4),
+                    this.file.getInt(position + 8), this.file.getInt(position + 12) });
+        }
+
+        return result;
+    }
+
+    private Term term(int id) {
+        return this.terms.computeIfAbsent(id, k -> WTermParser.toTerm(this.lists.asRDFNode(node(k))).get());
+    }
+
+    // A term of a triple, where lists are added to the dictionary of the mapping, as when a graph is read.
+    private Term term(int id, TermDictionary dictionary) {
+        Term term = term(id);
+        if (dictionary != null && term instanceof ListTerm) dictionary.add(term);
+        return term;
+    }
+
+    private Node node(int id) {
+        long position = this.file.getLong(this.nodeOffsets + 8L * id);
+        byte kind = this.file.getByte(position);
+        String[] strings = readStrings(position + 1, kind == LITERAL ? 3 : 1);
+
+        if (kind == URI) return NodeFactory.createURI(strings[0]);
+
+        if (kind == BLANK) return NodeFactory.createBlankNode(strings[0]);
+
+        if (!strings[2].isEmpty()) return NodeFactory.createLiteral(strings[0], strings[2]);
+
+        return NodeFactory.createLiteral(strings[0], TypeMapper.getInstance().getSafeTypeByName(strings[1]));
+    }
+
+    private String[] readStrings(long position, int count) {
+        String[] result = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[this.file.getInt(position)];
+            this.file.get(position + 4, bytes);
+            result[i] = new String(bytes, StandardCharsets.UTF_8);
+            position += 4 + bytes.length;
+        }
+
+        return result;
+    }
+
+    /** The number of a term in the dictionary, or -1 if the term is not in the graph. **/
+    private int lookup(Term term) {
+        String key = key(term);
+        if (key == null) return -1;
+
+        for (int slot = slot(key); ; slot = (slot + 1) & (this.hashCapacity - 1)) {
+            int id = this.file.getInt(this.hashTable + 4L * slot) - 1;
+            if (id < 0) return -1;
+            if (key.equals(key(node(id)))) return id;
+        }
+    }
+
+    private int slot(String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (this.hashCapacity - 1);
+    }
+
+    private static String key(Term term) {
+        if (term instanceof IRITerm) return URI + ((IRITerm) term).getIri();
+
+        if (term instanceof BlankNodeTerm) return BLANK + ((BlankNodeTerm) term).getLabel();
+
+        if (term instanceof LiteralTerm) {
+            LiteralTerm literal = (LiteralTerm) term;
+            String language = literal.getLanguageTag();
+            return literalKey(literal.getValue(), literal.getDatatype(), language == null ? "" : language);
+        }
+
+        return null;
+    }
+
+    private static String key(Node node) {
+        if (node.isURI()) return URI + node.getURI();
+
+        if (node.isBlank()) return BLANK + node.getBlankNodeLabel();
+
+        return literalKey(node.getLiteralLexicalForm(), node.getLiteralDatatypeURI(), node.getLiteralLanguage());
+    }
+
+    private static String literalKey(String value, String datatype, String language) {
+        if (!language.isEmpty()) return LITERAL + value + '\u0000' + '@' + language;
+        return LITERAL + value + '\u0000' + datatype;
+    }
+
+    /** The mappings of the snapshot from the variables of a base template. **/
+    private class View implements TripleStore {
+
+        private final List<Term> vars;
+        private final TermDictionary dictionary;
+        private Set<Mapping> all;
+
+        View(List<Term> vars, TermDictionary dictionary) {
+            this.vars = vars;
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        public Collection<Mapping> match(Term s, Term p, Term o) {
+            int sId = s == null ? -1 : lookup(s);
+            int pId = p == null ? -1 : lookup(p);
+            int oId = o == null ? -1 : lookup(o);
+
+            if (s != null && sId < 0 || p != null && pId < 0 || o != null && oId < 0) {
+                return Collections.emptyList();
+            }
+
+            if (s != null && p != null && o != null) {
+                List<Mapping> result = new ArrayList<>();
+                for (Mapping mapping : scan(SPO, sId, pId)) {
+                    if (mapping.get(this.vars.get(2)).equals(o)) result.add(mapping);
+                }
+                return result;
+
+            } else if (s != null && p != null) {
+                return scan(SPO, sId, pId);
+
+            } else if (p != null && o != null) {
+                return scan(POS, pId, oId);
+
+            } else if (o != null && s != null) {
+                return scan(OSP, oId, sId);
+
+            } else if (s != null) {
+                return scan(SPO, sId, -1);
+
+            } else if (p != null) {
+                return scan(POS, pId, -1);
+
+            } else if (o != null) {
+                return scan(OSP, oId, -1);
+            }
+
+            return all();
+        }
+
+        @Override
+        public synchronized Set<Mapping> all() {
+            if (this.all == null) {
+                this.all = Collections.unmodifiableSet(new HashSet<>(scan(SPO, -1, -1)));
+            }
+            return this.all;
+        }
+
+        @Override
+        public int size() {
+            return tripleCount;
+        }
+
+        @Override
+        public List<Term> getVariables() {
+            return this.vars;
+        }
+
+        // The triples of a table with the given first and second numbers, where -1 is unbound.
+        private List<Mapping> scan(int table, int first, int second) {
+            int from = first < 0 ? 0 : bound(table, first, second, false);
+            int to = first < 0 ? tripleCount : bound(table, first, second, true);
+
+            List<Mapping> result = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                long position = tables[table] + 12L * i;
+                int[] triple = new int[3];
+                for (int j = 0; j < 3; j++) {
+                    triple[(ORDER[table][j])] = file.getInt(position + 4L * j);
+                }
+
+                result.add(Mapping.builder(this.dictionary)
+                        .put(this.vars.get(0), term(triple[0], this.dictionary))
+                        .put(this.vars.get(1), term(triple[1], this.dictionary))
+                        .put(this.vars.get(2), term(triple[2], this.dictionary))
+                        .build());
+            }
+
+            return result;
+        }
+
+        // The first index of a triple greater than (or, if not upper, equal to) the given prefix.
+        private int bound(int table, int first, int second, boolean upper) {
+            int low = 0;
+            int high = tripleCount;
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                long position = tables[table] + 12L * middle;
+
+                int comparison = Integer.compare(file.getInt(position), first);
+                if (comparison == 0 && second >= 0) {
+                    comparison = Integer.compare(file.getInt(position + 4), second);
+                }
+
+                if (comparison < 0 || upper && comparison == 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+    }
+
+    /**
+     * Writes a snapshot of an RDF file. The file is parsed as a stream, so the graph is only
+     * held in memory as numbers while the tables are sorted.
+     *
+     * @param sourceFile The RDF file, in any syntax Jena can detect from the file name.
+     * @param snapshotFile The file to write the snapshot to.**/
+    public static void write(String sourceFile, Path snapshotFile) throws IOException {
+        // Read first, such that a change while the snapshot is written makes it stale.
+        long modified = modified(Paths.get(sourceFile));
+
+        Collector collector = new Collector();
+        RDFDataMgr.parse(collector, sourceFile);
+
+        int[][] tables = new int[3][];
+        tables[SPO] = sortedTable(collector.triples.toArray(), SPO);
+        int tripleCount = tables[SPO].length / 3;
+        tables[POS] = sortedTable(tables[SPO], POS);
+        tables[OSP] = sortedTable(tables[SPO], OSP);
+        int[] listTable = sortedTable(collector.lists.toArray(), SPO);
+
+        List<Node> nodes = collector.nodes;
+        int hashCapacity = Integer.highestOneBit(Math.max(2, nodes.size()) * 2 - 1) * 2;
+
+        try (Output out = new Output(snapshotFile)) {
+            out.skip(HEADER_SIZE);
+            long[] sections = new long[8];
+
+            // The nodes are written after their positions, so the positions are known in advance.
+            sections[0] = out.align();
+            sections[1] = sections[0] + 8L * nodes.size();
+            long offset = sections[1];
+            for (Node node : nodes) {
+                out.writeLong(offset);
+                offset += encode(node).length;
+            }
+            for (Node node : nodes) {
+                out.write(encode(node));
+            }
+
+            sections[2] = out.align();
+            int[] hash = new int[hashCapacity];
+            for (int id = 0; id < nodes.size(); id++) {
+                String key = key(nodes.get(id));
+                int h = key.hashCode();
+                int slot = (h ^ (h >>> 16)) & (hashCapacity - 1);
+                while (hash[slot] != 0) slot = (slot + 1) & (hashCapacity - 1);
+                hash[slot] = id + 1;
+            }
+            out.writeInts(hash);
+
+            for (int table = 0; table < 3; table++) {
+                sections[3 + table] = out.align();
+                out.writeInts(tables[table]);
+            }
+
+            sections[6] = out.align();
+            out.writeInts(listTable);
+
+            sections[7] = out.align();
+            writeStatistics(out, tables);
+
+            long[] fingerprint = fingerprint(Paths.get(sourceFile));
+
+            out.seek(0);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (long value : fingerprint) out.writeLong(value);
+            out.writeLong(modified);
+            out.writeInt(nodes.size());
+            out.writeInt(tripleCount);
+            out.writeInt(listTable.length / 3);
+            out.writeInt(hashCapacity);
+            for (long section : sections) out.writeLong(section);
+        }
+    }
+
+    private static void writeStatistics(Output out, int[][] tables) throws IOException {
+        int[] spo = tables[SPO];
+        int[] pos = tables[POS];
+        int[] osp = tables[OSP];
+
+        Map<Integer, int[]> predicates = new TreeMap<>();
+        int subjects = 0;
+        int objects = 0;
+
+        for (int i = 0; i < spo.length; i += 3) {
+            int[] counts = predicates.computeIfAbsent(spo[i + 1], k -> new int[3]);
+            counts[0]++;
+            if (i == 0 || spo[i] != spo[i - 3]) subjects++;
+            if (i == 0 || spo[i] != spo[i - 3] || spo[i + 1] != spo[i - 2]) counts[1]++;
+        }
+
+        for (int i = 0; i < pos.length; i += 3) {
+            if (i == 0 || pos[i] != pos[i - 3] || pos[i + 1] != pos[i - 2]) predicates.get(pos[i])[2]++;
+        }
+
+        for (int i = 0; i < osp.length; i += 3) {
+            if (i == 0 || osp[i] != osp[i - 3]) objects++;
+        }
+
+        out.writeInt(subjects);
+        out.writeInt(objects);
+        out.writeInt(predicates.size());
+        for (Map.Entry<Integer, int[]> entry : predicates.entrySet()) {
+            out.writeInt(entry.getKey());
+            for (int count : entry.getValue()) out.writeInt(count);
+        }
+    }
+
+    private static byte[] encode(Node node) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        if (node.isURI()) {
+            out.writeByte(URI);
+            writeString(out, node.getURI());
+
+        } else if (node.isBlank()) {
+            out.writeByte(BLANK);
+            writeString(out, node.getBlankNodeLabel());
+
+        } else {
+            out.writeByte(LITERAL);
+            writeString(out, node.getLiteralLexicalForm());
+            writeString(out, node.getLiteralDatatypeURI());
+            writeString(out, node.getLiteralLanguage());
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = (string == null ? "" : string).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Reorders the triples of an SPO-table for another table, sorts them and removes duplicates. **/
+    private static int[] sortedTable(int[] spo, int table) {
+        int[] result = new int[spo.length];
+        for (int i = 0; i < spo.length; i += 3) {
+            for (int j = 0; j < 3; j++) {
+                result[i + j] = spo[i + ORDER[table][j]];
+            }
+        }
+
+        sort(result, 0, result.length / 3);
+
+        int size = 0;
+        for (int i = 0; i < result.length; i += 3) {
+            if (size == 0 || compare(result, i, size - 3) != 0) {
+                System.arraycopy(result, i, result, size, 3);
+                size += 3;
+            }
+        }
+
+        return Arrays.copyOf(result, size);
+    }
+
+    // Sorts the triples from index low (inclusive) to high (exclusive) by a quicksort.
+    private static void sort(int[] triples, int low, int high) {
+        while (high - low > 1) {
+            int pivot = low + (high - low) / 2;
+            swap(triples, pivot, high - 1);
+
+            int store = low;
+            for (int i = low; i < high - 1; i++) {
+                if (compare(triples, 3 * i, 3 * (high - 1)) < 0) {
+                    swap(triples, i, store++);
+                }
+            }
+            swap(triples, store, high - 1);
+
+            if (store - low < high - store - 1) {
+                sort(triples, low, store);
+                low = store + 1;
+            } else {
+                sort(triples, store + 1, high);
+                high = store;
+            }
+        }
+    }
+
+    private static int compare(int[] triples, int i, int j) {
+        for (int k = 0; k < 3; k++) {
+            int comparison = Integer.compare(triples[i + k], triples[j + k]);
+            if (comparison != 0) return comparison;
+        }
+        return 0;
+    }
+
+    private static void swap(int[] triples, int i, int j) {
+        for (int k = 0; k < 3; k++) {
+            int temp = triples[3 * i + k];
+            triples[3 * i + k] = triples[3 * j + k];
+            triples[3 * j + k] = temp;
+        }
+    }
+
+    private static long modified(Path path) throws IOException {
+        return Files.getLastModifiedTime(path).toMillis();
+    }
+
+    /** The size of a file, followed by the SHA-256 digest of all of its bytes as four numbers. **/
+    private static long[] fingerprint(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        long size = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                size += buffer.remaining();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+
+        ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+        long[] result = new long[FINGERPRINT_LONGS];
+        result[0] = size;
+        for (int i = 1; i < FINGERPRINT_LONGS; i++) {
+            result[i] = hash.getLong();
+        }
+        return result;
+    }
+
+    /** Numbers the nodes of the triples of a graph while it is parsed. **/
+    private static class Collector extends StreamRDFBase {
+        final Map<Node, Integer> ids = new HashMap<>();
+        final List<Node> nodes = new ArrayList<>();
+        final IntList triples = new IntList();
+        final IntList lists = new IntList();
+
+        @Override
+        public void triple(Triple triple) {
+            Node predicate = triple.getPredicate();
+            IntList table = predicate.isURI() && (predicate.getURI().equals(RDFToOTTR.first)
+                    || predicate.getURI().equals(RDFToOTTR.rest)) ? this.lists : this.triples;
+
+            table.add(id(triple.getSubject()));
+            table.add(id(predicate));
+            table.add(id(triple.getObject()));
+        }
+
+        private int id(Node node) {
+            return this.ids.computeIfAbsent(node, k -> {
+                this.nodes.add(k);
+                return this.nodes.size() - 1;
+            });
+        }
+    }
+
+    private static class IntList {
+        private int[] values = new int[1024];
+        private int size = 0;
+
+        void add(int value) {
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            this.values[this.size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(this.values, this.size);
+        }
+    }
+
+    /** Writes a snapshot, keeping track of the position in the file. **/
+    private static class Output implements Closeable {
+        private final RandomAccessFile file;
+        private final DataOutputStream out;
+        private long position = 0;
+
+        Output(Path path) throws IOException {
+            this.file = new RandomAccessFile(path.toFile(), "rw");
+            this.file.setLength(0);
+            this.out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(this.file.getFD()), 1 << 16));
+        }
+
+        long position() {
+            return this.position;
+        }
+
+        void skip(int bytes) throws IOException {
+            for (int i = 0; i < bytes; i++) this.out.writeByte(0);
+            this.position += bytes;
+        }
+
+        // Pads the file to a multiple of eight bytes, such that the tables of numbers are aligned.
+        // The nodes are not aligned, so their numbers may cross a mapped region, see MappedFile.
+        long align() throws IOException {
+            skip((int) ((8 - this.position % 8) % 8));
+            return this.position;
+        }
+
+        void write(byte[] bytes) throws IOException {
+            this.out.write(bytes);
+            this.position += bytes.length;
+        }
+
+        void writeInt(int value) throws IOException {
+            this.out.writeInt(value);
+            this.position += 4;
+        }
+
+        void writeLong(long value) throws IOException {
+            this.out.writeLong(value);
+            this.position += 8;
+        }
+
+        void writeInts(int[] values) throws IOException {
+            for (int value : values) writeInt(value);
+        }
+
+        void seek(long at) throws IOException {
+            this.out.flush();
+            this.file.seek(at);
+            this.position = at;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.out.close();
+            this.file.close();
+        }
+    }
+
+    /**
+     * A file mapped into memory in regions, since one mapped buffer is limited to 2 GB.
+     * A number or string that crosses the end of a region is read from both regions.**/
+    private static class MappedFile {
+        private static final int REGION_BITS = 30;
+        private static final long REGION_SIZE = 1L << REGION_BITS;
+
+        private final ByteBuffer[] regions;
+
+        MappedFile(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                this.regions = new ByteBuffer[(int) ((size + REGION_SIZE - 1) / REGION_SIZE)];
+
+                for (int i = 0; i < this.regions.length; i++) {
+                    long start = i * REGION_SIZE;
+                    this.regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                            Math.min(REGION_SIZE, size - start));
+                }
+            }
+        }
+
+        byte getByte(long position) {
+            return this.regions[(int) (position >>> REGION_BITS)].get((int) (position & (REGION_SIZE - 1)));
+        }
+
+        int getInt(long position) {
+            ByteBuffer region = this.regions[(int) (position >>> REGION_BITS)];
+            int offset = (int) (position & (REGION_SIZE - 1));
+            if (offset + 4 <= region.limit()) return region.getInt(offset);
+
+            return (int) getAcross(position, 4);
+        }
+
+        long getLong(long position) {
+            ByteBuffer region = this.regions[(int) (position >>> REGION_BITS)];
+            int offset = (int) (position & (REGION_SIZE - 1));
+            if (offset + 8 <= region.limit()) return region.getLong(offset);
+
+            return getAcross(position, 8);
+        }
+
+        // Reads a big-endian number byte by byte, like ByteBuffer does within a region.
+        private long getAcross(long position, int bytes) {
+            long value = 0;
+            for (int i = 0; i < bytes; i++) {
+                value = (value << 8) | (getByte(position + i) & 0xff);
+            }
+            return value;
+        }
+
+        /** Reads bytes.length bytes, starting at position. **/
+        void get(long position, byte[] bytes) {
+            int done = 0;
+            while (done < bytes.length) {
+                ByteBuffer region = this.regions[(int) ((position + done) >>> REGION_BITS)];
+                int offset = (int) ((position + done) & (REGION_SIZE - 1));
+                int length = Math.min(bytes.length - done, region.limit() - offset);
+
+                region.duplicate().position(offset).get(bytes, done, length);
+                done += length;
+            }
+        }
+    }
+}
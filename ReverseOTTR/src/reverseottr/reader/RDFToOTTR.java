@@ -1,66 +1,129 @@
-package reverseottr.reader;
-
-import org.apache.jena.rdf.model.*;
-import reverseottr.model.Mapping;
-import xyz.ottr.lutra.OTTR;
-import xyz.ottr.lutra.model.Parameter;
-import xyz.ottr.lutra.model.terms.*;
-import xyz.ottr.lutra.wottr.parser.WTermParser;
-import java.util.*;
-
-/** Provides a method of statically converting a graph, i.e., a set of triples, into
- * a set of mappings from the variables of the Triple or NullableTriple templates to
- * the corresponding subject, predicate or object in triples in the graph.**/
-public class RDFToOTTR {
-
-    private static final String rdf = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
-    private static final String first = rdf + "first";
-    private static final String rest = rdf + "rest";
-
-    public static Set<Mapping> asResultSet(Model model, boolean nullable) {
-        List<Parameter> params = OTTR.BaseTemplate.Triple.getParameters();
-        if (nullable) {
-            params = OTTR.BaseTemplate.NullableTriple.getParameters();
-        }
-
-        Term sVar = params.get(0).getTerm();
-        Term pVar = params.get(1).getTerm();
-        Term oVar = params.get(2).getTerm();
-
-        List<Statement> list = model.listStatements().toList();
-
-        Set<Mapping> resultSet = new HashSet<>();
-
-        for (Statement statement : list) {
-
-            Term s = WTermParser.toTerm(statement.getSubject()).get();
-            Term p = WTermParser.toTerm(statement.getPredicate()).get();
-            Term o = WTermParser.toTerm(statement.getObject()).get();
-
-            String pString = p.getIdentifier().toString();
-
-            // Ensures no funny list-triples:
-            /*
-            if (predString.equals(first) || predString.equals(rest)) {
-                if (sub instanceof ListTerm && !((ListTerm) sub).asList().isEmpty()) {
-                    sub = WTermParser.toBlankNodeTerm(
-                            s.getSubject().asNode().getBlankNodeId()).get();
-                }
-                if (obj instanceof ListTerm && !((ListTerm) obj).asList().isEmpty()) {
-                    obj = WTermParser.toBlankNodeTerm(
-                            s.getObject().asResource().asNode().getBlankNodeId()).get();
-                }
-            }
-             */
-            Mapping map = new Mapping();
-            map.put(sVar, s);
-            map.put(pVar, p);
-            map.put(oVar, o);
-
-            if (!pString.equals(first) && !pString.equals(rest))
-                resultSet.add(map);
-        }
-
-        return resultSet;
-    }
-}
+package reverseottr.reader;
+
+import org.apache.jena.rdf.model.*;
+import reverseottr.model.Mapping;
+import reverseottr.model.TermDictionary;
+import xyz.ottr.lutra.OTTR;
+import xyz.ottr.lutra.model.Parameter;
+import xyz.ottr.lutra.model.terms.*;
+import xyz.ottr.lutra.wottr.parser.WTermParser;
+import java.util.*;
+
+/** Provides a method of statically converting a graph, i.e., a set of triples, into
+ * a set of mappings from the variables of the Triple or NullableTriple templates to
+ * the corresponding subject, predicate or object in triples in the graph.**/
+public class RDFToOTTR {
+
+    private static final String rdf = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    static final String first = rdf + "first";
+    static final String rest = rdf + "rest";
+    static final String nil = rdf + "nil";
+
+    public static Set<Mapping> asResultSet(Model model, boolean nullable) {
+        return asResultSet(model, nullable, null);
+    }
+
+    /**
+     * As asResultSet, where the mappings take their ids from the dictionary, and the lists
+     * of the graph are added to it, as when an Evaluator reads the graph.**/
+    public static Set<Mapping> asResultSet(Model model, boolean nullable, TermDictionary dictionary) {
+        Set<Mapping> resultSet = new HashSet<>();
+
+        for (Statement statement : model.listStatements().toList()) {
+            Term[] terms = asTerms(statement);
+            if (terms == null) continue;
+
+            if (dictionary != null) {
+                dictionary.add(terms[0]);
+                dictionary.add(terms[2]);
+            }
+            resultSet.add(asMapping(terms[0], terms[1], terms[2], nullable, dictionary));
+        }
+
+        return resultSet;
+    }
+
+    /** Passes the terms of each triple of a model, except the triples of lists, to a consumer. **/
+    public static void forEachTriple(Model model, StreamingRDFToOTTR.TripleConsumer consumer) {
+        for (Statement statement : model.listStatements().toList()) {
+            Term[] terms = asTerms(statement);
+            if (terms != null) consumer.accept(terms[0], terms[1], terms[2]);
+        }
+    }
+
+    /**
+     * Converts one triple into a mapping from the variables of the Triple or NullableTriple template.
+     * Lists are read from the model of the statement.
+     *
+     * @return The mapping, or null if the triple is part of the structure of a list.**/
+    public static Mapping asMapping(Statement statement, boolean nullable) {
+        Term[] terms = asTerms(statement);
+        if (terms == null) return null;
+
+        return asMapping(terms[0], terms[1], terms[2], nullable);
+    }
+
+    /**
+     * Converts one triple into its subject, predicate and object terms.
+     * Lists are read from the model of the statement.
+     *
+     * @return The terms, or null if the triple is part of the structure of a list.**/
+    public static Term[] asTerms(Statement statement) {
+        Term s = WTermParser.toTerm(statement.getSubject()).get();
+        Term p = WTermParser.toTerm(statement.getPredicate()).get();
+        Term o = WTermParser.toTerm(statement.getObject()).get();
+
+        String pString = p.getIdentifier().toString();
+
+        // Ensures no funny list-triples:
+        /*
+        if (predString.equals(first) || predString.equals(rest)) {
+            if (sub instanceof ListTerm && !((ListTerm) sub).asList().isEmpty()) {
+                sub = WTermParser.toBlankNodeTerm(
+                        s.getSubject().asNode().getBlankNodeId()).get();
+            }
+            if (obj instanceof ListTerm && !((ListTerm) obj).asList().isEmpty()) {
+                obj = WTermParser.toBlankNodeTerm(
+                        s.getObject().asResource().asNode().getBlankNodeId()).get();
+            }
+        }
+         */
+        if (pString.equals(first) || pString.equals(rest)) return null;
+
+        return new Term[] {s, p, o};
+    }
+
+    /** Creates a mapping from the variables of the Triple or NullableTriple template
+     * to the subject, predicate and object of a triple. **/
+    public static Mapping asMapping(Term s, Term p, Term o, boolean nullable) {
+        return asMapping(s, p, o, nullable, null);
+    }
+
+    /** As asMapping, where the mapping takes its ids from the dictionary. **/
+    public static Mapping asMapping(Term s, Term p, Term o, boolean nullable, TermDictionary dictionary) {
+        List<Parameter> params = OTTR.BaseTemplate.Triple.getParameters();
+        if (nullable) {
+            params = OTTR.BaseTemplate.NullableTriple.getParameters();
+        }
+
+        return Mapping.builder(dictionary)
+                .put(params.get(0).getTerm(), s)
+                .put(params.get(1).getTerm(), p)
+                .put(params.get(2).getTerm(), o)
+                .build();
+    }
+
+    /**
+     * Checks whether a triple is part of the structure of a list, or has a list as subject or object.
+     * Adding or removing such a triple may change the list terms of other triples.**/
+    public static boolean touchesList(Statement statement) {
+        String pString = statement.getPredicate().getURI();
+        if (pString.equals(first) || pString.equals(rest)) return true;
+
+        Property firstProperty = statement.getModel().createProperty(first);
+
+        return statement.getSubject().isAnon() && statement.getSubject().hasProperty(firstProperty)
+                || statement.getObject().isAnon()
+                && statement.getObject().asResource().hasProperty(firstProperty);
+    }
+}
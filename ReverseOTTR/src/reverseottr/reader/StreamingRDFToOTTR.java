@@ -0,0 +1,126 @@
+package reverseottr.reader;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDFBase;
+import reverseottr.model.TripleIndex;
+import xyz.ottr.lutra.model.terms.Term;
+import xyz.ottr.lutra.wottr.parser.WTermParser;
+import java.util.*;
+
+/**
+ * Converts the triples of an RDF file into terms while the file is parsed, without building
+ * a Jena Model of the graph.
+ *
+ * Triples with rdf:first or rdf:rest as predicate are kept in a small model, which is used
+ * to convert lists, and are not passed on, as in RDFToOTTR. The other triples are added to
+ * a triple index at once. A blank node that is the head of a list that is complete, i.e. that
+ * ends with rdf:nil and whose elements are not blank nodes or are complete lists, is converted
+ * into the list, which is the case when the parser gives the triples of a list before the
+ * triples that use it. A blank node without rdf:first or rdf:rest is added as a blank node,
+ * and is replaced in the index by its list when the parsing is finished if it turns out to be
+ * the head of a list. Only the triples with a blank node that is the head of a list that is not
+ * yet complete are kept until the parsing is finished.**/
+public class StreamingRDFToOTTR extends StreamRDFBase {
+
+    /** Receives the subject, predicate and object of each triple of a graph. **/
+    public interface TripleConsumer {
+        void accept(Term s, Term p, Term o);
+    }
+
+    private final TripleIndex index;
+    private final Model lists = ModelFactory.createDefaultModel();
+    private final Model noLists = ModelFactory.createDefaultModel();
+    private final List<Triple> deferred = new ArrayList<>();
+    private final Map<Node, Term> predicates = new HashMap<>();
+    private final Map<Node, Node> firsts = new HashMap<>();
+    private final Map<Node, Node> rests = new HashMap<>();
+    private final Set<Node> completeLists = new HashSet<>();
+
+    public StreamingRDFToOTTR(TripleIndex index) {
+        this.index = index;
+    }
+
+    /** Parses an RDF file, in any syntax Jena can detect from the file name, into the index. **/
+    public static void read(String fileName, TripleIndex index) {
+        RDFDataMgr.parse(new StreamingRDFToOTTR(index), fileName);
+    }
+
+    @Override
+    public void triple(Triple triple) {
+        Node predicate = triple.getPredicate();
+
+        if (predicate.isURI() && (predicate.getURI().equals(RDFToOTTR.first)
+                || predicate.getURI().equals(RDFToOTTR.rest))) {
+            this.lists.getGraph().add(triple);
+            (predicate.getURI().equals(RDFToOTTR.first) ? this.firsts : this.rests)
+                    .put(triple.getSubject(), triple.getObject());
+
+        } else if (isPartialList(triple.getSubject()) || isPartialList(triple.getObject())) {
+            this.deferred.add(triple);
+
+        } else {
+            convert(triple);
+        }
+    }
+
+    @Override
+    public void finish() {
+        this.deferred.forEach(this::convert);
+        this.deferred.clear();
+
+        // The blank nodes added before their lists were read, where any cell of a list may be used as a list.
+        for (Node node : this.firsts.keySet()) {
+            Term blank = blankTerm(node);
+            if (this.index.containsTerm(blank)) this.index.replace(blank, toTerm(node));
+        }
+    }
+
+    private void convert(Triple triple) {
+        Term s = toTerm(triple.getSubject());
+        Term p = this.predicates.computeIfAbsent(triple.getPredicate(), this::toTerm);
+        Term o = toTerm(triple.getObject());
+
+        this.index.add(s, p, o);
+    }
+
+    // Whether a node is a blank node with rdf:first or rdf:rest, but is not the head of a complete list.
+    private boolean isPartialList(Node node) {
+        if (!node.isBlank() || this.completeLists.contains(node)) return false;
+        if (!this.firsts.containsKey(node) && !this.rests.containsKey(node)) return false;
+
+        return !isComplete(node, new HashSet<>());
+    }
+
+    // Follows the rests of a list, where a cell that is visited twice means the list is not well-formed.
+    private boolean isComplete(Node node, Set<Node> visited) {
+        if (!node.isBlank() || this.completeLists.contains(node)) return true;
+
+        Node current = node;
+        while (current.isBlank()) {
+            Node element = this.firsts.get(current);
+            Node next = this.rests.get(current);
+
+            if (!visited.add(current) || element == null || next == null
+                    || element.isBlank() && !isComplete(element, visited)) return false;
+            current = next;
+        }
+
+        if (!current.isURI() || !current.getURI().equals(RDFToOTTR.nil)) return false;
+
+        this.completeLists.add(node);
+        return true;
+    }
+
+    private Term toTerm(Node node) {
+        return WTermParser.toTerm(this.lists.asRDFNode(node)).get();
+    }
+
+    // The term a blank node was added as before it had rdf:first or rdf:rest.
+    private Term blankTerm(Node node) {
+        return WTermParser.toTerm(this.noLists.asRDFNode(node)).get();
+    }
+}